@@ -0,0 +1,140 @@
+package jenkins.plugins.rancher;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jenkins.plugins.rancher.entity.InstanceHealthCheck;
+import jenkins.plugins.rancher.entity.LaunchConfig;
+import jenkins.plugins.rancher.entity.LogConfig;
+import jenkins.plugins.rancher.entity.Secret;
+import jenkins.plugins.rancher.entity.Service;
+import jenkins.plugins.rancher.entity.Services;
+import jenkins.plugins.rancher.entity.Stack;
+import jenkins.plugins.rancher.entity.Stacks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Payloads shaped like the ones rancher returns, shared by the benchmarks.
+ */
+public class BenchmarkFixtures {
+
+    public static final String ENVIRONMENT_ID = "1a5";
+
+    /**
+     * Configured like the mapper {@link RancherHttpClient} uses.
+     */
+    public static ObjectMapper objectMapper() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.configure(DeserializationFeature.FAIL_ON_IGNORED_PROPERTIES, false);
+        objectMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        return objectMapper;
+    }
+
+    public static LaunchConfig liveLaunchConfig() {
+        LaunchConfig launchConfig = new LaunchConfig();
+        launchConfig.setImageUuid("docker:registry.example.com/team/app:1.0.0");
+        launchConfig.setKind("container");
+        launchConfig.setType("launchConfig");
+        launchConfig.setPorts(Arrays.asList("8080:8080/tcp", "8443:8443/tcp"));
+        launchConfig.setNetworkMode("managed");
+        launchConfig.setDataVolumes(Arrays.asList("/var/log/app:/var/log/app", "app-data:/data"));
+        launchConfig.setDataVolumesFrom(new ArrayList<>());
+        launchConfig.setDns(Arrays.asList("169.254.169.250"));
+        launchConfig.setDnsSearch(Arrays.asList("app.rancher.internal", "rancher.internal"));
+        launchConfig.setMemory(2147483648L);
+        launchConfig.setMemoryReservation(1073741824L);
+
+        Map<String, Object> environment = new HashMap<>();
+        for (int i = 0; i < 30; i++) {
+            environment.put("APP_SETTING_" + i, "value-" + i);
+        }
+        launchConfig.setEnvironment(environment);
+
+        Map<String, String> labels = new HashMap<>();
+        labels.put("io.rancher.container.pull_image", "always");
+        labels.put("io.rancher.scheduler.affinity:host_label", "role=app");
+        labels.put("io.rancher.service.hash", "6c1b0f3b0d8a4d7c2ab6f0a1d6c9e4f2a3b5c7d9");
+        labels.put("io.rancher.container.hostname_override", "container_name");
+        launchConfig.setLabels(labels);
+
+        List<Secret> secrets = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Secret secret = new Secret();
+            secret.setType("secretReference");
+            secret.setName("secret-" + i);
+            secret.setSecretId("1se" + i);
+            secret.setUid("0");
+            secret.setGid("0");
+            secret.setMode("444");
+            secrets.add(secret);
+        }
+        launchConfig.setSecrets(secrets);
+
+        LogConfig logConfig = new LogConfig();
+        logConfig.setDriver("json-file");
+        logConfig.getConfig().put("max-size", "100m");
+        logConfig.getConfig().put("max-file", "3");
+        launchConfig.setLogConfig(logConfig);
+
+        InstanceHealthCheck healthCheck = new InstanceHealthCheck();
+        healthCheck.setPort(8080);
+        healthCheck.setRequestLine("GET \"/health\" \"HTTP/1.0\"");
+        healthCheck.setInterval(2000);
+        healthCheck.setResponseTimeout(2000);
+        healthCheck.setHealthyThreshold(2);
+        healthCheck.setUnhealthyThreshold(3);
+        healthCheck.setInitializingTimeout(60000);
+        healthCheck.setReinitializingTimeout(60000);
+        healthCheck.setStrategy("recreate");
+        launchConfig.setHealthCheck(healthCheck);
+        return launchConfig;
+    }
+
+    public static Service service(int index, String state) {
+        Service service = new Service();
+        service.setId("1s" + index);
+        service.setName("service-" + index);
+        service.setStackId("1st1");
+        service.setState(state);
+        service.setLaunchConfig(liveLaunchConfig());
+        Map<String, String> links = new HashMap<>();
+        links.put("self", "http://rancher/v2-beta/projects/1a5/services/1s" + index);
+        links.put("instances", "http://rancher/v2-beta/projects/1a5/services/1s" + index + "/instances");
+        service.setLinks(links);
+        return service;
+    }
+
+    public static String servicesJson(int size) throws JsonProcessingException {
+        List<Service> data = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            data.add(service(i, RancherBuilder.ACTIVE));
+        }
+        Services services = new Services();
+        services.setType("collection");
+        services.setResourceType("service");
+        services.setData(data);
+        return objectMapper().writeValueAsString(services);
+    }
+
+    public static String stacksJson(int size) throws JsonProcessingException {
+        List<Stack> data = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Stack stack = new Stack();
+            stack.setId("1st" + i);
+            stack.setName("stack-" + i);
+            stack.setState(RancherBuilder.ACTIVE);
+            data.add(stack);
+        }
+        Stacks stacks = new Stacks();
+        stacks.setType("collection");
+        stacks.setResourceType("stack");
+        stacks.setData(data);
+        return objectMapper().writeValueAsString(stacks);
+    }
+}
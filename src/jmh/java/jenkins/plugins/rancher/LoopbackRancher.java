@@ -0,0 +1,65 @@
+package jenkins.plugins.rancher;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Loopback HTTP stub answering the rancher endpoints with canned payloads, so client
+ * round trips can be measured without network or server side noise.
+ */
+public class LoopbackRancher implements AutoCloseable {
+
+    private final HttpServer server;
+    private final byte[] stacks;
+    private final byte[] services;
+    private final byte[] service;
+
+    public LoopbackRancher(int collectionSize) throws IOException {
+        stacks = BenchmarkFixtures.stacksJson(collectionSize).getBytes(StandardCharsets.UTF_8);
+        services = BenchmarkFixtures.servicesJson(collectionSize).getBytes(StandardCharsets.UTF_8);
+        service = BenchmarkFixtures.objectMapper()
+                .writeValueAsBytes(BenchmarkFixtures.service(0, RancherBuilder.ACTIVE));
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public String getEndpoint() {
+        return String.format("http://127.0.0.1:%d/v2-beta", server.getAddress().getPort());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (InputStream requestBody = exchange.getRequestBody()) {
+            byte[] buffer = new byte[8192];
+            while (requestBody.read(buffer) != -1) {
+                // drain the request so the connection can be reused
+            }
+        }
+        String path = exchange.getRequestURI().getPath();
+        byte[] body;
+        if (path.endsWith("/stacks")) {
+            body = stacks;
+        } else if (path.endsWith("/services")) {
+            body = services;
+        } else {
+            body = service;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
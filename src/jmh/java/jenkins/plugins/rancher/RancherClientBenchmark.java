@@ -0,0 +1,92 @@
+package jenkins.plugins.rancher;
+
+import jenkins.plugins.rancher.action.InServiceStrategy;
+import jenkins.plugins.rancher.action.ServiceUpgrade;
+import jenkins.plugins.rancher.entity.LaunchConfig;
+import jenkins.plugins.rancher.entity.Service;
+import jenkins.plugins.rancher.entity.Services;
+import jenkins.plugins.rancher.entity.Stacks;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static jenkins.plugins.rancher.BenchmarkFixtures.ENVIRONMENT_ID;
+
+/**
+ * Full client round trips (request serialization, HTTP, response deserialization)
+ * against a loopback stub.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RancherClientBenchmark {
+
+    @Param({"10", "1000"})
+    public int collectionSize;
+
+    private LoopbackRancher loopbackRancher;
+    private RancherClientRancher client;
+    private ServiceUpgrade serviceUpgrade;
+
+    @Setup
+    public void setUp() throws IOException {
+        loopbackRancher = new LoopbackRancher(collectionSize);
+        client = new RancherClientRancher(loopbackRancher.getEndpoint(), "accessKey", "secretKey");
+
+        LaunchConfig launchConfig = new LaunchConfig();
+        launchConfig.setImageUuid("docker:registry.example.com/team/app:1.0.1");
+        InServiceStrategy inServiceStrategy = new InServiceStrategy();
+        inServiceStrategy.setLaunchConfig(launchConfig);
+        serviceUpgrade = new ServiceUpgrade();
+        serviceUpgrade.setInServiceStrategy(inServiceStrategy);
+    }
+
+    @TearDown
+    public void tearDown() {
+        loopbackRancher.close();
+    }
+
+    @Benchmark
+    public Optional<Stacks> stacks() throws IOException {
+        return client.stacks(ENVIRONMENT_ID);
+    }
+
+    @Benchmark
+    public Optional<Services> services() throws IOException {
+        return client.services(ENVIRONMENT_ID, "1st1");
+    }
+
+    @Benchmark
+    public Optional<Service> service() throws IOException {
+        return client.service(ENVIRONMENT_ID, "1s0");
+    }
+
+    /**
+     * The calls of one upgrade with auto confirm, with a single state poll per wait.
+     */
+    @Benchmark
+    public Optional<Service> upgradeRoundTrip() throws IOException {
+        client.stacks(ENVIRONMENT_ID);
+        client.services(ENVIRONMENT_ID, "1st1");
+        client.upgradeService(ENVIRONMENT_ID, "1s0", serviceUpgrade);
+        client.service(ENVIRONMENT_ID, "1s0");
+        client.finishUpgradeService(ENVIRONMENT_ID, "1s0");
+        return client.service(ENVIRONMENT_ID, "1s0");
+    }
+}
@@ -0,0 +1,101 @@
+package jenkins.plugins.rancher.action;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jenkins.plugins.rancher.BenchmarkFixtures;
+import jenkins.plugins.rancher.entity.LaunchConfig;
+import jenkins.plugins.rancher.util.LaunchConfigDiff;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the no-op check that skips an upgrade with building and serializing the upgrade request. The request is
+ * built either as the full live launch config with the changes applied, which the plugin sends, or with only the
+ * fields the build changed. {@link PayloadSize} counts the serialized bytes, divide {@code bytes} by
+ * {@code requests} for the size of one request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ServiceUpgradeBenchmark {
+
+    private ObjectMapper objectMapper;
+    private LaunchConfig live;
+    private LaunchConfig unchanged;
+    private LaunchConfig changed;
+
+    @Param({"full", "changedFields"})
+    public String payload;
+
+    @Setup
+    public void setUp() {
+        objectMapper = BenchmarkFixtures.objectMapper();
+
+        live = BenchmarkFixtures.liveLaunchConfig();
+        unchanged = new LaunchConfig();
+        unchanged.setImageUuid(live.getImageUuid());
+        unchanged.setEnvironment(new HashMap<>(live.getEnvironment()));
+
+        changed = new LaunchConfig();
+        changed.setImageUuid("docker:registry.example.com/team/app:1.0.1");
+        changed.setEnvironment(new HashMap<>());
+        changed.getEnvironment().put("BUILD_NUMBER", "101");
+    }
+
+    @Benchmark
+    public boolean skipUnchanged() {
+        return LaunchConfigDiff.between(live, unchanged).isEmpty();
+    }
+
+    @Benchmark
+    public byte[] upgradeRequest(PayloadSize size) throws JsonProcessingException {
+        LaunchConfig launchConfig = LaunchConfigDiff.between(live, changed).toUpgradeLaunchConfig();
+        byte[] request = objectMapper.writeValueAsBytes(upgrade("full".equals(payload) ? launchConfig : changedFields(launchConfig)));
+        size.requests++;
+        size.bytes += request.length;
+        return request;
+    }
+
+    /**
+     * The fields a build controls, the rest of the launch config left out.
+     */
+    private static LaunchConfig changedFields(LaunchConfig launchConfig) {
+        LaunchConfig changedFields = new LaunchConfig();
+        changedFields.setImageUuid(launchConfig.getImageUuid());
+        changedFields.setEnvironment(launchConfig.getEnvironment());
+        changedFields.setPorts(launchConfig.getPorts());
+        changedFields.setLabels(launchConfig.getLabels());
+        return changedFields;
+    }
+
+    private static ServiceUpgrade upgrade(LaunchConfig launchConfig) {
+        InServiceStrategy inServiceStrategy = new InServiceStrategy();
+        inServiceStrategy.setLaunchConfig(launchConfig);
+        ServiceUpgrade serviceUpgrade = new ServiceUpgrade();
+        serviceUpgrade.setInServiceStrategy(inServiceStrategy);
+        return serviceUpgrade;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PayloadSize {
+        public long requests;
+        public long bytes;
+    }
+}
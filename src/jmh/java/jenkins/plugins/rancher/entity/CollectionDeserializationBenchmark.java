@@ -0,0 +1,54 @@
+package jenkins.plugins.rancher.entity;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jenkins.plugins.rancher.BenchmarkFixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deserialization of stack and service collections as returned by the list endpoints.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CollectionDeserializationBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int size;
+
+    private ObjectMapper objectMapper;
+    private String servicesJson;
+    private String stacksJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = BenchmarkFixtures.objectMapper();
+        servicesJson = BenchmarkFixtures.servicesJson(size);
+        stacksJson = BenchmarkFixtures.stacksJson(size);
+    }
+
+    @Benchmark
+    public Services services() throws IOException {
+        return objectMapper.readValue(servicesJson, Services.class);
+    }
+
+    @Benchmark
+    public Stacks stacks() throws IOException {
+        return objectMapper.readValue(stacksJson, Stacks.class);
+    }
+}
@@ -0,0 +1,66 @@
+package jenkins.plugins.rancher.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the inline KEY:VALUE environments and of workspace environment files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class EnvironmentParserBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int variables;
+
+    private String inline;
+    private String envFile;
+
+    @Setup
+    public void setUp() {
+        StringBuilder inlineBuilder = new StringBuilder();
+        StringBuilder envFileBuilder = new StringBuilder("# generated\n");
+        for (int i = 0; i < variables; i++) {
+            if (i > 0) {
+                inlineBuilder.append(',');
+            }
+            inlineBuilder.append("APP_SETTING_").append(i).append(":http://config-").append(i).append(":8888");
+            envFileBuilder.append("APP_SETTING_").append(i).append("=");
+            if (i % 2 == 0) {
+                envFileBuilder.append("\"http://config-").append(i).append(":8888/a,b\"\n");
+            } else {
+                envFileBuilder.append("http://config-").append(i).append(":8888\n");
+            }
+        }
+        inline = inlineBuilder.toString();
+        envFile = envFileBuilder.toString();
+    }
+
+    @Benchmark
+    public Map<String, Object> inlineEnvironments() {
+        return EnvironmentParser.parse(inline);
+    }
+
+    @Benchmark
+    public Map<String, String> environmentFile() throws IOException {
+        return EnvironmentFileParser.parse(new StringReader(envFile), "benchmark.env");
+    }
+}
@@ -0,0 +1,90 @@
+package jenkins.plugins.rancher.util;
+
+import com.google.common.base.Strings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the cached single pass {@link Template} with the regex based implementation it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TemplateBenchmark {
+
+    @Param({
+            "${DOCKER_REGISTRY}/team/app:${BUILD_NUMBER}",
+            "LOG_LEVEL:info,GIT_COMMIT:${GIT_COMMIT},BUILD:${BUILD_NUMBER},JOB:${JOB_NAME},NODE:${NODE_NAME},URL:${BUILD_URL}",
+            "stack/service"
+    })
+    public String source;
+
+    private Map<String, String> envs;
+
+    @Setup
+    public void setUp() {
+        envs = new HashMap<>();
+        for (int i = 0; i < 200; i++) {
+            envs.put("PLUGIN_INJECTED_" + i, "value-" + i);
+        }
+        envs.put("DOCKER_REGISTRY", "registry.example.com");
+        envs.put("BUILD_NUMBER", "101");
+        envs.put("GIT_COMMIT", "9f3b2a7c1d0e4f5a6b7c8d9e0f1a2b3c4d5e6f7a");
+        envs.put("JOB_NAME", "deploy-app");
+        envs.put("NODE_NAME", "agent-1");
+        envs.put("BUILD_URL", "https://jenkins.example.com/job/deploy-app/101/");
+    }
+
+    @Benchmark
+    public String template() {
+        return Parser.paraser(source, envs);
+    }
+
+    @Benchmark
+    public String regex() {
+        return LegacyParser.paraser(source, envs);
+    }
+
+    /**
+     * The original Parser implementation, kept here as the baseline.
+     */
+    static class LegacyParser {
+
+        private static final String BUILDER_REGEX = "(\\$\\{\\w*\\})";
+
+        static String paraser(String source, Map<String, String> envs) {
+
+            if (Strings.isNullOrEmpty(source)) {
+                return "";
+            }
+
+            Matcher matcher = Pattern.compile(BUILDER_REGEX).matcher(source);
+            while (matcher.find()) {
+                String param = matcher.group();
+                String key = matcher.group().replace("${", "").replace("}", "");
+                if (envs.keySet().contains(key)) {
+                    source = source.replace(param, envs.get(key));
+                }
+            }
+            return source;
+        }
+    }
+}
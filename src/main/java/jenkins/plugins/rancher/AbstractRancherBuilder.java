@@ -3,32 +3,82 @@ package jenkins.plugins.rancher;
 import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 import com.google.common.base.Strings;
 import hudson.AbortException;
-import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.tasks.Builder;
 import java.io.IOException;
-import java.util.HashMap;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
 import javax.annotation.Nonnull;
+import jenkins.plugins.rancher.entity.Instance;
+import jenkins.plugins.rancher.entity.Instances;
 import jenkins.plugins.rancher.entity.Service;
 import jenkins.plugins.rancher.entity.Stack;
 import jenkins.plugins.rancher.entity.Stacks;
+import jenkins.plugins.rancher.metrics.RancherMetrics;
+import jenkins.plugins.rancher.state.DeploymentJournal;
+import jenkins.plugins.rancher.timing.DeploymentPhase;
+import jenkins.plugins.rancher.timing.DeploymentTimingAction;
+import jenkins.plugins.rancher.timing.PhaseTimer;
+import jenkins.plugins.rancher.tracing.DeploymentTrace;
+import jenkins.plugins.rancher.tracing.SpanExporters;
+import jenkins.plugins.rancher.traffic.TrafficRecorder;
+import jenkins.plugins.rancher.util.BuildVariables;
 import jenkins.plugins.rancher.util.CredentialsUtil;
+import jenkins.plugins.rancher.util.DeploymentCoalescer;
 import jenkins.plugins.rancher.util.EnvironmentParser;
+import jenkins.plugins.rancher.util.LatencyProbe;
+import jenkins.plugins.rancher.util.Parser;
 import jenkins.plugins.rancher.util.ServiceField;
+import jenkins.plugins.rancher.util.ServiceLease;
+import jenkins.plugins.rancher.util.SloGate;
+import jenkins.plugins.rancher.util.Template;
+import jenkins.plugins.rancher.util.WarmUp;
 import jenkins.tasks.SimpleBuildStep;
+import org.kohsuke.stapler.DataBoundSetter;
+
+public abstract class AbstractRancherBuilder extends Builder implements SimpleBuildStep, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Delay between two service state polls, tunable for tests and load runs against a fake server.
+     */
+    static long pollIntervalMillis = Long.getLong(AbstractRancherBuilder.class.getName() + ".pollIntervalMillis", 2000);
+
+    public static final int DEFAULT_SLO_PORT = 8080;
+    public static final int DEFAULT_SLO_SAMPLES = 100;
+    public static final int DEFAULT_SLO_P50_REGRESSION = 20;
+    public static final int DEFAULT_SLO_P99_REGRESSION = 50;
+    public static final double DEFAULT_SLO_ERROR_RATE = 1;
 
-public abstract class AbstractRancherBuilder extends Builder implements SimpleBuildStep {
     protected final String environmentId;
     protected final String endpoint;
     protected final String credentialId;
     protected final String service;
     protected int timeout = 50;
-    protected RancherClientRancher rancherClient;
-    protected CredentialsUtil credentialsUtil;
+    protected transient RancherClientRancher rancherClient;
+    protected transient CredentialsUtil credentialsUtil;
     protected String environmentIdParsed;
+    private transient volatile Set<String> referencedVariables;
+    private boolean runOnAgent;
+    private String sloRequests;
+    private int sloPort = DEFAULT_SLO_PORT;
+    private int sloSamples = DEFAULT_SLO_SAMPLES;
+    private int sloP50Regression = DEFAULT_SLO_P50_REGRESSION;
+    private int sloP99Regression = DEFAULT_SLO_P99_REGRESSION;
+    private double sloErrorRate = DEFAULT_SLO_ERROR_RATE;
 
     public AbstractRancherBuilder(String environmentId, String endpoint, String credentialId, String service, int timeout) {
         this.environmentId = environmentId;
@@ -46,7 +96,238 @@ public abstract class AbstractRancherBuilder extends Builder implements SimpleBu
         this.rancherClient = rancherClient;
     }
 
-    protected void initializeClient(String endpoint) {
+    @Override
+    public void perform(@Nonnull Run<?, ?> build, @Nonnull FilePath workspace, @Nonnull Launcher launcher, @Nonnull TaskListener listener) throws InterruptedException, IOException {
+        PhaseTimer timer = new PhaseTimer();
+        DeploymentTrace trace = DeploymentTrace.start(getStepName(), build);
+        DeploymentJournal journal = DeploymentJournal.forBuild(build);
+        TrafficRecorder recorder = null;
+        timer.start(DeploymentPhase.VARIABLES);
+        BuildVariables buildVariables = getBuildVariables(build, listener, trace);
+        DeploymentCoalescer.Ticket ticket = null;
+        if (isCoalescing()) {
+            timer.start(DeploymentPhase.COALESCE);
+            ticket = DeploymentCoalescer.get().enter(DeploymentCoalescer.key(Parser.paraser(endpoint, buildVariables),
+                    Parser.paraser(environmentId, buildVariables), Parser.paraser(service, buildVariables)), build.getDisplayName(), listener);
+            if (ticket.isSuperseded()) {
+                markSuperseded(build, ticket.getSupersededBy(), listener);
+                return;
+            }
+        }
+        boolean success = false;
+        String failure = null;
+        try {
+            if (isRunOnAgent() && workspace.isRemote()) {
+                timer.stop();
+                journal.saveThrough(workspace.getChannel());
+                RemoteDeployment.Result deployment = workspace.getChannel().call(newRemoteDeployment(buildVariables.toMap(), workspace, listener,
+                        new DeploymentContext(timer, null, trace, journal)));
+                timer = deployment.timer;
+                trace = deployment.trace;
+                journal.attach(deployment.journal);
+                deployment.rethrow();
+            } else {
+                recorder = TrafficRecorder.forBuild(build, listener);
+                execute(new DeploymentContext(timer, recorder, trace, journal), buildVariables, workspace, listener);
+            }
+            success = true;
+        } catch (IOException | RuntimeException e) {
+            failure = e.getMessage();
+            throw e;
+        } finally {
+            if (ticket != null) {
+                ticket.release();
+            }
+            DeploymentTimingAction.record(build, timer.toTiming(getStepName(), success));
+            if (trace != null) {
+                exportTrace(trace, success, failure, listener);
+            }
+            if (recorder != null) {
+                recorder.close();
+                listener.getLogger().printf("recorded %d rancher API calls to %s%n", recorder.getCount(), recorder.getFile());
+            }
+        }
+    }
+
+    /**
+     * Runs the deployment against the current rancher client, wherever this builder instance lives.
+     */
+    void execute(DeploymentContext context, Function<String, String> buildVariables, FilePath workspace, TaskListener listener) throws InterruptedException, IOException {
+        try {
+            doPerform(context, buildVariables, workspace, listener);
+        } finally {
+            context.close(rancherClient);
+        }
+    }
+
+    /**
+     * Resolves endpoint and credentials on the controller, the agent only gets their values.
+     */
+    private RemoteDeployment newRemoteDeployment(Map<String, String> variables, FilePath workspace, TaskListener listener, DeploymentContext context) {
+        if (credentialsUtil == null) {
+            credentialsUtil = new CredentialsUtil();
+        }
+        String username = null;
+        String password = null;
+        if (!Strings.isNullOrEmpty(credentialId)) {
+            Optional<StandardUsernamePasswordCredentials> credential = credentialsUtil.getCredential(credentialId);
+            if (credential.isPresent()) {
+                username = credential.get().getUsername();
+                password = credential.get().getPassword().getPlainText();
+            }
+        }
+        listener.getLogger().println("running rancher API calls on the agent of workspace " + workspace.getRemote());
+        return new RemoteDeployment(this, variables, Parser.paraser(endpoint, variables), username, password, workspace, listener, context);
+    }
+
+    /**
+     * Whether queued deploys of the same service collapse to the latest one, see {@link DeploymentCoalescer}.
+     */
+    protected boolean isCoalescing() {
+        return false;
+    }
+
+    private void markSuperseded(Run<?, ?> build, String supersededBy, TaskListener listener) throws IOException {
+        String mark = "superseded by " + supersededBy;
+        listener.getLogger().println("skip deploy, " + mark);
+        build.setResult(Result.NOT_BUILT);
+        String description = build.getDescription();
+        build.setDescription(Strings.isNullOrEmpty(description) ? mark : description + " (" + mark + ")");
+    }
+
+    private void exportTrace(DeploymentTrace trace, boolean success, String failure, TaskListener listener) {
+        try {
+            SpanExporters.export(trace, trace.finish(success, failure));
+            listener.getLogger().println("rancher deployment trace id " + trace.getTraceId());
+        } catch (IOException | RuntimeException e) {
+            // tracing must never fail the deployment
+            listener.getLogger().println("failed to export rancher deployment trace: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The deployment itself. Runs on the controller, or on the agent when {@link #isRunOnAgent()} is set,
+     * so it must only depend on its arguments and the rancher client. The builder is shared by concurrent builds,
+     * so state of the run belongs in the {@code context}.
+     */
+    protected abstract void doPerform(@Nonnull DeploymentContext context, @Nonnull Function<String, String> buildVariables, @Nonnull FilePath workspace, @Nonnull TaskListener listener) throws InterruptedException, IOException;
+
+    /**
+     * Name of the build step in the deployment timing of the build.
+     */
+    protected abstract String getStepName();
+
+    /**
+     * Waits for the deployment lease of the service, see {@link ServiceLease}. It is renewed while waiting for service states.
+     *
+     * @return the service as read when the lease was acquired
+     */
+    protected Service acquireLease(DeploymentContext context, String serviceId, String owner, TaskListener listener) throws IOException, InterruptedException {
+        context.phase(DeploymentPhase.LEASE);
+        ServiceLease lease = ServiceLease.acquire(rancherClient, environmentIdParsed, serviceId, owner, pollIntervalMillis, listener);
+        context.setLease(lease);
+        return lease.getService();
+    }
+
+    /**
+     * Addresses of the running containers of the service on the rancher network.
+     */
+    protected List<String> runningAddresses(String serviceId) throws IOException {
+        Optional<Instances> instances = rancherClient.instances(environmentIdParsed, serviceId);
+        List<String> addresses = new ArrayList<>();
+        for (Instance instance : instances.isPresent() ? instances.get().getData() : Collections.<Instance>emptyList()) {
+            if (RancherBuilder.RUNNING.equalsIgnoreCase(instance.getState()) && !Strings.isNullOrEmpty(instance.getPrimaryIpAddress())) {
+                addresses.add(instance.getPrimaryIpAddress());
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * Samples the latency of the running version of the service and saves it as baseline of the SLO gate for the upgrade
+     * to {@code targetImageUuid}, see {@link SloGate}. Does nothing without SLO requests.
+     */
+    protected void saveLatencyBaseline(DeploymentContext context, Service service, String targetImageUuid, TaskListener listener) throws IOException {
+        List<String> paths = WarmUp.paths(sloRequests);
+        if (paths.isEmpty()) {
+            return;
+        }
+        context.phase(DeploymentPhase.SLO_BASELINE);
+        LatencyProbe.Result baseline = sampleLatency(context, service.getId(), paths, listener);
+        if (baseline == null) {
+            listener.getLogger().printf("service %s has no running container to sample, no latency baseline%n", service.getName());
+            SloGate.clearBaseline(rancherClient, environmentIdParsed, service);
+            return;
+        }
+        SloGate.saveBaseline(rancherClient, environmentIdParsed, service, targetImageUuid, baseline);
+        listener.getLogger().printf("latency baseline of service %s: %s%n", service.getName(), baseline);
+    }
+
+    /**
+     * Finishes the upgrade of the service. With SLO requests the upgraded containers are sampled first, and when they
+     * regressed beyond the thresholds against the baseline the upgrade is rolled back instead and the step fails.
+     */
+    protected void finishUpgrade(DeploymentContext context, String serviceId, TaskListener listener) throws IOException {
+        List<String> violations = checkSlo(context, serviceId, listener);
+        context.phase(DeploymentPhase.FINISH);
+        if (violations.isEmpty()) {
+            rancherClient.finishUpgradeService(environmentIdParsed, serviceId);
+        } else {
+            violations.forEach(violation -> listener.getLogger().println("SLO violated: " + violation));
+            listener.getLogger().println("rolling back the upgrade");
+            rancherClient.rollbackUpgradeService(environmentIdParsed, serviceId);
+        }
+        context.phase(DeploymentPhase.WAIT_ACTIVE);
+        waitUntilServiceStateIs(context, serviceId, RancherBuilder.ACTIVE, listener);
+        context.traceAttribute("rancher.state", RancherBuilder.ACTIVE);
+        if (!violations.isEmpty()) {
+            context.traceAttribute("rancher.slo", "rolled back");
+            throw new AbortException("upgrade of service " + serviceId + " rolled back, " + String.join("; ", violations));
+        }
+    }
+
+    private List<String> checkSlo(DeploymentContext context, String serviceId, TaskListener listener) throws IOException {
+        List<String> paths = WarmUp.paths(sloRequests);
+        if (paths.isEmpty()) {
+            return Collections.emptyList();
+        }
+        context.phase(DeploymentPhase.SLO_GATE);
+        Optional<Service> service = rancherClient.service(environmentIdParsed, serviceId);
+        LatencyProbe.Result baseline = service.isPresent() ? SloGate.baseline(service.get()) : null;
+        if (baseline == null) {
+            listener.getLogger().println("no latency baseline saved before the upgrade to the running image, skip SLO gate");
+            return Collections.emptyList();
+        }
+        LatencyProbe.Result candidate = sampleLatency(context, serviceId, paths, listener);
+        if (candidate == null) {
+            return Collections.singletonList("no running upgraded container to sample");
+        }
+        listener.getLogger().printf("latency of the upgraded containers: %s, baseline: %s%n", candidate, baseline);
+        context.traceAttribute("rancher.slo.p50", candidate.getP50());
+        context.traceAttribute("rancher.slo.p99", candidate.getP99());
+        return new SloGate(sloP50Regression, sloP99Regression, sloErrorRate).violations(baseline, candidate);
+    }
+
+    private LatencyProbe.Result sampleLatency(DeploymentContext context, String serviceId, List<String> paths, TaskListener listener) throws IOException {
+        List<String> addresses = runningAddresses(serviceId);
+        if (addresses.isEmpty()) {
+            return null;
+        }
+        listener.getLogger().printf("sampling latency of %d container(s) on port %d with %d request(s)%n", addresses.size(), sloPort, sloSamples);
+        LatencyProbe probe = new LatencyProbe(addresses, paths, sloPort, sloSamples);
+        try {
+            while (!probe.isDone()) {
+                probe.send();
+                context.renewLease();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AbortException("interrupted while sampling the latency of service " + serviceId);
+        }
+        return probe.getResult();
+    }
+
+    protected void initializeClient(DeploymentContext context, String endpoint) {
         if (credentialsUtil == null) {
             credentialsUtil = new CredentialsUtil();
         }
@@ -54,6 +335,8 @@ public abstract class AbstractRancherBuilder extends Builder implements SimpleBu
         if (rancherClient == null) {
             rancherClient = newRancherClient(endpoint);
         }
+
+        context.listenTo(rancherClient);
     }
 
     private RancherClientRancher newRancherClient(String endpoint) {
@@ -74,50 +357,88 @@ public abstract class AbstractRancherBuilder extends Builder implements SimpleBu
         }
     }
 
-    protected Map<String, String> getBuildEnvs(Run<?, ?> build, TaskListener listener) {
-        Map<String, String> envs = new HashMap<>();
+    protected BuildVariables getBuildVariables(Run<?, ?> build, TaskListener listener, DeploymentTrace trace) {
+        if (trace == null) {
+            return new BuildVariables(build, listener, getReferencedVariables());
+        }
+        Set<String> variables = new HashSet<>(getReferencedVariables());
+        variables.add(DeploymentTrace.TRACEPARENT);
+        BuildVariables buildVariables = new BuildVariables(build, listener, variables);
+        trace.setParent(buildVariables.apply(DeploymentTrace.TRACEPARENT));
+        return buildVariables;
+    }
 
-        try {
-            EnvVars environment = build.getEnvironment(listener);
-            environment.keySet().forEach(key -> {
-                String value = environment.get(key);
-                envs.put(key, value);
-            });
-        } catch (Exception e) {
-            listener.getLogger().println(e.getMessage());
+    /**
+     * Variables referenced by the templated fields of this builder, computed once per configuration.
+     */
+    protected Set<String> getReferencedVariables() {
+        Set<String> variables = referencedVariables;
+        if (variables == null) {
+            variables = new HashSet<>();
+            for (String field : getTemplateFields()) {
+                variables.addAll(Template.compile(field).getVariables());
+            }
+            referencedVariables = variables;
         }
-        return envs;
+        return variables;
+    }
+
+    /**
+     * Fields that may contain ${...} placeholders resolved against the build environment.
+     */
+    protected List<String> getTemplateFields() {
+        return Arrays.asList(environmentId, endpoint, service);
     }
 
     protected Map<String, Object> customEnvironments(String environments) {
         return EnvironmentParser.parse(environments);
     }
 
-    protected void waitUntilServiceStateIs(String serviceId, String targetState, TaskListener listener) throws AbortException {
+    protected void waitUntilServiceStateIs(DeploymentContext context, String serviceId, String targetState, TaskListener listener) throws AbortException {
+        waitUntilService(context, serviceId, "state", Service::getState, targetState, listener);
+    }
+
+    /**
+     * Waits until the health state of the service is {@code healthy}, for services with a health check.
+     */
+    protected void waitUntilServiceIsHealthy(DeploymentContext context, String serviceId, TaskListener listener) throws AbortException {
+        waitUntilService(context, serviceId, "health state", Service::getHealthState, RancherBuilder.HEALTHY, listener);
+    }
+
+    private void waitUntilService(DeploymentContext context, String serviceId, String field, Function<Service, String> value, String targetState, TaskListener listener) throws AbortException {
 
         int timeoutMs = timeout != 0 ?  1000 * timeout : 1000 * 50;
 
         long start = System.currentTimeMillis();
         long current = System.currentTimeMillis();
-        listener.getLogger().println("waiting service state to be " + targetState + " (timeout:" + timeout + "s)");
+        listener.getLogger().println("waiting service " + field + " to be " + targetState + " (timeout:" + timeout + "s)");
+        context.startWait(serviceId, targetState, start + timeoutMs);
+        RancherMetrics.get().waitStarted();
+        String outcome = "failed";
         try {
             boolean success = false;
             while ((current - start) < timeoutMs) {
                 Optional<Service> checkService = rancherClient.service(environmentIdParsed, serviceId);
-                String state = checkService.get().getState();
-                if (state.equalsIgnoreCase(targetState)) {
-                    listener.getLogger().println("current service state is " + targetState);
+                String state = value.apply(checkService.get());
+                if (targetState.equalsIgnoreCase(state)) {
+                    listener.getLogger().println("current service " + field + " is " + targetState);
                     success = true;
                     break;
                 }
-                Thread.sleep(2000);
+                context.renewLease();
+                Thread.sleep(pollIntervalMillis);
                 current = System.currentTimeMillis();
             }
             if (!success) {
+                outcome = "timeout";
                 throw new AbortException("timeout");
             }
+            outcome = "reached";
         } catch (Exception e) {
-            throw new AbortException("Exception happened to wait service state with message:" + e.getMessage());
+            throw new AbortException("Exception happened to wait service " + field + " with message:" + e.getMessage());
+        } finally {
+            RancherMetrics.get().waitFinished(targetState, outcome);
+            context.endWait(outcome);
         }
     }
 
@@ -173,4 +494,67 @@ public abstract class AbstractRancherBuilder extends Builder implements SimpleBu
     public String getService() {
         return service;
     }
+
+    public boolean isRunOnAgent() {
+        return runOnAgent;
+    }
+
+    @DataBoundSetter
+    public void setRunOnAgent(boolean runOnAgent) {
+        this.runOnAgent = runOnAgent;
+    }
+
+    public String getSloRequests() {
+        return sloRequests;
+    }
+
+    @DataBoundSetter
+    public void setSloRequests(String sloRequests) {
+        this.sloRequests = Util.fixEmptyAndTrim(sloRequests);
+    }
+
+    public int getSloPort() {
+        return sloPort;
+    }
+
+    @DataBoundSetter
+    public void setSloPort(int sloPort) {
+        this.sloPort = sloPort > 0 ? sloPort : DEFAULT_SLO_PORT;
+    }
+
+    public int getSloSamples() {
+        return sloSamples;
+    }
+
+    @DataBoundSetter
+    public void setSloSamples(int sloSamples) {
+        this.sloSamples = sloSamples > 0 ? sloSamples : DEFAULT_SLO_SAMPLES;
+    }
+
+    public int getSloP50Regression() {
+        return sloP50Regression;
+    }
+
+    @DataBoundSetter
+    public void setSloP50Regression(int sloP50Regression) {
+        this.sloP50Regression = sloP50Regression;
+    }
+
+    public int getSloP99Regression() {
+        return sloP99Regression;
+    }
+
+    @DataBoundSetter
+    public void setSloP99Regression(int sloP99Regression) {
+        this.sloP99Regression = sloP99Regression;
+    }
+
+    public double getSloErrorRate() {
+        return sloErrorRate;
+    }
+
+    @DataBoundSetter
+    public void setSloErrorRate(double sloErrorRate) {
+        this.sloErrorRate = sloErrorRate;
+    }
 }
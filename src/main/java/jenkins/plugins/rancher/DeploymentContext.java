@@ -0,0 +1,187 @@
+package jenkins.plugins.rancher;
+
+import hudson.model.TaskListener;
+import jenkins.plugins.rancher.state.DeploymentJournal;
+import jenkins.plugins.rancher.state.DeploymentState;
+import jenkins.plugins.rancher.state.LaunchConfigSnapshot;
+import jenkins.plugins.rancher.timing.DeploymentPhase;
+import jenkins.plugins.rancher.timing.PhaseTimer;
+import jenkins.plugins.rancher.tracing.DeploymentTrace;
+import jenkins.plugins.rancher.traffic.ExchangeListener;
+import jenkins.plugins.rancher.traffic.RancherExchange;
+import jenkins.plugins.rancher.traffic.TrafficRecorder;
+import jenkins.plugins.rancher.util.ServiceLease;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * State of one run of a build step: its phase timings, trace, journal, traffic recording and lease. A builder is
+ * shared by the concurrent builds of its job, so this state is passed along the deployment instead of being kept in
+ * the builder. Travels to the agent and back with a {@link RemoteDeployment}, without the recorder and the lease.
+ */
+class DeploymentContext implements ExchangeListener, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final PhaseTimer timer;
+    private final DeploymentTrace trace;
+    private final DeploymentJournal journal;
+    private final transient TrafficRecorder recorder;
+    private transient ServiceLease lease;
+    private transient Thread thread;
+
+    DeploymentContext(PhaseTimer timer, TrafficRecorder recorder, DeploymentTrace trace, DeploymentJournal journal) {
+        this.timer = timer;
+        this.recorder = recorder;
+        this.trace = trace;
+        this.journal = journal;
+    }
+
+    PhaseTimer getTimer() {
+        return timer;
+    }
+
+    DeploymentTrace getTrace() {
+        return trace;
+    }
+
+    DeploymentJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Starts listening to the exchanges of the client. The client may be shared with concurrent builds of the same
+     * builder, so only the exchanges made by the thread running this step are passed on.
+     */
+    void listenTo(RancherHttpClient client) {
+        thread = Thread.currentThread();
+        client.addExchangeListener(this);
+    }
+
+    void close(RancherHttpClient client) {
+        journal.close();
+        if (client != null) {
+            client.removeExchangeListener(this);
+        }
+    }
+
+    /**
+     * Starts a phase of the deployment timing, ending the current one.
+     */
+    void phase(DeploymentPhase phase) {
+        timer.start(phase);
+        journal.phase(phase);
+    }
+
+    void timingService(String service) {
+        timer.setService(service);
+        traceAttribute("rancher.service", service);
+    }
+
+    /**
+     * Adds an attribute to the root span of the deployment trace, when tracing is enabled.
+     */
+    void traceAttribute(String key, Object value) {
+        if (trace != null) {
+            trace.setAttribute(key, value);
+        }
+    }
+
+    /**
+     * Starts saving the state of a service upgrade with the build, so a later build can reattach to it after a restart.
+     */
+    void journalUpgrade(String environmentId, String serviceId, String serviceName, String imageUuid, String previousImageUuid, DeploymentPhase phase) {
+        journal.start(environmentId, serviceId, serviceName, imageUuid, previousImageUuid, phase);
+    }
+
+    void journalSnapshot(LaunchConfigSnapshot snapshot) {
+        journal.snapshot(snapshot);
+    }
+
+    void journalSurge(int originalScale) {
+        journal.surge(originalScale);
+    }
+
+    /**
+     * An upgrade of the service that an earlier build left open, see {@link DeploymentJournal}.
+     */
+    DeploymentState interruptedUpgrade(String environmentId, String serviceId) {
+        return journal.findInterrupted(environmentId, serviceId);
+    }
+
+    void resumeUpgrade(DeploymentState interrupted) {
+        journal.resume(interrupted);
+        traceAttribute("rancher.resumed_from", interrupted.getBuild());
+    }
+
+    void startWait(String serviceId, String targetState, long deadline) {
+        journal.deadline(deadline);
+        if (trace != null) {
+            trace.startWait(serviceId, targetState);
+        }
+    }
+
+    void endWait(String outcome) {
+        if (trace != null) {
+            trace.endWait(outcome);
+        }
+    }
+
+    void setLease(ServiceLease lease) {
+        this.lease = lease;
+    }
+
+    /**
+     * Keeps the deployment lease, if any, alive during long waits.
+     */
+    void renewLease() throws IOException {
+        if (lease != null) {
+            lease.renewIfDue();
+        }
+    }
+
+    void releaseLease(TaskListener listener) {
+        if (lease != null) {
+            lease.release(listener);
+            lease = null;
+        }
+    }
+
+    @Override
+    public void onStart(String method, String path) {
+        for (ExchangeListener listener : listeners()) {
+            listener.onStart(method, path);
+        }
+    }
+
+    @Override
+    public void onExchange(RancherExchange exchange) {
+        for (ExchangeListener listener : listeners()) {
+            listener.onExchange(exchange);
+        }
+    }
+
+    @Override
+    public void onFailure(String method, String path, Exception failure) {
+        for (ExchangeListener listener : listeners()) {
+            listener.onFailure(method, path, failure);
+        }
+    }
+
+    private List<ExchangeListener> listeners() {
+        List<ExchangeListener> listeners = new ArrayList<>();
+        if (Thread.currentThread() != thread) {
+            return listeners;
+        }
+        listeners.add(timer);
+        if (recorder != null) {
+            listeners.add(recorder);
+        }
+        if (trace != null) {
+            listeners.add(trace);
+        }
+        return listeners;
+    }
+}
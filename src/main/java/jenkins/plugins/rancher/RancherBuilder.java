@@ -4,9 +4,9 @@ package jenkins.plugins.rancher;
 import com.cloudbees.plugins.credentials.common.StandardUsernameListBoxModel;
 import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 import com.google.common.base.Strings;
+import com.google.common.primitives.Ints;
 import hudson.*;
 import hudson.model.AbstractProject;
-import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Builder;
@@ -17,13 +17,24 @@ import jenkins.plugins.rancher.action.InServiceStrategy;
 import jenkins.plugins.rancher.action.ServiceUpgrade;
 import jenkins.plugins.rancher.entity.*;
 import jenkins.plugins.rancher.entity.Stack;
+import jenkins.plugins.rancher.state.DeploymentState;
+import jenkins.plugins.rancher.state.LaunchConfigSnapshot;
+import jenkins.plugins.rancher.timing.DeploymentPhase;
 import jenkins.plugins.rancher.util.CredentialsUtil;
+import jenkins.plugins.rancher.util.EnvironmentFiles;
+import jenkins.plugins.rancher.util.HostCapacity;
+import jenkins.plugins.rancher.util.ImageLocality;
+import jenkins.plugins.rancher.util.LaunchConfigDiff;
+import jenkins.plugins.rancher.util.LaunchConfigHistory;
 import jenkins.plugins.rancher.util.Parser;
 import jenkins.plugins.rancher.util.ServiceField;
+import jenkins.plugins.rancher.util.SidekickChanges;
+import jenkins.plugins.rancher.util.WarmUp;
 import net.sf.json.JSONObject;
 import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 
@@ -33,19 +44,53 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
+import java.util.function.Function;
 
 public class RancherBuilder extends AbstractRancherBuilder {
 
+    public static final String UPGRADING = "upgrading";
     public static final String UPGRADED = "upgraded";
+    public static final String FINISHING_UPGRADE = "finishing-upgrade";
     public static final String ACTIVE = "active";
     public static final String INACTIVE = "inactive";
+    public static final String RUNNING = "running";
+    public static final String HEALTHY = "healthy";
+    public static final String BLUE = "blue";
+    public static final String GREEN = "green";
+    static final String PRE_PULL_SUFFIX = "-prepull-";
+    static final String STACK_SERVICE_LABEL = "io.rancher.stack_service.name";
+    static final String GLOBAL_LABEL = "io.rancher.scheduler.global";
+    private static final Set<String> CREATING_STATES = new HashSet<>(Arrays.asList("requested", "creating"));
+    private static final Set<String> STARTED_STATES = new HashSet<>(Arrays.asList(RUNNING, "stopped"));
+    private static final Set<String> FAILED_STATES = new HashSet<>(Arrays.asList("error", "erroring"));
     public static final int DEFAULT_TIMEOUT = 50;
+    public static final String DISPLAY_NAME = "Deploy/Upgrade Rancher Service";
+    static final String DEPLOYER = "${JOB_NAME}#${BUILD_NUMBER}";
+    public static final int DEFAULT_WARM_UP_PORT = 8080;
+    public static final int DEFAULT_WARM_UP_RATE = 10;
+    public static final int DEFAULT_WARM_UP_TARGET = 200;
+    public static final int DEFAULT_WARM_UP_BUDGET = 60;
 
     private final String image;
     private final boolean confirm;
     private final boolean startFirst;
     private final String ports;
     private final String environments;
+    private String environmentFiles;
+    private boolean coalesce;
+    private boolean lease;
+    private String loadBalancer;
+    private boolean prePull;
+    private boolean preferWarmHosts;
+    private boolean keepHistory;
+    private String sidekicks;
+    private String surge;
+    private boolean checkCapacity;
+    private String warmUp;
+    private int warmUpPort = DEFAULT_WARM_UP_PORT;
+    private int warmUpRate = DEFAULT_WARM_UP_RATE;
+    private int warmUpTarget = DEFAULT_WARM_UP_TARGET;
+    private int warmUpBudget = DEFAULT_WARM_UP_BUDGET;
 
     @DataBoundConstructor
     public RancherBuilder(
@@ -69,54 +114,212 @@ public class RancherBuilder extends AbstractRancherBuilder {
     }
 
     @Override
-    public void perform(@Nonnull Run<?, ?> build, @Nonnull FilePath workspace, @Nonnull Launcher launcher, @Nonnull TaskListener listener) throws InterruptedException, IOException {
+    protected void doPerform(@Nonnull DeploymentContext context, @Nonnull Function<String, String> buildEnvironments, @Nonnull FilePath workspace, @Nonnull TaskListener listener) throws InterruptedException, IOException {
 
-        Map<String, String> buildEnvironments = getBuildEnvs(build, listener);
-        Map<String, Object> environments = this.customEnvironments(Parser.paraser(this.environments, buildEnvironments));
+        Map<String, Object> environments = new HashMap<>();
+        if (!Strings.isNullOrEmpty(environmentFiles)) {
+            // variables from files override the live service environment, inline environments override files
+            String files = Parser.paraser(environmentFiles, buildEnvironments);
+            Map<String, String> fileEnvironments = EnvironmentFiles.read(workspace, files);
+            listener.getLogger().printf("read %d environment variables from [%s]%n", fileEnvironments.size(), files);
+            environments.putAll(fileEnvironments);
+        }
+        environments.putAll(this.customEnvironments(Parser.paraser(this.environments, buildEnvironments)));
 
         String dockerUUID = String.format("docker:%s", Parser.paraser(image, buildEnvironments));
 
         environmentIdParsed = Parser.paraser(environmentId, buildEnvironments);
-        initializeClient(Parser.paraser(endpoint, buildEnvironments));
+        initializeClient(context, Parser.paraser(endpoint, buildEnvironments));
 
         String service = Parser.paraser(this.getService(), buildEnvironments);
         ServiceField serviceField = new ServiceField(service);
+        context.timingService(service);
+        context.traceAttribute("rancher.environment", environmentIdParsed);
+        context.traceAttribute("rancher.stack", serviceField.getStackName());
+        context.traceAttribute("rancher.image", dockerUUID);
 
         listener.getLogger().printf("Deploy/Upgrade image[%s] to service [%s] to rancher environment [%s/projects/%s]%n", dockerUUID, service, endpoint, environmentIdParsed);
 
+        context.phase(DeploymentPhase.STACK);
         Stack stack = getStack(listener, serviceField, rancherClient, true);
+        context.phase(DeploymentPhase.SERVICE_LOOKUP);
         Optional<Services> services = rancherClient.services(environmentIdParsed, stack.getId());
         if (!services.isPresent()) {
             throw new AbortException("Error happen when fetch stack<" + stack.getName() + "> services");
         }
 
+        Map<String, LaunchConfig> sidekicks;
+        try {
+            sidekicks = SidekickChanges.parse(Parser.paraser(this.sidekicks, buildEnvironments));
+        } catch (IllegalArgumentException e) {
+            throw new AbortException(e.getMessage());
+        }
+
+        String deployer = Parser.paraser(DEPLOYER, buildEnvironments);
+        if (!Strings.isNullOrEmpty(loadBalancer)) {
+            blueGreenDeploy(context, stack, services.get().getData(), serviceField.getServiceName(), dockerUUID, listener, environments,
+                    sidekicks, deployer, new ServiceField(Parser.paraser(loadBalancer, buildEnvironments)));
+            return;
+        }
+
         Optional<Service> serviceInstance = services.get().getData().stream().filter(s -> s.getName().equals(serviceField.getServiceName())).findAny();
         if (serviceInstance.isPresent()) {
-            upgradeService(serviceInstance.get(), dockerUUID, listener, environments);
+            upgradeService(context, serviceInstance.get(), dockerUUID, listener, environments, sidekicks, deployer, confirm,
+                    Collections.singletonList(serviceInstance.get()));
         } else {
-            createService(stack, serviceField.getServiceName(), dockerUUID, listener, environments);
+            if (!sidekicks.isEmpty()) {
+                listener.getLogger().printf("service %s does not exist yet, sidekick changes %s are ignored%n", serviceField.getServiceName(), sidekicks.keySet());
+            }
+            createService(context, stack, serviceField.getServiceName(), dockerUUID, listener, environments, Collections.emptyList());
         }
     }
 
-    private void upgradeService(Service service, String dockerUUID, TaskListener listener, Map<String, Object> environments) throws IOException {
+    /**
+     * Deploys to the idle one of the {@code <service>-blue} and {@code <service>-green} services, waits until it is
+     * healthy and then points the port rules of the load balancer at it in a single update. The previously live
+     * color keeps running, so deploying its image again switches back without a rollout.
+     */
+    private void blueGreenDeploy(DeploymentContext context, Stack stack, List<Service> stackServices, String serviceName, String dockerUUID, TaskListener listener,
+                                 Map<String, Object> environments, Map<String, LaunchConfig> sidekicks, String deployer, ServiceField balancerField) throws IOException, InterruptedException {
+        Map<String, Service> colors = new HashMap<>();
+        Set<String> routed = new HashSet<>();
+        for (Service service : stackServices) {
+            if (service.getName().equals(serviceName)) {
+                routed.add(service.getId());
+            }
+            for (String color : Arrays.asList(BLUE, GREEN)) {
+                if (service.getName().equals(serviceName + "-" + color)) {
+                    colors.put(color, service);
+                    routed.add(service.getId());
+                }
+            }
+        }
+
+        LoadBalancerService balancer = getLoadBalancer(balancerField, listener);
+        String live = null;
+        for (PortRule rule : balancer.getLbConfig().getPortRules()) {
+            for (Map.Entry<String, Service> color : colors.entrySet()) {
+                if (color.getValue().getId().equals(rule.getServiceId())) {
+                    live = color.getKey();
+                }
+            }
+        }
+        String idle = BLUE.equals(live) ? GREEN : BLUE;
+        String idleName = serviceName + "-" + idle;
+        listener.getLogger().printf("blue/green: %s is live, deploying to %s%n", live == null ? "no color" : serviceName + "-" + live, idleName);
+        context.traceAttribute("rancher.color", idle);
+
+        // both colors ran earlier versions, the hosts of either hold most of the image layers
+        List<Service> earlier = new ArrayList<>();
+        if (live != null) {
+            earlier.add(colors.get(live));
+        }
+        String idleId;
+        boolean created = false;
+        if (colors.containsKey(idle)) {
+            idleId = colors.get(idle).getId();
+            earlier.add(0, colors.get(idle));
+            // the idle color takes no traffic yet, so its upgrade is always finished before the cutover
+            upgradeService(context, colors.get(idle), dockerUUID, listener, environments, sidekicks, deployer, true, earlier);
+        } else {
+            idleId = createService(context, stack, idleName, dockerUUID, listener, environments, earlier);
+            routed.add(idleId);
+            created = true;
+        }
+        Optional<Service> idleService = rancherClient.service(environmentIdParsed, idleId);
+        if (idleService.isPresent() && idleService.get().getLaunchConfig() != null && idleService.get().getLaunchConfig().getHealthCheck() != null) {
+            waitUntilServiceIsHealthy(context, idleId, listener);
+        }
+        if (created) {
+            // an upgraded color was already warmed up before its upgrade was finished
+            warmUp(context, idleId, listener);
+        }
+
+        context.phase(DeploymentPhase.CUTOVER);
+        LbConfig lbConfig = balancer.getLbConfig();
+        int switched = 0;
+        for (PortRule rule : lbConfig.getPortRules()) {
+            if (routed.contains(rule.getServiceId())) {
+                rule.setServiceId(idleId);
+                switched++;
+            }
+        }
+        if (switched == 0) {
+            throw new AbortException(String.format("load balancer %s has no port rule for %s, add one targeting %s or %s first",
+                    balancer.getName(), serviceName, serviceName, idleName));
+        }
+        if (!rancherClient.updateLoadBalancer(environmentIdParsed, balancer.getId(), lbConfig).isPresent()) {
+            throw new AbortException("update load balancer error");
+        }
+        waitUntilServiceStateIs(context, balancer.getId(), ACTIVE, listener);
+        listener.getLogger().printf("load balancer %s routes %d port rule(s) to %s%s%n", balancer.getName(), switched, idleName,
+                live == null ? "" : ", " + serviceName + "-" + live + " keeps running for switch-back");
+    }
+
+    private LoadBalancerService getLoadBalancer(ServiceField balancerField, TaskListener listener) throws IOException {
+        Stack stack = getStack(listener, balancerField, rancherClient, false);
+        Optional<Services> services = rancherClient.services(environmentIdParsed, stack.getId());
+        Optional<Service> service = services.isPresent()
+                ? services.get().getData().stream().filter(s -> s.getName().equals(balancerField.getServiceName())).findAny()
+                : Optional.empty();
+        if (!service.isPresent()) {
+            throw new AbortException(String.format("Load balancer [%s/%s] does not exists", balancerField.getStackName(), balancerField.getServiceName()));
+        }
+        Optional<LoadBalancerService> balancer = rancherClient.loadBalancerService(environmentIdParsed, service.get().getId());
+        if (!balancer.isPresent() || balancer.get().getLbConfig() == null) {
+            throw new AbortException(String.format("Service [%s/%s] is not a load balancer", balancerField.getStackName(), balancerField.getServiceName()));
+        }
+        return balancer.get();
+    }
+
+    private void upgradeService(DeploymentContext context, Service service, String dockerUUID, TaskListener listener, Map<String, Object> environments,
+                                Map<String, LaunchConfig> sidekicks, String deployer, boolean finish, List<Service> earlier) throws IOException, InterruptedException {
+        if (!lease) {
+            rollingUpgrade(context, service, dockerUUID, listener, environments, sidekicks, deployer, finish, earlier);
+            return;
+        }
+        // the service may have been upgraded by the previous lease holder, so continue from its current state
+        Service leased = acquireLease(context, service.getId(), deployer, listener);
+        try {
+            rollingUpgrade(context, leased, dockerUUID, listener, environments, sidekicks, deployer, finish, earlier);
+        } finally {
+            context.releaseLease(listener);
+        }
+    }
+
+    private void rollingUpgrade(DeploymentContext context, Service service, String dockerUUID, TaskListener listener, Map<String, Object> environments,
+                                Map<String, LaunchConfig> sidekicks, String deployer, boolean finish, List<Service> earlier) throws IOException {
         listener.getLogger().println("Upgrading service instance");
+        if (reattach(context, service, dockerUUID, listener, finish)) {
+            return;
+        }
         checkServiceState(service, listener);
         ServiceUpgrade serviceUpgrade = new ServiceUpgrade();
         InServiceStrategy inServiceStrategy = new InServiceStrategy();
 
         LaunchConfig launchConfig = service.getLaunchConfig();
-        launchConfig.setImageUuid(dockerUUID);
-        launchConfig.getEnvironment().putAll(environments);
-
-        if (!Strings.isNullOrEmpty(ports)) {
-            launchConfig.setPorts(Arrays.asList(ports.split(",")));
+        LaunchConfig desiredLaunchConfig = newLaunchConfig(dockerUUID, environments);
+        // the affinity only pays off when the image is pulled, it is no reason to upgrade on its own
+        ImageLocality locality = dockerUUID.equals(launchConfig.getImageUuid()) ? null
+                : preferWarmHosts(earlier, launchConfig, desiredLaunchConfig, listener);
+        LaunchConfigDiff diff = LaunchConfigDiff.between(launchConfig, desiredLaunchConfig);
+        Map<String, LaunchConfigDiff> sidekickDiffs = sidekickDiffs(service, sidekicks);
+        if (diff.isEmpty() && sidekickDiffs.isEmpty()) {
+            listener.getLogger().printf("service %s already runs image %s with the requested environment and ports, skip upgrade%n", service.getName(), dockerUUID);
+            context.traceAttribute("rancher.state", service.getState());
+            return;
         }
+        listener.getLogger().println("launch config changes:");
+        diff.getChanges().forEach(change -> listener.getLogger().println("  " + change));
+        sidekickDiffs.forEach((name, sidekickDiff) -> sidekickDiff.getChanges().forEach(change -> listener.getLogger().println("  " + name + "." + change)));
 
-        if (startFirst && launchConfig.getPorts().isEmpty() ) {
+        List<String> upgradePorts = Strings.isNullOrEmpty(ports) ? launchConfig.getPorts() : desiredLaunchConfig.getPorts();
+
+        if (startFirst && upgradePorts.isEmpty() ) {
             inServiceStrategy.setStartFirst(startFirst);
 
         }
-        else if (startFirst && !(launchConfig.getPorts().isEmpty())){
+        else if (startFirst && !(upgradePorts.isEmpty())){
             throw new AbortException("Ports can not be in use with start with stop service.");
         }
         else { 
@@ -124,41 +327,465 @@ public class RancherBuilder extends AbstractRancherBuilder {
         }
         // inServiceStrategy.setStartFirst(launchConfig.getPorts().isEmpty());
 
-        inServiceStrategy.setLaunchConfig(launchConfig);
+        inServiceStrategy.setLaunchConfig(diff.toUpgradeLaunchConfig());
+        if (!sidekickDiffs.isEmpty()) {
+            // all containers of the service change in the same rolling cycle
+            List<LaunchConfig> secondaryLaunchConfigs = new ArrayList<>();
+            sidekickDiffs.values().forEach(sidekickDiff -> secondaryLaunchConfigs.add(sidekickDiff.toUpgradeLaunchConfig()));
+            inServiceStrategy.setSecondaryLaunchConfigs(secondaryLaunchConfigs);
+        }
         serviceUpgrade.setInServiceStrategy(inServiceStrategy);
-        Optional<Service> serviceInstance = rancherClient.upgradeService(environmentIdParsed, service.getId(), serviceUpgrade);
-        if (!serviceInstance.isPresent()) {
-            throw new AbortException("upgrade service error");
+        int surgeInstances = surgeInstances(service, finish, listener);
+        if (checkCapacity && (startFirst || surgeInstances > 0)) {
+            context.phase(DeploymentPhase.CAPACITY);
+            surgeInstances = checkCapacity(service, upgradePorts, surgeInstances, inServiceStrategy.getBatchSize(), listener);
+        }
+        if (prePull && !dockerUUID.equals(launchConfig.getImageUuid())) {
+            context.phase(DeploymentPhase.PRE_PULL);
+            Set<String> pulled = prePullImage(context, service, dockerUUID, listener);
+            if (locality != null) {
+                locality.addHosts(pulled);
+            }
+        }
+        if (keepHistory) {
+            LaunchConfigHistory.record(rancherClient, environmentIdParsed, service, deployer);
+            listener.getLogger().printf("saved the launch config of service %s on the build as snapshot of %s%n", service.getName(), deployer);
+        }
+        saveLatencyBaseline(context, service, dockerUUID, listener);
+        int originalScale = service.getScale();
+        boolean completed = false;
+        try {
+            if (surgeInstances > 0) {
+                context.phase(DeploymentPhase.SURGE);
+                listener.getLogger().printf("surge: scaling service %s from %d to %d for the upgrade%n", service.getName(), originalScale, originalScale + surgeInstances);
+                rancherClient.scaleService(environmentIdParsed, service.getId(), originalScale + surgeInstances);
+                waitUntilServiceStateIs(context, service.getId(), ACTIVE, listener);
+                // the surge instances make up for the batch being replaced, so the service never runs below its scale
+                inServiceStrategy.setBatchSize(surgeInstances);
+            }
+            context.phase(DeploymentPhase.UPGRADE);
+            context.journalUpgrade(environmentIdParsed, service.getId(), service.getName(), dockerUUID, launchConfig.getImageUuid(), DeploymentPhase.UPGRADE);
+            if (surgeInstances > 0) {
+                context.journalSurge(originalScale);
+            }
+            if (keepHistory) {
+                context.journalSnapshot(LaunchConfigSnapshot.of(launchConfig, service.getSecondaryLaunchConfigs()));
+            }
+            Optional<Service> serviceInstance = rancherClient.upgradeService(environmentIdParsed, service.getId(), serviceUpgrade);
+            if (!serviceInstance.isPresent()) {
+                throw new AbortException("upgrade service error");
+            }
+            completeUpgrade(context, serviceInstance.get().getId(), listener, finish);
+            completed = true;
+            reportWarmHosts(context, service.getId(), dockerUUID, locality, listener);
+        } finally {
+            if (surgeInstances > 0) {
+                restoreScale(context, service.getId(), originalScale, completed, listener);
+            }
+        }
+    }
+
+    /**
+     * Number of instances the service is scaled up by for the upgrade, from the surge option as a count or as a
+     * percentage of the current scale, rounded up. The scale is only restored once the upgrade is finished, so a surge
+     * needs the upgrade to be finished by this step.
+     */
+    private int surgeInstances(Service service, boolean finish, TaskListener listener) throws AbortException {
+        if (Strings.isNullOrEmpty(surge) || !Strings.isNullOrEmpty(loadBalancer)) {
+            // the idle color of a blue/green deploy takes no traffic, so it needs no extra capacity
+            return 0;
+        }
+        if (!finish) {
+            throw new AbortException("surge needs Auto Confirm, the scale of the service can only be restored once the upgrade is finished");
+        }
+        LaunchConfig launchConfig = service.getLaunchConfig();
+        if (launchConfig != null && launchConfig.getLabels() != null && "true".equals(launchConfig.getLabels().get(GLOBAL_LABEL))) {
+            listener.getLogger().printf("service %s is global, skip surge%n", service.getName());
+            return 0;
+        }
+        Integer surgeValue = Ints.tryParse(surge.endsWith("%") ? surge.substring(0, surge.length() - 1).trim() : surge);
+        if (surgeValue == null || surgeValue < 0) {
+            throw new AbortException("surge should be a number of instances or a percentage like 25%, but is " + surge);
+        }
+        if (!surge.endsWith("%")) {
+            return surgeValue;
+        }
+        return surgeValue == 0 ? 0 : Math.max(1, (service.getScale() * surgeValue + 99) / 100);
+    }
+
+    /**
+     * Pre-flight check that the hosts have room for the instances the upgrade starts next to the running ones: the
+     * surge and, for a start-first upgrade, the new containers of a batch. Without room rancher keeps the service in
+     * upgrading until the timeout, so the surge is reduced to what fits, and a start-first upgrade that doesn't fit at
+     * all fails right away.
+     *
+     * @return the surge to use
+     */
+    private int checkCapacity(Service service, List<String> upgradePorts, int surgeInstances, int batchSize, TaskListener listener) throws IOException {
+        LaunchConfig launchConfig = service.getLaunchConfig();
+        long memory = HostCapacity.memoryOf(launchConfig.getMemoryReservation(), launchConfig.getMemory());
+        long milliCpu = launchConfig.getMilliCpuReservation() == null ? 0 : launchConfig.getMilliCpuReservation();
+        boolean hostPorts = upgradePorts.stream().anyMatch(port -> port.contains(":"));
+        if (memory <= 0 && milliCpu <= 0 && !hostPorts) {
+            listener.getLogger().printf("capacity: service %s reserves no memory, CPU or host port, skip the host capacity check%n", service.getName());
+            return surgeInstances;
+        }
+
+        List<Host> hosts = rancherClient.hosts(environmentIdParsed).map(Hosts::getData).orElse(Collections.emptyList());
+        Map<String, List<Instance>> hostInstances = new HashMap<>();
+        for (Host host : hosts) {
+            hostInstances.put(host.getId(), rancherClient.hostInstances(environmentIdParsed, host.getId()).map(Instances::getData).orElse(Collections.emptyList()));
+        }
+        HostCapacity capacity = HostCapacity.of(hosts, hostInstances);
+        Set<String> onePerHost = new HashSet<>();
+        Set<String> excluded = new HashSet<>();
+        if (hostPorts) {
+            // a host port binds once per host, only hosts without an instance of the service can take a new one
+            onePerHost.addAll(capacity.getHostIds());
+            rancherClient.instances(environmentIdParsed, service.getId()).map(Instances::getData).orElse(Collections.emptyList())
+                    .forEach(instance -> excluded.add(instance.getHostId()));
+        }
+        int slots = capacity.slots(memory, milliCpu, onePerHost, excluded);
+        int needed = surgeInstances + (startFirst ? (surgeInstances > 0 ? surgeInstances : batchSize) : 0);
+        listener.getLogger().printf("capacity: the upgrade of service %s starts %d more instance(s) of %dMiB memory and %dm CPU, the hosts have room for %s [%s]%n",
+                service.getName(), needed, memory / (1024 * 1024), milliCpu, slots == Integer.MAX_VALUE ? "any number" : slots, capacity);
+        if (slots >= needed) {
+            return surgeInstances;
+        }
+        if (startFirst && slots == 0) {
+            throw new AbortException(String.format("the hosts have no room for another instance of service %s, a start-first upgrade would hang in upgrading until the timeout", service.getName()));
+        }
+        // a start-first batch runs the new containers next to the old ones, so each surge instance takes two slots
+        int reduced = startFirst ? slots / 2 : slots;
+        listener.getLogger().printf("capacity: reducing the surge of service %s from %d to %d instance(s)%n", service.getName(), surgeInstances, reduced);
+        return reduced;
+    }
+
+    /**
+     * Scales the service back after a surge. A failed scale-down is only logged, it must not hide the upgrade outcome.
+     */
+    private void restoreScale(DeploymentContext context, String serviceId, int originalScale, boolean waitUntilActive, TaskListener listener) {
+        try {
+            listener.getLogger().printf("surge: restoring the scale of service %s to %d%n", serviceId, originalScale);
+            rancherClient.scaleService(environmentIdParsed, serviceId, originalScale);
+            if (waitUntilActive) {
+                waitUntilServiceStateIs(context, serviceId, ACTIVE, listener);
+            }
+        } catch (IOException | RuntimeException e) {
+            listener.getLogger().printf("failed to restore the scale of service %s to %d, restore it manually: %s%n", serviceId, originalScale, e.getMessage());
+        }
+    }
+
+    /**
+     * Diffs of the sidekicks that the changes touch against their live secondary launch configs, by sidekick name.
+     */
+    private Map<String, LaunchConfigDiff> sidekickDiffs(Service service, Map<String, LaunchConfig> sidekicks) throws AbortException {
+        Map<String, LaunchConfigDiff> diffs = new LinkedHashMap<>();
+        if (sidekicks.isEmpty()) {
+            return diffs;
+        }
+        Map<String, LaunchConfig> live = new LinkedHashMap<>();
+        if (service.getSecondaryLaunchConfigs() != null) {
+            service.getSecondaryLaunchConfigs().forEach(secondary -> live.put(secondary.getName(), secondary));
+        }
+        for (Map.Entry<String, LaunchConfig> sidekick : sidekicks.entrySet()) {
+            if (!live.containsKey(sidekick.getKey())) {
+                throw new AbortException(String.format("service %s has no sidekick %s, its sidekicks are %s", service.getName(), sidekick.getKey(), live.keySet()));
+            }
+            LaunchConfigDiff diff = LaunchConfigDiff.between(live.get(sidekick.getKey()), sidekick.getValue());
+            if (!diff.isEmpty()) {
+                diffs.put(sidekick.getKey(), diff);
+            }
+        }
+        return diffs;
+    }
+
+    /**
+     * Pulls the image on every host that runs the service before the upgrade stops any of its containers, using a
+     * short-lived global service with affinity to the containers of the service. The pulling containers are started
+     * once with a no-op entry point, and the service is removed once all of them are created or the timeout passed.
+     *
+     * @return the hosts the image was pulled on
+     */
+    private Set<String> prePullImage(DeploymentContext context, Service service, String dockerUUID, TaskListener listener) throws IOException {
+        Optional<Instances> instances = rancherClient.instances(environmentIdParsed, service.getId());
+        Set<String> hosts = new HashSet<>();
+        String stackService = null;
+        for (Instance instance : instances.isPresent() ? instances.get().getData() : Collections.<Instance>emptyList()) {
+            if (instance.getHostId() != null) {
+                hosts.add(instance.getHostId());
+            }
+            if (instance.getLabels() != null && instance.getLabels().containsKey(STACK_SERVICE_LABEL)) {
+                stackService = instance.getLabels().get(STACK_SERVICE_LABEL);
+            }
+        }
+        if (hosts.isEmpty() || stackService == null) {
+            listener.getLogger().printf("service %s has no running containers, skip image pre-pull%n", service.getName());
+            return Collections.emptySet();
         }
 
-        waitUntilServiceStateIs(serviceInstance.get().getId(), UPGRADED, listener);
+        LaunchConfig pullConfig = new LaunchConfig();
+        pullConfig.setImageUuid(dockerUUID);
+        pullConfig.setEntryPoint(Collections.singletonList("true"));
+        pullConfig.setStdinOpen(false);
+        pullConfig.setTty(false);
+        pullConfig.getLabels().put(GLOBAL_LABEL, "true");
+        pullConfig.getLabels().put("io.rancher.container.start_once", "true");
+        pullConfig.getLabels().put("io.rancher.scheduler.affinity:container_label", STACK_SERVICE_LABEL + "=" + stackService);
+        Service puller = new Service();
+        puller.setName(service.getName() + PRE_PULL_SUFFIX + Long.toString(System.currentTimeMillis(), 36));
+        puller.setLaunchConfig(pullConfig);
+        listener.getLogger().printf("pre-pulling %s on %d host(s) with service %s%n", dockerUUID, hosts.size(), puller.getName());
+        Optional<Service> created = rancherClient.createService(puller, environmentIdParsed, service.getStackId());
+        if (!created.isPresent()) {
+            throw new AbortException("create pre-pull service error");
+        }
+
+        String pullerId = created.get().getId();
+        Set<String> pulled = new HashSet<>();
+        Set<String> failed = new TreeSet<>();
+        try {
+            long deadline = System.currentTimeMillis() + 1000L * (timeout != 0 ? timeout : DEFAULT_TIMEOUT);
+            while (System.currentTimeMillis() < deadline) {
+                Optional<Instances> pulling = rancherClient.instances(environmentIdParsed, pullerId);
+                List<Instance> pullers = pulling.isPresent() ? pulling.get().getData() : Collections.<Instance>emptyList();
+                // only a container that started has its image, one in error may have failed to pull it
+                for (Instance instance : pullers) {
+                    if (instance.getHostId() == null) {
+                        continue;
+                    }
+                    if (STARTED_STATES.contains(instance.getState())) {
+                        pulled.add(instance.getHostId());
+                    } else if (FAILED_STATES.contains(instance.getState())) {
+                        failed.add(instance.getHostId());
+                    }
+                }
+                failed.removeAll(pulled);
+                if (pulled.size() + failed.size() >= hosts.size()) {
+                    break;
+                }
+                context.renewLease();
+                Thread.sleep(pollIntervalMillis);
+            }
+            if (!failed.isEmpty()) {
+                listener.getLogger().printf("image pre-pull failed on host(s) %s, see the events of service %s, upgrading anyway%n", failed, puller.getName());
+            }
+            if (pulled.size() < hosts.size()) {
+                listener.getLogger().printf("image %s was pulled on %d of %d host(s) within %ds, upgrading anyway%n", dockerUUID, pulled.size(), hosts.size(), timeout);
+            } else {
+                listener.getLogger().printf("image %s is present on all %d host(s)%n", dockerUUID, hosts.size());
+            }
+            return pulled;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AbortException("interrupted while pre-pulling " + dockerUUID);
+        } finally {
+            try {
+                rancherClient.removeService(environmentIdParsed, pullerId);
+            } catch (IOException | RuntimeException e) {
+                listener.getLogger().printf("failed to remove pre-pull service %s, remove it manually: %s%n", puller.getName(), e.getMessage());
+            }
+        }
+    }
 
-        if (!confirm) {
+    /**
+     * Sends the warm-up requests to the running containers of the service until their response time is within the
+     * target or the budget is used up, and continues either way.
+     */
+    private void warmUp(DeploymentContext context, String serviceId, TaskListener listener) throws IOException {
+        List<String> paths = WarmUp.paths(warmUp);
+        if (paths.isEmpty()) {
+            return;
+        }
+        context.phase(DeploymentPhase.WARM_UP);
+        List<String> addresses = runningAddresses(serviceId);
+        if (addresses.isEmpty()) {
+            listener.getLogger().println("no running container with an address to warm up, skip warm-up");
             return;
         }
 
-        rancherClient.finishUpgradeService(environmentIdParsed, serviceInstance.get().getId());
-        waitUntilServiceStateIs(serviceInstance.get().getId(), ACTIVE, listener);
+        listener.getLogger().printf("warming up %d container(s) on port %d with %d request(s) at %d/s, target %dms, budget %ds%n",
+                addresses.size(), warmUpPort, paths.size(), warmUpRate, warmUpTarget, warmUpBudget);
+        WarmUp warmUpTraffic = new WarmUp(addresses, paths, warmUpPort, warmUpRate, warmUpTarget, 1000L * warmUpBudget);
+        try {
+            while (!warmUpTraffic.isDone()) {
+                warmUpTraffic.send();
+                context.renewLease();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AbortException("interrupted while warming up service " + serviceId);
+        }
+        long p90 = warmUpTraffic.percentile90();
+        String latency = p90 == Long.MAX_VALUE ? "failing" : p90 + "ms";
+        if (warmUpTraffic.isTargetMet()) {
+            listener.getLogger().printf("warm-up reached p90 %s after %d request(s)%n", latency, warmUpTraffic.getSent());
+        } else {
+            listener.getLogger().printf("warm-up budget of %ds used up with p90 %s after %d request(s), %d failed, confirming anyway%n",
+                    warmUpBudget, latency, warmUpTraffic.getSent(), warmUpTraffic.getFailed());
+        }
+        context.traceAttribute("rancher.warm_up.requests", warmUpTraffic.getSent());
+        context.traceAttribute("rancher.warm_up.target_met", warmUpTraffic.isTargetMet());
     }
 
-    private void createService(Stack stack, String serviceName, String dockerUUID, TaskListener listener, Map<String, Object> environments) throws IOException {
+    private void completeUpgrade(DeploymentContext context, String serviceId, TaskListener listener, boolean finish) throws IOException {
+        context.phase(DeploymentPhase.WAIT_UPGRADED);
+        waitUntilServiceStateIs(context, serviceId, UPGRADED, listener);
+
+        if (!finish) {
+            context.traceAttribute("rancher.state", UPGRADED);
+            return;
+        }
+        warmUp(context, serviceId, listener);
+        finishUpgrade(context, serviceId, listener);
+    }
+
+    /**
+     * Continues the upgrade of the service to the same image that an earlier build left open, e.g. because the
+     * controller restarted while it was waiting, instead of failing on the service state and rolling out again.
+     */
+    private boolean reattach(DeploymentContext context, Service service, String dockerUUID, TaskListener listener, boolean finish) throws IOException {
+        DeploymentState interrupted = context.interruptedUpgrade(environmentIdParsed, service.getId());
+        LaunchConfig launchConfig = service.getLaunchConfig();
+        if (interrupted == null || !dockerUUID.equals(interrupted.getImageUuid())
+                || launchConfig == null || !dockerUUID.equals(launchConfig.getImageUuid())) {
+            return false;
+        }
+        String state = service.getState();
+        if (!UPGRADING.equalsIgnoreCase(state) && !UPGRADED.equalsIgnoreCase(state) && !FINISHING_UPGRADE.equalsIgnoreCase(state)) {
+            return false;
+        }
+        listener.getLogger().printf("reattaching to the upgrade of service %s to %s that %s left in phase '%s', service is %s%n",
+                service.getName(), dockerUUID, interrupted.getBuild(), interrupted.getPhase().getDisplayName(), state);
+        context.resumeUpgrade(interrupted);
+        if (FINISHING_UPGRADE.equalsIgnoreCase(state)) {
+            context.journalUpgrade(environmentIdParsed, service.getId(), service.getName(), dockerUUID, interrupted.getPreviousImageUuid(), DeploymentPhase.WAIT_ACTIVE);
+            context.phase(DeploymentPhase.WAIT_ACTIVE);
+            waitUntilServiceStateIs(context, service.getId(), ACTIVE, listener);
+            context.traceAttribute("rancher.state", ACTIVE);
+            if (interrupted.getOriginalScale() > 0) {
+                restoreScale(context, service.getId(), interrupted.getOriginalScale(), true, listener);
+            }
+        } else {
+            context.journalUpgrade(environmentIdParsed, service.getId(), service.getName(), dockerUUID, interrupted.getPreviousImageUuid(), DeploymentPhase.WAIT_UPGRADED);
+            if (interrupted.getOriginalScale() > 0) {
+                context.journalSurge(interrupted.getOriginalScale());
+            }
+            boolean completed = false;
+            try {
+                completeUpgrade(context, service.getId(), listener, finish);
+                completed = true;
+            } finally {
+                if (interrupted.getOriginalScale() > 0 && (finish || !completed)) {
+                    restoreScale(context, service.getId(), interrupted.getOriginalScale(), completed, listener);
+                } else if (interrupted.getOriginalScale() > 0) {
+                    listener.getLogger().printf("surge: service %s keeps its surge until the upgrade is finished, then scale it back to %d%n",
+                            service.getName(), interrupted.getOriginalScale());
+                }
+            }
+        }
+        return true;
+    }
+
+    private String createService(DeploymentContext context, Stack stack, String serviceName, String dockerUUID, TaskListener listener, Map<String, Object> environments,
+                                 List<Service> earlier) throws IOException {
         listener.getLogger().println("Creating service instance");
         Service service = new Service();
         service.setName(serviceName);
+        service.setLaunchConfig(newLaunchConfig(dockerUUID, environments));
+        ImageLocality locality = preferWarmHosts(earlier, null, service.getLaunchConfig(), listener);
+        context.phase(DeploymentPhase.CREATE);
+        Optional<Service> serviceInstance = rancherClient.createService(service, environmentIdParsed, stack.getId());
+
+        if (!serviceInstance.isPresent()) {
+            throw new AbortException("upgrade service error");
+        }
+
+        context.phase(DeploymentPhase.WAIT_ACTIVE);
+        waitUntilServiceStateIs(context, serviceInstance.get().getId(), ACTIVE, listener);
+        context.traceAttribute("rancher.state", ACTIVE);
+        reportWarmHosts(context, serviceInstance.get().getId(), dockerUUID, locality, listener);
+        return serviceInstance.get().getId();
+    }
+
+    /**
+     * Points the new containers at the hosts that ran the earlier versions with a soft affinity label, as these hosts
+     * hold most of the image layers already, see {@link ImageLocality}. Returns {@code null} when the option is off or
+     * no earlier version runs.
+     */
+    private ImageLocality preferWarmHosts(List<Service> earlier, LaunchConfig live, LaunchConfig desired, TaskListener listener) throws IOException {
+        if (!preferWarmHosts) {
+            return null;
+        }
+        // stamp the image, so the next rollout can point at the containers running it
+        desired.getLabels().put(ImageLocality.IMAGE_LABEL, ImageLocality.imageLabel(desired.getImageUuid()));
+        ImageLocality locality = new ImageLocality();
+        for (Service service : earlier) {
+            locality.addInstances(rancherClient.instances(environmentIdParsed, service.getId()).map(Instances::getData).orElse(Collections.emptyList()));
+        }
+        String liveAffinity = live == null || live.getLabels() == null ? null : live.getLabels().get(ImageLocality.AFFINITY_LABEL);
+        String affinity = locality.affinity(liveAffinity);
+        if (!affinity.isEmpty()) {
+            desired.getLabels().put(ImageLocality.AFFINITY_LABEL, affinity);
+        } else if (liveAffinity != null) {
+            desired.getLabels().put(ImageLocality.AFFINITY_LABEL, null);
+        }
+        if (locality.getHostIds().isEmpty()) {
+            listener.getLogger().println("image locality: no earlier version is running, no host to prefer");
+            return null;
+        }
+        if (locality.isEmpty()) {
+            listener.getLogger().println("image locality: the earlier containers carry no image stamp yet, hosts are preferred from the next deploy on");
+        } else {
+            listener.getLogger().printf("image locality: preferring the %d host(s) that run the earlier image%n", locality.getHostIds().size());
+        }
+        return locality;
+    }
+
+    /**
+     * Logs the share of the containers running the image that were started on a host that held an earlier version.
+     */
+    private void reportWarmHosts(DeploymentContext context, String serviceId, String dockerUUID, ImageLocality locality, TaskListener listener) throws IOException {
+        if (locality == null) {
+            return;
+        }
+        List<Instance> instances = rancherClient.instances(environmentIdParsed, serviceId).map(Instances::getData).orElse(Collections.emptyList());
+        int started = (int) instances.stream().filter(instance -> dockerUUID.equals(instance.getImageUuid())).count();
+        if (started == 0) {
+            return;
+        }
+        int warm = locality.warmInstances(instances, dockerUUID);
+        listener.getLogger().printf("image locality: %d of %d container(s) started on warm hosts (%d%%)%n", warm, started, 100 * warm / started);
+        context.traceAttribute("rancher.warm_host_share", (double) warm / started);
+    }
+
+    private LaunchConfig newLaunchConfig(String dockerUUID, Map<String, Object> environments) {
         LaunchConfig launchConfig = new LaunchConfig();
         launchConfig.setImageUuid(dockerUUID);
         launchConfig.setEnvironment(environments);
         if (!Strings.isNullOrEmpty(ports)) {
             launchConfig.setPorts(Arrays.asList(ports.split(",")));
         }
-        service.setLaunchConfig(launchConfig);
-        Optional<Service> serviceInstance = rancherClient.createService(service, environmentIdParsed, stack.getId());
+        return launchConfig;
+    }
 
-        if (!serviceInstance.isPresent()) {
-            throw new AbortException("upgrade service error");
-        }
+    @Override
+    protected String getStepName() {
+        return DISPLAY_NAME;
+    }
 
-        waitUntilServiceStateIs(serviceInstance.get().getId(), ACTIVE, listener);
+    @Override
+    protected List<String> getTemplateFields() {
+        List<String> fields = new ArrayList<>(super.getTemplateFields());
+        fields.add(image);
+        fields.add(environments);
+        fields.add(environmentFiles);
+        fields.add(sidekicks);
+        fields.add(loadBalancer);
+        if (lease || keepHistory) {
+            fields.add(DEPLOYER);
+        }
+        return fields;
     }
 
     public boolean isConfirm() {
@@ -173,6 +800,146 @@ public class RancherBuilder extends AbstractRancherBuilder {
         return environments;
     }
 
+    public String getEnvironmentFiles() {
+        return environmentFiles;
+    }
+
+    @DataBoundSetter
+    public void setEnvironmentFiles(String environmentFiles) {
+        this.environmentFiles = Util.fixEmptyAndTrim(environmentFiles);
+    }
+
+    public boolean isCoalesce() {
+        return coalesce;
+    }
+
+    @DataBoundSetter
+    public void setCoalesce(boolean coalesce) {
+        this.coalesce = coalesce;
+    }
+
+    @Override
+    protected boolean isCoalescing() {
+        return coalesce;
+    }
+
+    public boolean isLease() {
+        return lease;
+    }
+
+    @DataBoundSetter
+    public void setLease(boolean lease) {
+        this.lease = lease;
+    }
+
+    public String getLoadBalancer() {
+        return loadBalancer;
+    }
+
+    @DataBoundSetter
+    public void setLoadBalancer(String loadBalancer) {
+        this.loadBalancer = Util.fixEmptyAndTrim(loadBalancer);
+    }
+
+    public boolean isCheckCapacity() {
+        return checkCapacity;
+    }
+
+    @DataBoundSetter
+    public void setCheckCapacity(boolean checkCapacity) {
+        this.checkCapacity = checkCapacity;
+    }
+
+    public boolean isPrePull() {
+        return prePull;
+    }
+
+    @DataBoundSetter
+    public void setPrePull(boolean prePull) {
+        this.prePull = prePull;
+    }
+
+    public boolean isPreferWarmHosts() {
+        return preferWarmHosts;
+    }
+
+    @DataBoundSetter
+    public void setPreferWarmHosts(boolean preferWarmHosts) {
+        this.preferWarmHosts = preferWarmHosts;
+    }
+
+    public boolean isKeepHistory() {
+        return keepHistory;
+    }
+
+    @DataBoundSetter
+    public void setKeepHistory(boolean keepHistory) {
+        this.keepHistory = keepHistory;
+    }
+
+    public String getSurge() {
+        return surge;
+    }
+
+    @DataBoundSetter
+    public void setSurge(String surge) {
+        this.surge = Util.fixEmptyAndTrim(surge);
+    }
+
+    public String getSidekicks() {
+        return sidekicks;
+    }
+
+    @DataBoundSetter
+    public void setSidekicks(String sidekicks) {
+        this.sidekicks = Util.fixEmptyAndTrim(sidekicks);
+    }
+
+    public String getWarmUp() {
+        return warmUp;
+    }
+
+    @DataBoundSetter
+    public void setWarmUp(String warmUp) {
+        this.warmUp = Util.fixEmptyAndTrim(warmUp);
+    }
+
+    public int getWarmUpPort() {
+        return warmUpPort;
+    }
+
+    @DataBoundSetter
+    public void setWarmUpPort(int warmUpPort) {
+        this.warmUpPort = warmUpPort > 0 ? warmUpPort : DEFAULT_WARM_UP_PORT;
+    }
+
+    public int getWarmUpRate() {
+        return warmUpRate;
+    }
+
+    @DataBoundSetter
+    public void setWarmUpRate(int warmUpRate) {
+        this.warmUpRate = warmUpRate > 0 ? warmUpRate : DEFAULT_WARM_UP_RATE;
+    }
+
+    public int getWarmUpTarget() {
+        return warmUpTarget;
+    }
+
+    @DataBoundSetter
+    public void setWarmUpTarget(int warmUpTarget) {
+        this.warmUpTarget = warmUpTarget > 0 ? warmUpTarget : DEFAULT_WARM_UP_TARGET;
+    }
+
+    public int getWarmUpBudget() {
+        return warmUpBudget;
+    }
+
+    @DataBoundSetter
+    public void setWarmUpBudget(int warmUpBudget) {
+        this.warmUpBudget = warmUpBudget > 0 ? warmUpBudget : DEFAULT_WARM_UP_BUDGET;
+    }
+
     public String getImage() {
         return image;
     }
@@ -197,7 +964,7 @@ public class RancherBuilder extends AbstractRancherBuilder {
         }
 
         public String getDisplayName() {
-            return "Deploy/Upgrade Rancher Service";
+            return DISPLAY_NAME;
         }
 
         @Override
@@ -291,6 +1058,21 @@ public class RancherBuilder extends AbstractRancherBuilder {
             return validate ? FormValidation.ok() : FormValidation.error("Service name should be like stack/service");
         }
 
+        public FormValidation doCheckSurge(@QueryParameter String value, @QueryParameter boolean confirm) {
+            String surge = Strings.nullToEmpty(value).trim();
+            Integer instances = Ints.tryParse(surge.endsWith("%") ? surge.substring(0, surge.length() - 1).trim() : surge);
+            boolean validate = surge.isEmpty() || (instances != null && instances >= 0);
+            if (!validate) {
+                return FormValidation.error("Surge should be a number of instances like 2 or a percentage like 25%");
+            }
+            return surge.isEmpty() || confirm ? FormValidation.ok() : FormValidation.error("Surge needs Auto Confirm");
+        }
+
+        public FormValidation doCheckLoadBalancer(@QueryParameter String value) {
+            boolean validate = Strings.isNullOrEmpty(value) || value.contains("${") || (value.contains("/") && value.split("/").length == 2);
+            return validate ? FormValidation.ok() : FormValidation.error("Load balancer name should be like stack/loadbalancer");
+        }
+
         public FormValidation doCheckImage(@QueryParameter String value) {
             return !Strings.isNullOrEmpty(value) ? FormValidation.ok() : FormValidation.error("Docker image can't be empty");
         }
@@ -4,7 +4,15 @@ import jenkins.plugins.rancher.action.ServiceUpgrade;
 import jenkins.plugins.rancher.entity.*;
 
 import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.UnaryOperator;
 
 
 /**
@@ -12,6 +20,8 @@ import java.util.Optional;
  */
 public class RancherClientRancher extends RancherHttpClient {
 
+    private int servicesPageSize = Integer.getInteger(RancherClientRancher.class.getName() + ".servicesPageSize", 100);
+
     public RancherClientRancher(String endpoint) {
         super(endpoint, "", "");
     }
@@ -27,6 +37,13 @@ public class RancherClientRancher extends RancherHttpClient {
         super(endpoint, accesskey, secretKey);
     }
 
+    /**
+     * Services read per request by {@link #allServices(String)}, 100 unless set by the system property.
+     */
+    void setServicesPageSize(int servicesPageSize) {
+        this.servicesPageSize = servicesPageSize;
+    }
+
     public Optional<Environment> environment(String environmentId) throws IOException {
         return Optional.ofNullable(get("/projects/" + environmentId, Environment.class));
     }
@@ -39,10 +56,44 @@ public class RancherClientRancher extends RancherHttpClient {
         return Optional.ofNullable(get(String.format("/projects/%s/stacks/%s/services", envId, stackId), Services.class));
     }
 
+    /**
+     * All services of the environment, over all stacks, read page by page.
+     */
+    public List<Service> allServices(String environmentId) throws IOException {
+        List<Service> services = new ArrayList<>();
+        String marker = null;
+        do {
+            String url = String.format("/projects/%s/services?limit=%d", environmentId, servicesPageSize);
+            Services page = get(marker == null ? url : url + "&marker=" + URLEncoder.encode(marker, "UTF-8"), Services.class);
+            if (page == null || page.getData() == null) {
+                break;
+            }
+            services.addAll(page.getData());
+            marker = page.getPagination() == null ? null : page.getPagination().getNextMarker();
+        } while (marker != null);
+        return services;
+    }
+
     public Optional<Service> service(String envId, String serviceId) throws IOException {
         return Optional.ofNullable(get(String.format("/projects/%s/services/%s", envId, serviceId), Service.class));
     }
 
+    public Optional<Instances> instances(String environmentId, String serviceId) throws IOException {
+        return Optional.ofNullable(get(String.format("/projects/%s/services/%s/instances", environmentId, serviceId), Instances.class));
+    }
+
+    public Optional<Hosts> hosts(String environmentId) throws IOException {
+        return Optional.ofNullable(get(String.format("/projects/%s/hosts", environmentId), Hosts.class));
+    }
+
+    public Optional<Instances> hostInstances(String environmentId, String hostId) throws IOException {
+        return Optional.ofNullable(get(String.format("/projects/%s/hosts/%s/instances", environmentId, hostId), Instances.class));
+    }
+
+    public Optional<Service> removeService(String environmentId, String serviceId) throws IOException {
+        return Optional.ofNullable(delete(String.format("/projects/%s/services/%s", environmentId, serviceId), Service.class));
+    }
+
     public Optional<Stack> createStack(Stack stack, String environmentId) throws IOException {
         return Optional.ofNullable(post(String.format("/projects/%s/stack", environmentId), stack, Stack.class));
     }
@@ -52,6 +103,49 @@ public class RancherClientRancher extends RancherHttpClient {
         return Optional.ofNullable(post(String.format("/projects/%s/service", environmentId), service, Service.class));
     }
 
+    /**
+     * Changes one entry of the service metadata, which unlike its launch config can change without an upgrade.
+     * {@code change} maps the current value of the entry, {@code null} when there is none, to the new one, {@code null}
+     * to remove it. Nothing is written when the value stays the same.
+     * <p>
+     * Rancher only replaces the metadata as a whole and has no conditional update, so the metadata is read right
+     * before it is put back with the change. That only narrows the race: an entry that another step or controller
+     * changes between the read and the put is lost.
+     *
+     * @return the service as read before the change, empty when it does not exist
+     */
+    public Optional<Service> updateServiceMetadata(String environmentId, String serviceId, String key, UnaryOperator<Object> change) throws IOException {
+        Optional<Service> service = service(environmentId, serviceId);
+        if (service.isPresent()) {
+            Map<String, Object> metadata = service.get().getMetadata() == null ? new LinkedHashMap<>() : new LinkedHashMap<>(service.get().getMetadata());
+            Object value = change.apply(metadata.get(key));
+            if (!Objects.equals(value, metadata.get(key))) {
+                if (value == null) {
+                    metadata.remove(key);
+                } else {
+                    metadata.put(key, value);
+                }
+                put(String.format("/projects/%s/services/%s", environmentId, serviceId), Collections.singletonMap("metadata", metadata), Service.class);
+            }
+        }
+        return service;
+    }
+
+    public Optional<Service> scaleService(String environmentId, String serviceId, int scale) throws IOException {
+        return Optional.ofNullable(put(String.format("/projects/%s/services/%s", environmentId, serviceId), Collections.singletonMap("scale", scale), Service.class));
+    }
+
+    public Optional<LoadBalancerService> loadBalancerService(String environmentId, String serviceId) throws IOException {
+        return Optional.ofNullable(get(String.format("/projects/%s/loadbalancerservices/%s", environmentId, serviceId), LoadBalancerService.class));
+    }
+
+    /**
+     * Replaces the configuration of a load balancer, all of its port rules change in one update.
+     */
+    public Optional<LoadBalancerService> updateLoadBalancer(String environmentId, String serviceId, LbConfig lbConfig) throws IOException {
+        return Optional.ofNullable(put(String.format("/projects/%s/loadbalancerservices/%s", environmentId, serviceId), Collections.singletonMap("lbConfig", lbConfig), LoadBalancerService.class));
+    }
+
     public Optional<Service> upgradeService(String environmentId, String serviceId, ServiceUpgrade serviceUpgrade) throws IOException {
         return Optional.ofNullable(post(String.format("/projects/%s/services/%s/?action=upgrade", environmentId, serviceId), serviceUpgrade, Service.class));
     }
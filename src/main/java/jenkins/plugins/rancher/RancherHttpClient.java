@@ -4,6 +4,10 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import jenkins.plugins.rancher.metrics.RancherMetrics;
+import jenkins.plugins.rancher.traffic.ExchangeListener;
+import jenkins.plugins.rancher.traffic.RancherExchange;
+import jenkins.plugins.rancher.traffic.RancherTransport;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
@@ -15,59 +19,117 @@ import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public abstract class RancherHttpClient {
 
     private final String accessKey;
     private final String secretKey;
     private final String endpoint;
+    private final List<ExchangeListener> exchangeListeners = new CopyOnWriteArrayList<>();
+    private RancherTransport transport = this::send;
 
     public RancherHttpClient(String endpoint, String accessKey, String secretKey) {
         this.accessKey = accessKey;
         this.secretKey = secretKey;
         this.endpoint = endpoint;
+        addExchangeListener(RancherMetrics.get().forEndpoint(endpoint));
+    }
+
+    /**
+     * Replaces the HTTP transport, e.g. with a {@link jenkins.plugins.rancher.traffic.TrafficReplay}.
+     */
+    public void setTransport(RancherTransport transport) {
+        this.transport = transport;
+    }
+
+    public void addExchangeListener(ExchangeListener listener) {
+        exchangeListeners.add(listener);
+    }
+
+    public void removeExchangeListener(ExchangeListener listener) {
+        exchangeListeners.remove(listener);
     }
 
     protected <T> T get(String url, Class<T> responseClass) throws IOException {
-        HttpGet getMethod = new HttpGet(endpoint + url);
-        return execute(getMethod, responseClass);
+        return execute(HttpGet.METHOD_NAME, url, null, responseClass);
     }
 
     protected <T> T delete(String url, Class<T> responseClass) throws IOException {
-        HttpDelete deleteMethod = new HttpDelete(endpoint + url);
-        return execute(deleteMethod, responseClass);
+        return execute(HttpDelete.METHOD_NAME, url, null, responseClass);
     }
 
     protected <T> T post(String url, Object data, Class<T> responseClass) throws IOException {
-        HttpPost postMethod = new HttpPost(endpoint + url);
-        postMethod.setEntity(getRequestBody(data));
-        return execute(postMethod, responseClass);
+        return execute(HttpPost.METHOD_NAME, url, getRequestBody(data), responseClass);
     }
 
     protected <T> T put(String url, Object data, Class<T> responseClass) throws IOException {
-        HttpPut putMethod = new HttpPut(endpoint + url);
-        putMethod.setEntity(getRequestBody(data));
-        return execute(putMethod, responseClass);
+        return execute(HttpPut.METHOD_NAME, url, getRequestBody(data), responseClass);
+    }
+
+    private <T> T execute(String method, String url, String requestBody, Class<T> responseClass) throws IOException {
+        for (ExchangeListener listener : exchangeListeners) {
+            listener.onStart(method, url);
+        }
+        RancherExchange exchange;
+        try {
+            exchange = transport.execute(method, url, requestBody);
+        } catch (IOException | RuntimeException e) {
+            for (ExchangeListener listener : exchangeListeners) {
+                listener.onFailure(method, url, e);
+            }
+            throw e;
+        }
+        for (ExchangeListener listener : exchangeListeners) {
+            listener.onExchange(exchange);
+        }
+
+        int statusCode = exchange.getStatusCode();
+        String responseBody = exchange.getResponseBody();
+
+        if (statusCode != HttpStatus.SC_OK && statusCode != HttpStatus.SC_ACCEPTED && statusCode != HttpStatus.SC_CREATED) {
+            throw new RuntimeException(String.format("Some Error Happen statusCode %d response: %s", statusCode, responseBody));
+        }
+
+        return getObjectMapper().readValue(responseBody, responseClass);
     }
 
-    private <T> T execute(HttpUriRequest request, Class<T> responseClass) throws IOException {
+    private RancherExchange send(String method, String url, String requestBody) throws IOException {
+        HttpUriRequest request = newRequest(method, endpoint + url, requestBody);
         request.setHeader("Authorization", getAuthorization());
         HttpClient httpClient = new DefaultHttpClient();
+
+        long startedAt = System.currentTimeMillis();
+        long start = System.nanoTime();
         HttpResponse response = httpClient.execute(request);
 
         int statusCode = response.getStatusLine().getStatusCode();
         String responseBody = EntityUtils.toString(response.getEntity());
+        return new RancherExchange(method, url, requestBody, statusCode, responseBody, startedAt, System.nanoTime() - start);
+    }
 
-        if (statusCode != HttpStatus.SC_OK && statusCode != HttpStatus.SC_ACCEPTED && statusCode != HttpStatus.SC_CREATED) {
-            throw new RuntimeException(String.format("Some Error Happen statusCode %d response: %s", statusCode, responseBody));
+    private static HttpUriRequest newRequest(String method, String uri, String requestBody) {
+        switch (method) {
+            case HttpGet.METHOD_NAME:
+                return new HttpGet(uri);
+            case HttpDelete.METHOD_NAME:
+                return new HttpDelete(uri);
+            case HttpPost.METHOD_NAME:
+                HttpPost postMethod = new HttpPost(uri);
+                postMethod.setEntity(new StringEntity(requestBody, StandardCharsets.UTF_8));
+                return postMethod;
+            case HttpPut.METHOD_NAME:
+                HttpPut putMethod = new HttpPut(uri);
+                putMethod.setEntity(new StringEntity(requestBody, StandardCharsets.UTF_8));
+                return putMethod;
+            default:
+                throw new IllegalArgumentException("Unsupported method " + method);
         }
-
-        return getObjectMapper().readValue(responseBody, responseClass);
     }
 
-    private StringEntity getRequestBody(Object data) throws JsonProcessingException {
-        String requestBody = getObjectMapper().writeValueAsString(data);
-        return new StringEntity(requestBody, StandardCharsets.UTF_8);
+    private String getRequestBody(Object data) throws JsonProcessingException {
+        return getObjectMapper().writeValueAsString(data);
     }
 
     private String getAuthorization() {
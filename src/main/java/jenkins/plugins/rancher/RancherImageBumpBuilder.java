@@ -0,0 +1,495 @@
+package jenkins.plugins.rancher;
+
+import com.cloudbees.plugins.credentials.common.StandardUsernameListBoxModel;
+import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
+import com.google.common.base.Strings;
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.AbstractProject;
+import hudson.model.TaskListener;
+import hudson.tasks.BuildStepDescriptor;
+import hudson.tasks.Builder;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+import jenkins.model.Jenkins;
+import jenkins.plugins.rancher.action.InServiceStrategy;
+import jenkins.plugins.rancher.action.ServiceUpgrade;
+import jenkins.plugins.rancher.entity.Environment;
+import jenkins.plugins.rancher.entity.LaunchConfig;
+import jenkins.plugins.rancher.entity.Service;
+import jenkins.plugins.rancher.entity.Stack;
+import jenkins.plugins.rancher.entity.Stacks;
+import jenkins.plugins.rancher.timing.DeploymentPhase;
+import jenkins.plugins.rancher.util.CredentialsUtil;
+import jenkins.plugins.rancher.util.ImagePattern;
+import jenkins.plugins.rancher.util.LaunchConfigDiff;
+import jenkins.plugins.rancher.util.Parser;
+import net.sf.json.JSONObject;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
+
+import javax.annotation.Nonnull;
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+import static jenkins.plugins.rancher.RancherBuilder.ACTIVE;
+import static jenkins.plugins.rancher.RancherBuilder.INACTIVE;
+import static jenkins.plugins.rancher.RancherBuilder.UPGRADED;
+
+/**
+ * Moves every service of an environment that runs a matching image, as primary container or as sidekick, to a new tag
+ * of the same repository, e.g. after a patched base image was pushed. The services are found with one paged scan of
+ * the environment, and upgraded a few at a time: the step starts up to {@code concurrency} upgrades, polls them all,
+ * and starts the next one when a service is active again. A failed upgrade doesn't stop the others, the step fails
+ * at the end with a report of every service.
+ */
+public class RancherImageBumpBuilder extends AbstractRancherBuilder {
+    public static final String DISPLAY_NAME = "Bump Image of Rancher Services";
+    public static final int DEFAULT_CONCURRENCY = 2;
+    static final String PRIMARY = "primary";
+    private static final Set<String> REMOVED_STATES = new HashSet<>(Arrays.asList("removing", "removed", "purging", "purged"));
+
+    private final String images;
+    private final String tag;
+    private int concurrency = DEFAULT_CONCURRENCY;
+    private boolean dryRun;
+    private String reportFile;
+
+    @DataBoundConstructor
+    public RancherImageBumpBuilder(String environmentId, String endpoint, String credentialId, String images, String tag, int timeout) {
+        super(environmentId, endpoint, credentialId, null, timeout);
+        this.images = images;
+        this.tag = tag;
+    }
+
+    protected static RancherImageBumpBuilder newInstance(String environmentId, String endpoint, String credentialId, String images,
+                                                         String tag, int timeout, RancherClientRancher rancherClient, CredentialsUtil credentialsUtil) {
+        RancherImageBumpBuilder rancherBuilder = new RancherImageBumpBuilder(environmentId, endpoint, credentialId, images, tag, timeout);
+        rancherBuilder.setCredentialsUtil(credentialsUtil);
+        rancherBuilder.setRancherClient(rancherClient);
+        return rancherBuilder;
+    }
+
+    @Override
+    protected void doPerform(@Nonnull DeploymentContext context, @Nonnull Function<String, String> buildEnvironments, @Nonnull FilePath workspace, @Nonnull TaskListener listener) throws InterruptedException, IOException {
+
+        environmentIdParsed = Parser.paraser(environmentId, buildEnvironments);
+        initializeClient(context, Parser.paraser(endpoint, buildEnvironments));
+
+        String patterns = Parser.paraser(images, buildEnvironments);
+        String newTag = Parser.paraser(tag, buildEnvironments);
+        ImagePattern imagePattern;
+        try {
+            imagePattern = ImagePattern.compile(patterns);
+        } catch (IllegalArgumentException e) {
+            throw new AbortException(e.getMessage());
+        }
+        if (Strings.isNullOrEmpty(newTag) || newTag.contains(":") || newTag.contains("/")) {
+            throw new AbortException("tag should be a tag of the matching repositories like 8-2024.10, but is " + newTag);
+        }
+        context.timingService(patterns);
+        context.traceAttribute("rancher.environment", environmentIdParsed);
+        context.traceAttribute("rancher.image_pattern", patterns);
+        context.traceAttribute("rancher.tag", newTag);
+
+        listener.getLogger().printf("Bump images [%s] to tag %s in rancher environment [%s/projects/%s]%n", patterns, newTag, endpoint, environmentIdParsed);
+
+        context.phase(DeploymentPhase.SERVICE_LOOKUP);
+        List<Service> services = rancherClient.allServices(environmentIdParsed);
+        Map<String, String> stackNames = new HashMap<>();
+        Optional<Stacks> stacks = rancherClient.stacks(environmentIdParsed);
+        if (stacks.isPresent()) {
+            for (Stack stack : stacks.get().getData()) {
+                stackNames.put(stack.getId(), stack.getName());
+            }
+        }
+        List<Bump> bumps = new ArrayList<>();
+        for (Service service : services) {
+            if (REMOVED_STATES.contains(service.getState())) {
+                continue;
+            }
+            Bump bump = Bump.of(service, stackNames.getOrDefault(service.getStackId(), service.getStackId()), imagePattern, newTag);
+            if (bump != null) {
+                bumps.add(bump);
+            }
+        }
+        listener.getLogger().printf("%d of %d service(s) run a matching image%n", bumps.size(), services.size());
+        context.traceAttribute("rancher.bump.matched", bumps.size());
+
+        Deque<Bump> pending = new ArrayDeque<>();
+        for (Bump bump : bumps) {
+            if (bump.containers.isEmpty()) {
+                bump.result = "up to date";
+            } else if (dryRun) {
+                bump.result = "dry run";
+            } else if (!ACTIVE.equalsIgnoreCase(bump.service.getState()) && !INACTIVE.equalsIgnoreCase(bump.service.getState())) {
+                bump.result = "skipped, service is " + bump.service.getState();
+                bump.failed = true;
+            } else {
+                pending.add(bump);
+            }
+        }
+        if (!pending.isEmpty()) {
+            context.phase(DeploymentPhase.UPGRADE);
+            upgrade(pending, listener);
+        }
+
+        int failed = (int) bumps.stream().filter(bump -> bump.failed).count();
+        context.traceAttribute("rancher.bump.failed", failed);
+        report(bumps, workspace, buildEnvironments, listener);
+        if (failed > 0) {
+            throw new AbortException(String.format("%d of %d matching service(s) were not bumped to %s, see the report above", failed, bumps.size(), newTag));
+        }
+    }
+
+    /**
+     * Runs the upgrades with at most {@code concurrency} of them in flight. All services are polled in one loop, so
+     * the step needs no threads of its own and a slow service only holds up its own slot.
+     */
+    private void upgrade(Deque<Bump> pending, TaskListener listener) throws InterruptedException {
+        int slots = Math.max(concurrency, 1);
+        List<Bump> inFlight = new ArrayList<>();
+        long timeoutMillis = 1000L * (timeout != 0 ? timeout : RancherBuilder.DEFAULT_TIMEOUT);
+        while (!pending.isEmpty() || !inFlight.isEmpty()) {
+            while (inFlight.size() < slots && !pending.isEmpty()) {
+                Bump bump = pending.poll();
+                try {
+                    start(bump);
+                    bump.deadline = System.currentTimeMillis() + timeoutMillis;
+                    inFlight.add(bump);
+                    listener.getLogger().printf("upgrading %s: %s%n", bump.name, String.join(", ", bump.containers));
+                } catch (IOException | RuntimeException e) {
+                    fail(bump, "upgrade request failed: " + e.getMessage(), listener);
+                }
+            }
+            Thread.sleep(pollIntervalMillis);
+            for (Iterator<Bump> iterator = inFlight.iterator(); iterator.hasNext(); ) {
+                Bump bump = iterator.next();
+                try {
+                    if (poll(bump, listener)) {
+                        iterator.remove();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    fail(bump, e.getMessage(), listener);
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private void start(Bump bump) throws IOException {
+        InServiceStrategy inServiceStrategy = new InServiceStrategy();
+        inServiceStrategy.setLaunchConfig(bump.launchConfig);
+        if (!bump.secondaryLaunchConfigs.isEmpty()) {
+            inServiceStrategy.setSecondaryLaunchConfigs(bump.secondaryLaunchConfigs);
+        }
+        ServiceUpgrade serviceUpgrade = new ServiceUpgrade();
+        serviceUpgrade.setInServiceStrategy(inServiceStrategy);
+        if (!rancherClient.upgradeService(environmentIdParsed, bump.service.getId(), serviceUpgrade).isPresent()) {
+            throw new IllegalStateException("upgrade service error");
+        }
+    }
+
+    /**
+     * Moves the upgrade of a service on: finishes it once upgraded, and is done once the service is active again.
+     *
+     * @return whether the service is done
+     */
+    private boolean poll(Bump bump, TaskListener listener) throws IOException {
+        Optional<Service> service = rancherClient.service(environmentIdParsed, bump.service.getId());
+        String state = service.isPresent() ? service.get().getState() : "removed";
+        if (!bump.finishing && UPGRADED.equalsIgnoreCase(state)) {
+            rancherClient.finishUpgradeService(environmentIdParsed, bump.service.getId());
+            bump.finishing = true;
+        } else if (bump.finishing && ACTIVE.equalsIgnoreCase(state)) {
+            bump.result = "upgraded";
+            listener.getLogger().printf("%s upgraded%n", bump.name);
+            return true;
+        } else if (System.currentTimeMillis() > bump.deadline) {
+            fail(bump, String.format("timeout after %ds in state %s", timeout, state), listener);
+            return true;
+        }
+        return false;
+    }
+
+    private static void fail(Bump bump, String reason, TaskListener listener) {
+        bump.result = "failed, " + reason;
+        bump.failed = true;
+        listener.getLogger().printf("%s %s%n", bump.name, bump.result);
+    }
+
+    private void report(List<Bump> bumps, FilePath workspace, Function<String, String> buildEnvironments, TaskListener listener) throws IOException, InterruptedException {
+        listener.getLogger().println("image bump report:");
+        StringBuilder csv = new StringBuilder(csvLine("service", "container", "from", "to", "result"));
+        for (Bump bump : bumps) {
+            listener.getLogger().printf("  %s: %s%n", bump.name, bump.result);
+            for (int i = 0; i < bump.containers.size(); i++) {
+                listener.getLogger().printf("    %s%n", bump.containers.get(i));
+                csv.append(csvLine(bump.name, bump.containerNames.get(i), bump.from.get(i), bump.to.get(i), bump.result));
+            }
+            if (bump.containers.isEmpty()) {
+                csv.append(csvLine(bump.name, "", "", "", bump.result));
+            }
+        }
+        if (!Strings.isNullOrEmpty(reportFile)) {
+            FilePath file = workspace.child(Parser.paraser(reportFile, buildEnvironments));
+            file.write(csv.toString(), "UTF-8");
+            listener.getLogger().printf("wrote image bump report to %s%n", file.getRemote());
+        }
+    }
+
+    /**
+     * A line of the report, quoted as in RFC 4180: a failure reason may contain commas, quotes or line breaks.
+     */
+    static String csvLine(String... fields) {
+        StringBuilder line = new StringBuilder();
+        for (String field : fields) {
+            if (line.length() > 0) {
+                line.append(',');
+            }
+            String value = Strings.nullToEmpty(field);
+            if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+                line.append('"').append(value.replace("\"", "\"\"")).append('"');
+            } else {
+                line.append(value);
+            }
+        }
+        return line.append("\r\n").toString();
+    }
+
+    @Override
+    protected String getStepName() {
+        return DISPLAY_NAME;
+    }
+
+    @Override
+    protected List<String> getTemplateFields() {
+        List<String> fields = new ArrayList<>(super.getTemplateFields());
+        fields.add(images);
+        fields.add(tag);
+        fields.add(reportFile);
+        return fields;
+    }
+
+    public String getImages() {
+        return images;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    @DataBoundSetter
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency > 0 ? concurrency : DEFAULT_CONCURRENCY;
+    }
+
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    @DataBoundSetter
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    public String getReportFile() {
+        return reportFile;
+    }
+
+    @DataBoundSetter
+    public void setReportFile(String reportFile) {
+        this.reportFile = Util.fixEmptyAndTrim(reportFile);
+    }
+
+    /**
+     * The image changes of one service: the containers with a matching image that are not on the tag yet.
+     */
+    private static final class Bump {
+        private final Service service;
+        private final String name;
+        private final List<String> containers = new ArrayList<>();
+        private final List<String> containerNames = new ArrayList<>();
+        private final List<String> from = new ArrayList<>();
+        private final List<String> to = new ArrayList<>();
+        private LaunchConfig launchConfig;
+        private final List<LaunchConfig> secondaryLaunchConfigs = new ArrayList<>();
+        private String result;
+        private boolean failed;
+        private boolean finishing;
+        private long deadline;
+
+        private Bump(Service service, String name) {
+            this.service = service;
+            this.name = name;
+        }
+
+        /**
+         * The bump of the service, {@code null} when none of its containers runs a matching image.
+         */
+        static Bump of(Service service, String stackName, ImagePattern imagePattern, String tag) {
+            LaunchConfig primary = service.getLaunchConfig();
+            boolean matched = false;
+            Bump bump = new Bump(service, stackName + "/" + service.getName());
+            if (primary != null) {
+                LaunchConfig desired = new LaunchConfig();
+                if (imagePattern.matches(primary.getImageUuid())) {
+                    matched = true;
+                    desired.setImageUuid(bump.change(PRIMARY, primary.getImageUuid(), tag));
+                }
+                // the primary launch config is always part of an upgrade, unchanged when only sidekicks match
+                bump.launchConfig = LaunchConfigDiff.between(primary, desired).toUpgradeLaunchConfig();
+            }
+            if (service.getSecondaryLaunchConfigs() != null) {
+                for (LaunchConfig sidekick : service.getSecondaryLaunchConfigs()) {
+                    if (!imagePattern.matches(sidekick.getImageUuid())) {
+                        continue;
+                    }
+                    matched = true;
+                    LaunchConfig desired = new LaunchConfig();
+                    desired.setImageUuid(bump.change(sidekick.getName(), sidekick.getImageUuid(), tag));
+                    LaunchConfigDiff diff = LaunchConfigDiff.between(sidekick, desired);
+                    if (!diff.isEmpty()) {
+                        bump.secondaryLaunchConfigs.add(diff.toUpgradeLaunchConfig());
+                    }
+                }
+            }
+            return matched ? bump : null;
+        }
+
+        /**
+         * Records the change of a container to the tag, when it isn't on it yet.
+         *
+         * @return the new image
+         */
+        private String change(String container, String imageUuid, String tag) {
+            String bumped = ImagePattern.withTag(imageUuid, tag);
+            if (!bumped.equals(imageUuid)) {
+                containers.add(String.format("%s: %s -> %s", container, imageUuid, bumped));
+                containerNames.add(container);
+                from.add(imageUuid);
+                to.add(bumped);
+            }
+            return bumped;
+        }
+    }
+
+    @Symbol("rancherImageBump")
+    @Extension // This indicates to Jenkins that this is an implementation of an extension point.
+    public static final class DescriptorImpl extends BuildStepDescriptor<Builder> {
+        private static final CredentialsUtil credentialsUtil = new CredentialsUtil();
+
+        public DescriptorImpl() {
+            load();
+        }
+
+        public boolean isApplicable(Class<? extends AbstractProject> aClass) {
+            // Indicates that this builder can be used with all kinds of project types
+            return true;
+        }
+
+        public String getDisplayName() {
+            return DISPLAY_NAME;
+        }
+
+        @Override
+        public boolean configure(StaplerRequest req, JSONObject formData) throws FormException {
+            save();
+            return super.configure(req, formData);
+        }
+
+        public ListBoxModel doFillCredentialIdItems() {
+            if (!Jenkins.getInstance().hasPermission(Jenkins.ADMINISTER)) {
+                return new ListBoxModel();
+            }
+            List<StandardUsernamePasswordCredentials> credentials = credentialsUtil.getCredentials();
+            return new StandardUsernameListBoxModel()
+                    .withEmptySelection()
+                    .withAll(credentials);
+        }
+
+        public FormValidation doTestConnection(
+                @QueryParameter("endpoint") final String endpoint,
+                @QueryParameter("environmentId") final String environmentId,
+                @QueryParameter("credentialId") final String credentialId
+        ) throws IOException, ServletException {
+
+            try {
+                RancherClientRancher client;
+                Optional<StandardUsernamePasswordCredentials> credential = credentialsUtil.getCredential(credentialId);
+                if (credential.isPresent()) {
+                    client = new RancherClientRancher(endpoint, credential.get().getUsername(), credential.get().getPassword().getPlainText());
+                } else {
+                    client = new RancherClientRancher(endpoint);
+                }
+                Optional<Environment> environment = client.environment(environmentId);
+                if (!environment.isPresent()) {
+                    return FormValidation.error("Environment [" + environmentId + "] not found please check configuration");
+                }
+                return FormValidation.ok("Connection Success");
+            } catch (Exception e) {
+                return FormValidation.error("Connection fails with message : " + e.getMessage());
+            }
+        }
+
+        public FormValidation doCheckTimeout(@QueryParameter int value) {
+            return value > 0 ? FormValidation.ok() : FormValidation.error("Time should be at least 1");
+        }
+
+        public FormValidation doCheckCredentialId(@QueryParameter String value) {
+            return !Strings.isNullOrEmpty(value)
+                    && credentialsUtil.getCredential(value).isPresent()
+                    ? FormValidation.ok() : FormValidation.warning("API key is required when Rancher ACL is enable");
+        }
+
+        public FormValidation doCheckEndpoint(@QueryParameter String value) {
+            try {
+                new URL(value);
+                return FormValidation.ok();
+            } catch (MalformedURLException e) {
+                return FormValidation.error("Not a rancher v2 api endpoint");
+            }
+        }
+
+        public FormValidation doCheckEnvironmentId(@QueryParameter String value) {
+            return !Strings.isNullOrEmpty(value) ? FormValidation.ok() : FormValidation.error("EnvironmentId can't be empty");
+        }
+
+        public FormValidation doCheckImages(@QueryParameter String value) {
+            return !Strings.isNullOrEmpty(value) ? FormValidation.ok() : FormValidation.error("Images can't be empty, e.g. base/java or registry.example.com/base/*");
+        }
+
+        public FormValidation doCheckTag(@QueryParameter String value) {
+            return !Strings.isNullOrEmpty(value) && !value.contains("/") ? FormValidation.ok() : FormValidation.error("Tag can't be empty, e.g. 8-2024.10");
+        }
+
+        public FormValidation doCheckConcurrency(@QueryParameter int value) {
+            return value > 0 ? FormValidation.ok() : FormValidation.error("Concurrency should be at least 1");
+        }
+
+    }
+
+}
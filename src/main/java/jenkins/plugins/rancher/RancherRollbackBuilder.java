@@ -0,0 +1,297 @@
+package jenkins.plugins.rancher;
+
+import com.cloudbees.plugins.credentials.common.StandardUsernameListBoxModel;
+import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
+import com.google.common.base.Strings;
+import com.google.common.primitives.Ints;
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.model.AbstractProject;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.tasks.BuildStepDescriptor;
+import hudson.tasks.Builder;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+import jenkins.model.Jenkins;
+import jenkins.plugins.rancher.action.InServiceStrategy;
+import jenkins.plugins.rancher.action.ServiceUpgrade;
+import jenkins.plugins.rancher.entity.Environment;
+import jenkins.plugins.rancher.entity.Service;
+import jenkins.plugins.rancher.entity.Services;
+import jenkins.plugins.rancher.entity.LaunchConfig;
+import jenkins.plugins.rancher.entity.Stack;
+import jenkins.plugins.rancher.state.DeploymentStateAction;
+import jenkins.plugins.rancher.state.LaunchConfigSnapshot;
+import jenkins.plugins.rancher.timing.DeploymentPhase;
+import jenkins.plugins.rancher.util.CredentialsUtil;
+import jenkins.plugins.rancher.util.LaunchConfigHistory;
+import jenkins.plugins.rancher.util.Parser;
+import jenkins.plugins.rancher.util.ServiceField;
+import net.sf.json.JSONObject;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
+
+import javax.annotation.Nonnull;
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static jenkins.plugins.rancher.RancherBuilder.ACTIVE;
+import static jenkins.plugins.rancher.RancherBuilder.UPGRADED;
+
+/**
+ * Puts back the launch config a service had before the upgrade by a given build, from the snapshot that build saved
+ * with {@link RancherBuilder#isKeepHistory()}. The build is found through the launch config history of the service.
+ * Unlike rancher's rollback action this also works after the upgrade was finished. All containers are replaced in one
+ * batch, the upgrade is finished right away.
+ */
+public class RancherRollbackBuilder extends AbstractRancherBuilder {
+    public static final String DISPLAY_NAME = "Rollback Rancher Service to Snapshot";
+    private final String build;
+    private transient Function<String, Run<?, ?>> builds;
+
+    @DataBoundConstructor
+    public RancherRollbackBuilder(
+            String environmentId, String endpoint, String credentialId, String service, String build, int timeout) {
+        super(environmentId, endpoint, credentialId, service, timeout);
+        this.build = build;
+    }
+
+    protected static RancherRollbackBuilder newInstance(String environmentId, String endpoint, String credentialId, String service,
+                                                        String build, int timeout, RancherClientRancher rancherClient, CredentialsUtil credentialsUtil) {
+        RancherRollbackBuilder rancherBuilder = new RancherRollbackBuilder(environmentId, endpoint, credentialId, service, build, timeout);
+        rancherBuilder.setCredentialsUtil(credentialsUtil);
+        rancherBuilder.setRancherClient(rancherClient);
+        return rancherBuilder;
+    }
+
+    @Override
+    protected void doPerform(@Nonnull DeploymentContext context, @Nonnull Function<String, String> buildEnvironments, @Nonnull FilePath workspace, @Nonnull TaskListener listener) throws InterruptedException, IOException {
+
+        environmentIdParsed = Parser.paraser(environmentId, buildEnvironments);
+        initializeClient(context, Parser.paraser(endpoint, buildEnvironments));
+
+        String service = Parser.paraser(this.getService(), buildEnvironments);
+        String snapshotBuild = Parser.paraser(build, buildEnvironments);
+        ServiceField serviceField = new ServiceField(service);
+        context.timingService(service);
+        context.traceAttribute("rancher.environment", environmentIdParsed);
+        context.traceAttribute("rancher.stack", serviceField.getStackName());
+        context.traceAttribute("rancher.rollback_build", snapshotBuild);
+
+        listener.getLogger().printf("Rollback service [%s] to its launch config before build %s in rancher environment [%s/projects/%s]%n", service, snapshotBuild, endpoint, environmentIdParsed);
+
+        context.phase(DeploymentPhase.STACK);
+        Stack stack = getStack(listener, serviceField, rancherClient, false);
+        context.phase(DeploymentPhase.SERVICE_LOOKUP);
+        Optional<Services> services = rancherClient.services(environmentIdParsed, stack.getId());
+        if (!services.isPresent()) {
+            throw new AbortException("Error happen when fetch stack<" + stack.getName() + "> services");
+        }
+        Optional<Service> serviceInstance = services.get().getData().stream().filter(s -> s.getName().equals(serviceField.getServiceName())).findAny();
+        if (!serviceInstance.isPresent()) {
+            throw new AbortException(String.format("Service [%s] does not exist.", service));
+        }
+
+        LaunchConfigHistory.Entry entry = LaunchConfigHistory.find(serviceInstance.get(), snapshotBuild);
+        if (entry == null) {
+            String available = LaunchConfigHistory.read(serviceInstance.get()).stream().map(LaunchConfigHistory.Entry::getBuild).collect(Collectors.joining(", "));
+            throw new AbortException(String.format("No launch config snapshot of build %s for service [%s], available: [%s]", snapshotBuild, service, available));
+        }
+        Run<?, ?> snapshotRun = (builds == null ? (Function<String, Run<?, ?>>) RancherRollbackBuilder::findBuild : builds).apply(entry.getBuild());
+        DeploymentStateAction deployment = snapshotRun == null ? null : snapshotRun.getAction(DeploymentStateAction.class);
+        LaunchConfigSnapshot snapshot = deployment == null ? null
+                : deployment.findSnapshot(environmentIdParsed, serviceInstance.get().getId(), entry.getImageUuid());
+        if (snapshot == null) {
+            throw new AbortException(String.format("Build %s kept no launch config snapshot of service [%s], it may have been deleted", entry.getBuild(), service));
+        }
+        checkServiceState(serviceInstance.get(), listener);
+        LaunchConfig launchConfig = snapshot.getLaunchConfig();
+        listener.getLogger().printf("restoring image %s saved before the upgrade by %s%n", launchConfig.getImageUuid(), entry.getBuild());
+
+        InServiceStrategy inServiceStrategy = new InServiceStrategy();
+        inServiceStrategy.setLaunchConfig(launchConfig);
+        List<LaunchConfig> secondaryLaunchConfigs = snapshot.getSecondaryLaunchConfigs();
+        if (!secondaryLaunchConfigs.isEmpty()) {
+            inServiceStrategy.setSecondaryLaunchConfigs(secondaryLaunchConfigs);
+        }
+        // recovering from a bad release: replace every container at once, without pauses between batches
+        inServiceStrategy.setBatchSize(Math.max(serviceInstance.get().getScale(), 1));
+        inServiceStrategy.setIntervalMillis(0);
+        inServiceStrategy.setStartFirst(false);
+        ServiceUpgrade serviceUpgrade = new ServiceUpgrade();
+        serviceUpgrade.setInServiceStrategy(inServiceStrategy);
+
+        String serviceId = serviceInstance.get().getId();
+        context.phase(DeploymentPhase.UPGRADE);
+        context.journalUpgrade(environmentIdParsed, serviceId, serviceInstance.get().getName(), launchConfig.getImageUuid(),
+                serviceInstance.get().getLaunchConfig() == null ? null : serviceInstance.get().getLaunchConfig().getImageUuid(), DeploymentPhase.UPGRADE);
+        if (!rancherClient.upgradeService(environmentIdParsed, serviceId, serviceUpgrade).isPresent()) {
+            throw new AbortException("upgrade service error");
+        }
+        context.phase(DeploymentPhase.WAIT_UPGRADED);
+        waitUntilServiceStateIs(context, serviceId, UPGRADED, listener);
+        context.phase(DeploymentPhase.FINISH);
+        rancherClient.finishUpgradeService(environmentIdParsed, serviceId);
+        context.phase(DeploymentPhase.WAIT_ACTIVE);
+        waitUntilServiceStateIs(context, serviceId, ACTIVE, listener);
+        context.traceAttribute("rancher.state", ACTIVE);
+    }
+
+    /**
+     * The build, given as {@code job#42}, by its full job name and number.
+     */
+    private static Run<?, ?> findBuild(String build) {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        int separator = build.lastIndexOf('#');
+        Integer number = separator < 0 ? null : Ints.tryParse(build.substring(separator + 1));
+        if (jenkins == null || number == null) {
+            return null;
+        }
+        Job<?, ?> job = jenkins.getItemByFullName(build.substring(0, separator), Job.class);
+        return job == null ? null : job.getBuildByNumber(number);
+    }
+
+    /**
+     * Looks up the builds of the snapshots, instead of by job name and number.
+     */
+    void setBuilds(Function<String, Run<?, ?>> builds) {
+        this.builds = builds;
+    }
+
+    /**
+     * Always runs on the controller, the snapshot is read from the build that saved it.
+     */
+    @Override
+    public boolean isRunOnAgent() {
+        return false;
+    }
+
+    @Override
+    protected String getStepName() {
+        return DISPLAY_NAME;
+    }
+
+    @Override
+    protected List<String> getTemplateFields() {
+        List<String> fields = new ArrayList<>(super.getTemplateFields());
+        fields.add(build);
+        return fields;
+    }
+
+    public String getBuild() {
+        return build;
+    }
+
+    @Symbol("rancherRollback")
+    @Extension // This indicates to Jenkins that this is an implementation of an extension point.
+    public static final class DescriptorImpl extends BuildStepDescriptor<Builder> {
+        private static final CredentialsUtil credentialsUtil = new CredentialsUtil();
+
+        public DescriptorImpl() {
+            load();
+        }
+
+        public boolean isApplicable(Class<? extends AbstractProject> aClass) {
+            // Indicates that this builder can be used with all kinds of project types
+            return true;
+        }
+
+        public String getDisplayName() {
+            return DISPLAY_NAME;
+        }
+
+        @Override
+        public boolean configure(StaplerRequest req, JSONObject formData) throws FormException {
+            save();
+            return super.configure(req, formData);
+        }
+
+        public ListBoxModel doFillCredentialIdItems() {
+            if (!Jenkins.getInstance().hasPermission(Jenkins.ADMINISTER)) {
+                return new ListBoxModel();
+            }
+            List<StandardUsernamePasswordCredentials> credentials = credentialsUtil.getCredentials();
+            return new StandardUsernameListBoxModel()
+                    .withEmptySelection()
+                    .withAll(credentials);
+        }
+
+        public FormValidation doTestConnection(
+                @QueryParameter("endpoint") final String endpoint,
+                @QueryParameter("environmentId") final String environmentId,
+                @QueryParameter("credentialId") final String credentialId
+        ) throws IOException, ServletException {
+
+            try {
+                RancherClientRancher client;
+                Optional<StandardUsernamePasswordCredentials> credential = credentialsUtil.getCredential(credentialId);
+                if (credential.isPresent()) {
+                    client = new RancherClientRancher(endpoint, credential.get().getUsername(), credential.get().getPassword().getPlainText());
+                } else {
+                    client = new RancherClientRancher(endpoint);
+                }
+                Optional<Environment> environment = client.environment(environmentId);
+                if (!environment.isPresent()) {
+                    return FormValidation.error("Environment [" + environmentId + "] not found please check configuration");
+                }
+                return FormValidation.ok("Connection Success");
+            } catch (Exception e) {
+                return FormValidation.error("Connection fails with message : " + e.getMessage());
+            }
+        }
+
+        public FormValidation doCheckTimeout(@QueryParameter int value) {
+            return value > 0 ? FormValidation.ok() : FormValidation.error("Time should be at least 1");
+        }
+
+        public FormValidation doCheckCredentialId(@QueryParameter String value) {
+            return !Strings.isNullOrEmpty(value)
+                    && credentialsUtil.getCredential(value).isPresent()
+                    ? FormValidation.ok() : FormValidation.warning("API key is required when Rancher ACL is enable");
+        }
+
+        public FormValidation doCheckEndpoint(@QueryParameter String value) {
+            try {
+                new URL(value);
+                return FormValidation.ok();
+            } catch (MalformedURLException e) {
+                return FormValidation.error("Not a rancher v2 api endpoint");
+            }
+        }
+
+        public FormValidation doCheckAccessKey(@QueryParameter String value) {
+            return !Strings.isNullOrEmpty(value) ? FormValidation.ok() : FormValidation.error("AccessKey can't be empty");
+        }
+
+        public FormValidation doCheckSecretKey(@QueryParameter String value) {
+            return !Strings.isNullOrEmpty(value) ? FormValidation.ok() : FormValidation.error("SecretKey can't be empty");
+        }
+
+        public FormValidation doCheckEnvironmentId(@QueryParameter String value) {
+            return !Strings.isNullOrEmpty(value) ? FormValidation.ok() : FormValidation.error("EnvironmentId can't be empty");
+        }
+
+        public FormValidation doCheckService(@QueryParameter String value) {
+            boolean validate = !Strings.isNullOrEmpty(value) && value.contains("/") && value.split("/").length == 2;
+            return validate ? FormValidation.ok() : FormValidation.error("Service name should be like stack/service");
+        }
+
+        public FormValidation doCheckBuild(@QueryParameter String value) {
+            return !Strings.isNullOrEmpty(value) ? FormValidation.ok() : FormValidation.error("Build can't be empty, e.g. 42 or deploy-web#42");
+        }
+
+    }
+
+}
@@ -6,9 +6,7 @@ import com.google.common.base.Strings;
 import hudson.AbortException;
 import hudson.Extension;
 import hudson.FilePath;
-import hudson.Launcher;
 import hudson.model.AbstractProject;
-import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Builder;
@@ -19,6 +17,7 @@ import jenkins.plugins.rancher.entity.Environment;
 import jenkins.plugins.rancher.entity.Service;
 import jenkins.plugins.rancher.entity.Services;
 import jenkins.plugins.rancher.entity.Stack;
+import jenkins.plugins.rancher.timing.DeploymentPhase;
 import jenkins.plugins.rancher.util.CredentialsUtil;
 import jenkins.plugins.rancher.util.Parser;
 import jenkins.plugins.rancher.util.ServiceField;
@@ -34,14 +33,15 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 
 import static jenkins.plugins.rancher.RancherBuilder.ACTIVE;
 import static jenkins.plugins.rancher.RancherBuilder.UPGRADED;
 
 public class RancherUpgradeBuilder extends AbstractRancherBuilder {
     public static final String ROLLBACK_ACTION = "rollback";
+    public static final String DISPLAY_NAME = "Finish Rancher Service Upgrade";
     private final String finishAction;
 
     @DataBoundConstructor
@@ -61,18 +61,23 @@ public class RancherUpgradeBuilder extends AbstractRancherBuilder {
 
 
     @Override
-    public void perform(@Nonnull Run<?, ?> build, @Nonnull FilePath workspace, @Nonnull Launcher launcher, @Nonnull TaskListener listener) throws InterruptedException, IOException {
-        Map<String, String> buildEnvironments = getBuildEnvs(build, listener);
+    protected void doPerform(@Nonnull DeploymentContext context, @Nonnull Function<String, String> buildEnvironments, @Nonnull FilePath workspace, @Nonnull TaskListener listener) throws InterruptedException, IOException {
 
         environmentIdParsed = Parser.paraser(environmentId, buildEnvironments);
-        initializeClient(Parser.paraser(endpoint, buildEnvironments));
+        initializeClient(context, Parser.paraser(endpoint, buildEnvironments));
 
         String service = Parser.paraser(this.getService(), buildEnvironments);
         ServiceField serviceField = new ServiceField(service);
+        context.timingService(service);
+        context.traceAttribute("rancher.environment", environmentIdParsed);
+        context.traceAttribute("rancher.stack", serviceField.getStackName());
+        context.traceAttribute("rancher.finish_action", finishAction);
 
         listener.getLogger().printf("Finish[%s] upgraded service [%s] to rancher environment [%s/projects/%s]%n", finishAction, service, endpoint, environmentIdParsed);
 
+        context.phase(DeploymentPhase.STACK);
         Stack stack = getStack(listener, serviceField, rancherClient, false);
+        context.phase(DeploymentPhase.SERVICE_LOOKUP);
         Optional<Services> services = rancherClient.services(environmentIdParsed, stack.getId());
         if (!services.isPresent()) {
             throw new AbortException("Error happen when fetch stack<" + stack.getName() + "> services");
@@ -85,17 +90,25 @@ public class RancherUpgradeBuilder extends AbstractRancherBuilder {
             if (!UPGRADED.equalsIgnoreCase(state)) {
                 throw new AbortException("Before confirming service the service instance state should be 'UPGRADED'");
             }
-            if (ROLLBACK_ACTION.equalsIgnoreCase(finishAction)) {
-                rancherClient.rollbackUpgradeService(environmentIdParsed, serviceInstance.get().getId());
-            } else {
-                rancherClient.finishUpgradeService(environmentId, serviceInstance.get().getId());
+            if (!ROLLBACK_ACTION.equalsIgnoreCase(finishAction)) {
+                finishUpgrade(context, serviceInstance.get().getId(), listener);
+                return;
             }
-            waitUntilServiceStateIs(serviceInstance.get().getId(), ACTIVE, listener);
+            context.phase(DeploymentPhase.FINISH);
+            rancherClient.rollbackUpgradeService(environmentIdParsed, serviceInstance.get().getId());
+            context.phase(DeploymentPhase.WAIT_ACTIVE);
+            waitUntilServiceStateIs(context, serviceInstance.get().getId(), ACTIVE, listener);
+            context.traceAttribute("rancher.state", ACTIVE);
         } else {
             throw new AbortException(String.format("Service [%s] does not exist.", service));
         }
     }
 
+    @Override
+    protected String getStepName() {
+        return DISPLAY_NAME;
+    }
+
     public String getFinishAction() {
         return finishAction;
     }
@@ -115,7 +128,7 @@ public class RancherUpgradeBuilder extends AbstractRancherBuilder {
         }
 
         public String getDisplayName() {
-            return "Finish Rancher Service Upgrade";
+            return DISPLAY_NAME;
         }
 
         @Override
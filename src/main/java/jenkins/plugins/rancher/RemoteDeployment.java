@@ -0,0 +1,89 @@
+package jenkins.plugins.rancher;
+
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import jenkins.plugins.rancher.state.DeploymentJournal;
+import jenkins.plugins.rancher.timing.PhaseTimer;
+import jenkins.plugins.rancher.tracing.DeploymentTrace;
+import jenkins.security.MasterToSlaveCallable;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * Ships a builder to the agent of the workspace and runs its deployment there, so the rancher HTTP traffic,
+ * JSON parsing and state polling use the agent's resources. Log lines stream back through the listener and the
+ * deployment states are saved on the build as they change, the phase timings and the trace come back with the result.
+ */
+class RemoteDeployment extends MasterToSlaveCallable<RemoteDeployment.Result, IOException> {
+    private static final long serialVersionUID = 1L;
+
+    private final AbstractRancherBuilder builder;
+    private final Map<String, String> variables;
+    private final String endpoint;
+    private final String username;
+    private final String password;
+    private final FilePath workspace;
+    private final TaskListener listener;
+    private final DeploymentContext context;
+
+    RemoteDeployment(AbstractRancherBuilder builder, Map<String, String> variables, String endpoint, String username, String password,
+                     FilePath workspace, TaskListener listener, DeploymentContext context) {
+        this.builder = builder;
+        this.variables = variables;
+        this.endpoint = endpoint;
+        this.username = username;
+        this.password = password;
+        this.workspace = workspace;
+        this.listener = listener;
+        this.context = context;
+    }
+
+    @Override
+    public Result call() {
+        builder.setRancherClient(username == null
+                ? new RancherClientRancher(endpoint)
+                : new RancherClientRancher(endpoint, username, password));
+        Exception failure = null;
+        try {
+            builder.execute(context, variables::get, workspace, listener);
+        } catch (Exception e) {
+            // keep the timings and the trace of failed deployments, the failure is rethrown on the controller
+            failure = e;
+        }
+        context.getTimer().stop();
+        return new Result(context.getTimer(), context.getTrace(), context.getJournal(), failure);
+    }
+
+    static final class Result implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final PhaseTimer timer;
+        final DeploymentTrace trace;
+        final DeploymentJournal journal;
+        private final Exception failure;
+
+        private Result(PhaseTimer timer, DeploymentTrace trace, DeploymentJournal journal, Exception failure) {
+            this.timer = timer;
+            this.trace = trace;
+            this.journal = journal;
+            this.failure = failure;
+        }
+
+        void rethrow() throws IOException, InterruptedException {
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            if (failure instanceof InterruptedException) {
+                throw (InterruptedException) failure;
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure != null) {
+                throw new IOException(failure);
+            }
+        }
+    }
+}
@@ -1,13 +1,18 @@
 package jenkins.plugins.rancher.action;
 
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import jenkins.plugins.rancher.entity.LaunchConfig;
 
+import java.util.List;
+
 public class InServiceStrategy {
 
     private int batchSize = 1;
     private int intervalMillis = 2000;
     private LaunchConfig launchConfig;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<LaunchConfig> secondaryLaunchConfigs;
     private boolean startFirst;
 
     public int getBatchSize() {
@@ -34,6 +39,17 @@ public class InServiceStrategy {
         this.launchConfig = launchConfig;
     }
 
+    /**
+     * Sidekicks to upgrade in the same rolling cycle as the primary launch config, matched by name.
+     */
+    public List<LaunchConfig> getSecondaryLaunchConfigs() {
+        return secondaryLaunchConfigs;
+    }
+
+    public void setSecondaryLaunchConfigs(List<LaunchConfig> secondaryLaunchConfigs) {
+        this.secondaryLaunchConfigs = secondaryLaunchConfigs;
+    }
+
     public boolean isStartFirst() {
         return startFirst;
     }
@@ -10,6 +10,7 @@ public class CollectionResponse<T> {
     private String type;
     private String resourceType;
     private List<T> data;
+    private Pagination pagination;
 
     public String getType() {
         return type;
@@ -35,6 +36,14 @@ public class CollectionResponse<T> {
         this.data = data;
     }
 
+    public Pagination getPagination() {
+        return pagination;
+    }
+
+    public void setPagination(Pagination pagination) {
+        this.pagination = pagination;
+    }
+
     @Override
     public String toString() {
         return "Collections{" +
@@ -0,0 +1,80 @@
+package jenkins.plugins.rancher.entity;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A host of the environment, with the resources the scheduler allocates containers from.
+ */
+public class Host extends Resource {
+
+    private String hostname;
+
+    private String state;
+
+    private String agentState;
+
+    private Long memory;
+
+    private Long milliCpu;
+
+    private Map<String, String> labels = new HashMap<>();
+
+    public Host() {
+        super("host");
+    }
+
+    public String getHostname() {
+        return hostname;
+    }
+
+    public void setHostname(String hostname) {
+        this.hostname = hostname;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    /**
+     * State of the rancher agent on the host, {@code null} while it is connected.
+     */
+    public String getAgentState() {
+        return agentState;
+    }
+
+    public void setAgentState(String agentState) {
+        this.agentState = agentState;
+    }
+
+    /**
+     * Total memory of the host in bytes.
+     */
+    public Long getMemory() {
+        return memory;
+    }
+
+    public void setMemory(Long memory) {
+        this.memory = memory;
+    }
+
+    public Long getMilliCpu() {
+        return milliCpu;
+    }
+
+    public void setMilliCpu(Long milliCpu) {
+        this.milliCpu = milliCpu;
+    }
+
+    public Map<String, String> getLabels() {
+        return labels;
+    }
+
+    public void setLabels(Map<String, String> labels) {
+        this.labels = labels;
+    }
+}
@@ -0,0 +1,4 @@
+package jenkins.plugins.rancher.entity;
+
+public class Hosts extends CollectionResponse<Host> {
+}
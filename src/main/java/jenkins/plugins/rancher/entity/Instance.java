@@ -0,0 +1,104 @@
+package jenkins.plugins.rancher.entity;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A container of a service.
+ */
+public class Instance extends Resource {
+
+    private String state;
+
+    private String healthState;
+
+    private String hostId;
+
+    private String primaryIpAddress;
+
+    private String imageUuid;
+
+    private Long memory;
+
+    private Long memoryReservation;
+
+    private Long milliCpuReservation;
+
+    private Map<String, String> labels = new HashMap<>();
+
+    public Instance() {
+        super("container");
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public String getHealthState() {
+        return healthState;
+    }
+
+    public void setHealthState(String healthState) {
+        this.healthState = healthState;
+    }
+
+    public String getHostId() {
+        return hostId;
+    }
+
+    public void setHostId(String hostId) {
+        this.hostId = hostId;
+    }
+
+    public String getPrimaryIpAddress() {
+        return primaryIpAddress;
+    }
+
+    public void setPrimaryIpAddress(String primaryIpAddress) {
+        this.primaryIpAddress = primaryIpAddress;
+    }
+
+    public String getImageUuid() {
+        return imageUuid;
+    }
+
+    public void setImageUuid(String imageUuid) {
+        this.imageUuid = imageUuid;
+    }
+
+    public Long getMemory() {
+        return memory;
+    }
+
+    public void setMemory(Long memory) {
+        this.memory = memory;
+    }
+
+    public Long getMemoryReservation() {
+        return memoryReservation;
+    }
+
+    public void setMemoryReservation(Long memoryReservation) {
+        this.memoryReservation = memoryReservation;
+    }
+
+    public Long getMilliCpuReservation() {
+        return milliCpuReservation;
+    }
+
+    public void setMilliCpuReservation(Long milliCpuReservation) {
+        this.milliCpuReservation = milliCpuReservation;
+    }
+
+    public Map<String, String> getLabels() {
+        return labels;
+    }
+
+    public void setLabels(Map<String, String> labels) {
+        this.labels = labels;
+    }
+}
@@ -0,0 +1,4 @@
+package jenkins.plugins.rancher.entity;
+
+public class Instances extends CollectionResponse<Instance> {
+}
@@ -1,6 +1,7 @@
 package jenkins.plugins.rancher.entity;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -8,7 +9,9 @@ import java.util.List;
 import java.util.Map;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class LaunchConfig {
+    private String name;
     private String imageUuid;
     private String kind;
     private List<String> ports = new ArrayList<>();
@@ -20,9 +23,9 @@ public class LaunchConfig {
 
     private InstanceHealthCheck healthCheck;
     private String[] healthCmd;
-    private int healthInterval;
-    private int healthRetries;
-    private int healthTimeout;
+    private Integer healthInterval;
+    private Integer healthRetries;
+    private Integer healthTimeout;
     private LogConfig logConfig;
 
     private String workingDir;
@@ -47,6 +50,7 @@ public class LaunchConfig {
 
     private Long memory;
     private Long memoryReservation;
+    private Long milliCpuReservation;
 
     public InstanceHealthCheck getHealthCheck() {
         return healthCheck;
@@ -64,27 +68,27 @@ public class LaunchConfig {
         this.healthCmd = healthCmd;
     }
 
-    public int getHealthInterval() {
+    public Integer getHealthInterval() {
         return healthInterval;
     }
 
-    public void setHealthInterval(int healthInterval) {
+    public void setHealthInterval(Integer healthInterval) {
         this.healthInterval = healthInterval;
     }
 
-    public int getHealthRetries() {
+    public Integer getHealthRetries() {
         return healthRetries;
     }
 
-    public void setHealthRetries(int healthRetries) {
+    public void setHealthRetries(Integer healthRetries) {
         this.healthRetries = healthRetries;
     }
 
-    public int getHealthTimeout() {
+    public Integer getHealthTimeout() {
         return healthTimeout;
     }
 
-    public void setHealthTimeout(int healthTimeout) {
+    public void setHealthTimeout(Integer healthTimeout) {
         this.healthTimeout = healthTimeout;
     }
 
@@ -168,6 +172,17 @@ public class LaunchConfig {
         this.type = type;
     }
 
+    /**
+     * Name of a secondary (sidekick) launch config, {@code null} for the primary one.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
     public String getImageUuid() {
         return imageUuid;
     }
@@ -271,4 +286,12 @@ public class LaunchConfig {
     public void setMemoryReservation(Long memoryReservation) {
         this.memoryReservation = memoryReservation;
     }
+
+    public Long getMilliCpuReservation() {
+        return milliCpuReservation;
+    }
+
+    public void setMilliCpuReservation(Long milliCpuReservation) {
+        this.milliCpuReservation = milliCpuReservation;
+    }
 }
@@ -0,0 +1,50 @@
+package jenkins.plugins.rancher.entity;
+
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Load balancer configuration. Rancher replaces it as a whole on update, so fields that are not modelled here
+ * (certificates, custom haproxy config) are kept as they were read.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LbConfig {
+
+    private List<PortRule> portRules = new ArrayList<>();
+
+    private StickinessPolicy stickinessPolicy;
+
+    private final Map<String, Object> other = new LinkedHashMap<>();
+
+    public List<PortRule> getPortRules() {
+        return portRules;
+    }
+
+    public void setPortRules(List<PortRule> portRules) {
+        this.portRules = portRules;
+    }
+
+    public StickinessPolicy getStickinessPolicy() {
+        return stickinessPolicy;
+    }
+
+    public void setStickinessPolicy(StickinessPolicy stickinessPolicy) {
+        this.stickinessPolicy = stickinessPolicy;
+    }
+
+    @JsonAnyGetter
+    public Map<String, Object> getOther() {
+        return other;
+    }
+
+    @JsonAnySetter
+    public void setOther(String name, Object value) {
+        other.put(name, value);
+    }
+}
@@ -0,0 +1,18 @@
+package jenkins.plugins.rancher.entity;
+
+public class LoadBalancerService extends Service {
+
+    private LbConfig lbConfig;
+
+    public LoadBalancerService() {
+        super("loadBalancerService");
+    }
+
+    public LbConfig getLbConfig() {
+        return lbConfig;
+    }
+
+    public void setLbConfig(LbConfig lbConfig) {
+        this.lbConfig = lbConfig;
+    }
+}
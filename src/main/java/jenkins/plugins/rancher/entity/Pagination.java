@@ -0,0 +1,62 @@
+package jenkins.plugins.rancher.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+
+/**
+ * Pagination of a rancher collection, {@code next} links to the following page while {@code partial} is set.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class Pagination {
+
+    private static final String MARKER = "marker=";
+
+    private String next;
+    private Integer limit;
+    private boolean partial;
+
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+
+    public Integer getLimit() {
+        return limit;
+    }
+
+    public void setLimit(Integer limit) {
+        this.limit = limit;
+    }
+
+    public boolean isPartial() {
+        return partial;
+    }
+
+    public void setPartial(boolean partial) {
+        this.partial = partial;
+    }
+
+    /**
+     * The marker of the next page from the {@code next} link, {@code null} on the last page.
+     */
+    public String getNextMarker() {
+        if (next == null || next.indexOf('?') < 0) {
+            return null;
+        }
+        for (String parameter : next.substring(next.indexOf('?') + 1).split("&")) {
+            if (parameter.startsWith(MARKER)) {
+                try {
+                    return URLDecoder.decode(parameter.substring(MARKER.length()), "UTF-8");
+                } catch (UnsupportedEncodingException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -1,5 +1,13 @@
 package jenkins.plugins.rancher.entity;
 
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class PortRule {
 
     private String backendName;
@@ -23,6 +31,8 @@ public class PortRule {
 
     private String type = "portRule";
 
+    private final Map<String, Object> other = new LinkedHashMap<>();
+
     public String getBackendName() {
         return backendName;
     }
@@ -102,4 +112,14 @@ public class PortRule {
     public void setType(String type) {
         this.type = type;
     }
+
+    @JsonAnyGetter
+    public Map<String, Object> getOther() {
+        return other;
+    }
+
+    @JsonAnySetter
+    public void setOther(String name, Object value) {
+        other.put(name, value);
+    }
 }
@@ -1,5 +1,9 @@
 package jenkins.plugins.rancher.entity;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+import java.util.Map;
 
 public class Service extends Resource {
 
@@ -11,10 +15,18 @@ public class Service extends Resource {
 
     private LaunchConfig launchConfig;
 
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<LaunchConfig> secondaryLaunchConfigs;
+
     private boolean startOnCreate = true;
 
     private String state;
 
+    private String healthState;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<String, Object> metadata;
+
     public Service() {
         super("service");
     }
@@ -31,6 +43,30 @@ public class Service extends Resource {
         this.state = state;
     }
 
+    public String getHealthState() {
+        return healthState;
+    }
+
+    public void setHealthState(String healthState) {
+        this.healthState = healthState;
+    }
+
+    public List<LaunchConfig> getSecondaryLaunchConfigs() {
+        return secondaryLaunchConfigs;
+    }
+
+    public void setSecondaryLaunchConfigs(List<LaunchConfig> secondaryLaunchConfigs) {
+        this.secondaryLaunchConfigs = secondaryLaunchConfigs;
+    }
+
+    public Map<String, Object> getMetadata() {
+        return metadata;
+    }
+
+    public void setMetadata(Map<String, Object> metadata) {
+        this.metadata = metadata;
+    }
+
     public int getScale() {
         return scale;
     }
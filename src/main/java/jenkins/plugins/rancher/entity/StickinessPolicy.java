@@ -1,5 +1,8 @@
 package jenkins.plugins.rancher.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class StickinessPolicy {
 
     private String cookie;
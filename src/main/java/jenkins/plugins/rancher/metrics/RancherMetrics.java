@@ -0,0 +1,299 @@
+package jenkins.plugins.rancher.metrics;
+
+import com.google.common.cache.CacheStats;
+import jenkins.plugins.rancher.traffic.ExchangeListener;
+import jenkins.plugins.rancher.traffic.RancherExchange;
+import jenkins.plugins.rancher.util.Template;
+
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Controller wide counters of the rancher API usage of all builds, exported in the Prometheus text format
+ * by {@link RancherMetricsAction} and through JMX.
+ */
+public final class RancherMetrics implements RancherMetricsMXBean {
+
+    private static final Logger LOGGER = Logger.getLogger(RancherMetrics.class.getName());
+    private static final String OBJECT_NAME = "jenkins.plugins.rancher:type=RancherMetrics";
+    private static final double[] BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    private static final String FAILED = "failed";
+
+    private static final RancherMetrics INSTANCE = new RancherMetrics();
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "failed to register " + OBJECT_NAME, e);
+        }
+    }
+
+    private final ConcurrentMap<String, Operation> operations = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> waits = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger activeWaits = new AtomicInteger();
+
+    RancherMetrics() {
+    }
+
+    public static RancherMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Listener to add to every client of the endpoint.
+     */
+    public ExchangeListener forEndpoint(String endpoint) {
+        String label = endpointLabel(endpoint);
+        return new ExchangeListener() {
+            @Override
+            public void onStart(String method, String path) {
+                inFlight.incrementAndGet();
+            }
+
+            @Override
+            public void onExchange(RancherExchange exchange) {
+                inFlight.decrementAndGet();
+                record(label, exchange.getOperation(), String.valueOf(exchange.getStatusCode()), exchange.getDurationNanos(),
+                        length(exchange.getRequestBody()), length(exchange.getResponseBody()));
+            }
+
+            @Override
+            public void onFailure(String method, String path, Exception failure) {
+                inFlight.decrementAndGet();
+                record(label, RancherExchange.operation(method, path), FAILED, -1, 0, 0);
+            }
+        };
+    }
+
+    void record(String endpoint, String operation, String status, long durationNanos, long bytesSent, long bytesReceived) {
+        Operation stats = operations.computeIfAbsent(key(endpoint, operation), key -> new Operation(endpoint, operation));
+        stats.count.increment();
+        stats.bytesSent.add(bytesSent);
+        stats.bytesReceived.add(bytesReceived);
+        if (durationNanos >= 0) {
+            stats.observe(durationNanos);
+        }
+        stats.statuses.computeIfAbsent(status, key -> new LongAdder()).increment();
+    }
+
+    public void waitStarted() {
+        activeWaits.incrementAndGet();
+    }
+
+    /**
+     * @param outcome e.g. {@code reached} or {@code timeout}
+     */
+    public void waitFinished(String targetState, String outcome) {
+        activeWaits.decrementAndGet();
+        waits.computeIfAbsent(targetState + " " + outcome, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text exposition format 0.0.4.
+     */
+    public void writePrometheus(Writer writer) throws IOException {
+        Map<String, Operation> sorted = new TreeMap<>(operations);
+
+        header(writer, "rancher_api_requests_total", "counter", "Rancher API requests by endpoint, operation and status code");
+        for (Operation operation : sorted.values()) {
+            for (Map.Entry<String, LongAdder> status : new TreeMap<>(operation.statuses).entrySet()) {
+                writer.write(String.format("rancher_api_requests_total{endpoint=\"%s\",operation=\"%s\",status=\"%s\"} %d%n",
+                        escape(operation.endpoint), escape(operation.operation), status.getKey(), status.getValue().sum()));
+            }
+        }
+
+        header(writer, "rancher_api_request_duration_seconds", "histogram", "Rancher API round trip time");
+        for (Operation operation : sorted.values()) {
+            String labels = String.format("endpoint=\"%s\",operation=\"%s\"", escape(operation.endpoint), escape(operation.operation));
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                cumulative += operation.buckets[i].sum();
+                writer.write(String.format("rancher_api_request_duration_seconds_bucket{%s,le=\"%s\"} %d%n", labels, BUCKETS[i], cumulative));
+            }
+            long observed = operation.observed.sum();
+            writer.write(String.format("rancher_api_request_duration_seconds_bucket{%s,le=\"+Inf\"} %d%n", labels, observed));
+            writer.write(String.format("rancher_api_request_duration_seconds_sum{%s} %s%n", labels, operation.durationNanos.sum() / 1e9));
+            writer.write(String.format("rancher_api_request_duration_seconds_count{%s} %d%n", labels, observed));
+        }
+
+        header(writer, "rancher_api_request_bytes_total", "counter", "Request body bytes sent to the Rancher API");
+        for (Operation operation : sorted.values()) {
+            writer.write(String.format("rancher_api_request_bytes_total{endpoint=\"%s\",operation=\"%s\"} %d%n",
+                    escape(operation.endpoint), escape(operation.operation), operation.bytesSent.sum()));
+        }
+        header(writer, "rancher_api_response_bytes_total", "counter", "Response body bytes received from the Rancher API");
+        for (Operation operation : sorted.values()) {
+            writer.write(String.format("rancher_api_response_bytes_total{endpoint=\"%s\",operation=\"%s\"} %d%n",
+                    escape(operation.endpoint), escape(operation.operation), operation.bytesReceived.sum()));
+        }
+
+        header(writer, "rancher_api_requests_in_flight", "gauge", "Rancher API requests waiting for a response");
+        writer.write(String.format("rancher_api_requests_in_flight %d%n", inFlight.get()));
+
+        header(writer, "rancher_service_waits_active", "gauge", "Builds currently polling a service state");
+        writer.write(String.format("rancher_service_waits_active %d%n", activeWaits.get()));
+        header(writer, "rancher_service_waits_total", "counter", "Finished service state waits by target state and outcome");
+        for (Map.Entry<String, LongAdder> wait : new TreeMap<>(waits).entrySet()) {
+            String[] parts = wait.getKey().split(" ");
+            writer.write(String.format("rancher_service_waits_total{state=\"%s\",outcome=\"%s\"} %d%n", escape(parts[0]), parts[1], wait.getValue().sum()));
+        }
+
+        CacheStats cache = Template.cacheStats();
+        header(writer, "rancher_template_cache_requests_total", "counter", "Lookups of parsed variable templates");
+        writer.write(String.format("rancher_template_cache_requests_total{result=\"hit\"} %d%n", cache.hitCount()));
+        writer.write(String.format("rancher_template_cache_requests_total{result=\"miss\"} %d%n", cache.missCount()));
+        writer.flush();
+    }
+
+    @Override
+    public long getRequestCount() {
+        long count = 0;
+        for (Operation operation : operations.values()) {
+            count += operation.count.sum();
+        }
+        return count;
+    }
+
+    @Override
+    public long getFailedRequestCount() {
+        long count = 0;
+        for (Operation operation : operations.values()) {
+            for (Map.Entry<String, LongAdder> status : operation.statuses.entrySet()) {
+                String code = status.getKey();
+                if (FAILED.equals(code) || code.startsWith("4") || code.startsWith("5")) {
+                    count += status.getValue().sum();
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int getInFlightRequests() {
+        return inFlight.get();
+    }
+
+    @Override
+    public int getActiveWaits() {
+        return activeWaits.get();
+    }
+
+    @Override
+    public Map<String, Long> getRequestCountByOperation() {
+        Map<String, Long> counts = new TreeMap<>();
+        operations.forEach((key, operation) -> counts.put(key, operation.count.sum()));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getMeanLatencyMillisByOperation() {
+        Map<String, Double> latencies = new TreeMap<>();
+        operations.forEach((key, operation) -> {
+            long observed = operation.observed.sum();
+            latencies.put(key, observed == 0 ? 0 : operation.durationNanos.sum() / 1e6 / observed);
+        });
+        return latencies;
+    }
+
+    @Override
+    public Map<String, Long> getRequestCountByStatus() {
+        Map<String, Long> counts = new TreeMap<>();
+        operations.forEach((key, operation) -> operation.statuses.forEach((status, count) -> counts.put(key + " " + status, count.sum())));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getWaitCountByOutcome() {
+        Map<String, Long> counts = new TreeMap<>();
+        waits.forEach((key, count) -> counts.put(key, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public double getTemplateCacheHitRate() {
+        return Template.cacheStats().hitRate();
+    }
+
+    private static void header(Writer writer, String name, String type, String help) throws IOException {
+        writer.write("# HELP " + name + " " + help + "\n");
+        writer.write("# TYPE " + name + " " + type + "\n");
+    }
+
+    private static String key(String endpoint, String operation) {
+        return endpoint + " " + operation;
+    }
+
+    /**
+     * Endpoint without user info, so credentials in the URL never end up in a label.
+     */
+    static String endpointLabel(String endpoint) {
+        if (endpoint == null) {
+            return "";
+        }
+        try {
+            URI uri = new URI(endpoint.trim());
+            if (uri.getHost() == null) {
+                return endpoint.trim();
+            }
+            return new URI(uri.getScheme(), null, uri.getHost(), uri.getPort(), uri.getPath(), null, null).toString();
+        } catch (URISyntaxException e) {
+            return endpoint.trim();
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static long length(String body) {
+        return body == null ? 0 : body.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static final class Operation {
+        private final String endpoint;
+        private final String operation;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder observed = new LongAdder();
+        private final LongAdder durationNanos = new LongAdder();
+        private final LongAdder bytesSent = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+        private final LongAdder[] buckets = new LongAdder[BUCKETS.length];
+        private final ConcurrentMap<String, LongAdder> statuses = new ConcurrentHashMap<>();
+
+        private Operation(String endpoint, String operation) {
+            this.endpoint = endpoint;
+            this.operation = operation;
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        private void observe(long nanos) {
+            observed.increment();
+            durationNanos.add(nanos);
+            double seconds = nanos / (double) TimeUnit.SECONDS.toNanos(1);
+            for (int i = 0; i < BUCKETS.length; i++) {
+                if (seconds <= BUCKETS[i]) {
+                    buckets[i].increment();
+                    return;
+                }
+            }
+        }
+    }
+}
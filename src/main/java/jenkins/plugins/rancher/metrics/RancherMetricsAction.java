@@ -0,0 +1,42 @@
+package jenkins.plugins.rancher.metrics;
+
+import hudson.Extension;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Prometheus scrape endpoint at {@code /rancher-metrics/}, restricted to administrators.
+ */
+@Extension
+public class RancherMetricsAction implements RootAction {
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        rsp.setContentType(CONTENT_TYPE);
+        try (PrintWriter writer = rsp.getWriter()) {
+            RancherMetrics.get().writePrometheus(writer);
+        }
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Rancher Metrics";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "rancher-metrics";
+    }
+}
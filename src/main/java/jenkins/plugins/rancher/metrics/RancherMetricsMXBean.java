@@ -0,0 +1,28 @@
+package jenkins.plugins.rancher.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link RancherMetrics}, registered as {@code jenkins.plugins.rancher:type=RancherMetrics}.
+ * Per operation keys are {@code endpoint operation}.
+ */
+public interface RancherMetricsMXBean {
+
+    long getRequestCount();
+
+    long getFailedRequestCount();
+
+    int getInFlightRequests();
+
+    int getActiveWaits();
+
+    Map<String, Long> getRequestCountByOperation();
+
+    Map<String, Double> getMeanLatencyMillisByOperation();
+
+    Map<String, Long> getRequestCountByStatus();
+
+    Map<String, Long> getWaitCountByOutcome();
+
+    double getTemplateCacheHitRate();
+}
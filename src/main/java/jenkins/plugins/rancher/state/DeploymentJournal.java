@@ -0,0 +1,234 @@
+package jenkins.plugins.rancher.state;
+
+import hudson.model.Run;
+import hudson.remoting.VirtualChannel;
+import jenkins.plugins.rancher.timing.DeploymentPhase;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the {@link DeploymentState} of the running step saved on the build, and hands the upgrades that earlier
+ * builds left open to the step so it can reattach to them. Travels to the agent with the deployment, from where
+ * every change is sent back to be saved on the build, see {@link #saveThrough(VirtualChannel)}.
+ */
+public class DeploymentJournal implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOGGER = Logger.getLogger(DeploymentJournal.class.getName());
+
+    /**
+     * How many earlier builds are searched for interrupted upgrades.
+     */
+    static final int LOOKBACK = 5;
+
+    private final String buildName;
+    private final List<DeploymentState> interrupted;
+    private final List<DeploymentState> states = new ArrayList<>();
+    private final List<DeploymentState> resumed = new ArrayList<>();
+    private DeploymentState current;
+    private Saver saver;
+    private transient Run<?, ?> build;
+    private transient BuildSaver local;
+
+    private DeploymentJournal(Run<?, ?> build, List<DeploymentState> interrupted) {
+        this.build = build;
+        this.buildName = build.getDisplayName();
+        this.interrupted = interrupted;
+        this.local = new BuildSaver(build);
+    }
+
+    public static DeploymentJournal forBuild(Run<?, ?> build) {
+        List<DeploymentState> interrupted = new ArrayList<>();
+        Run<?, ?> previous = build.getPreviousBuild();
+        for (int i = 0; i < LOOKBACK && previous != null; i++, previous = previous.getPreviousBuild()) {
+            if (previous.isBuilding()) {
+                // another build of the job still deploys, its upgrades are not interrupted
+                continue;
+            }
+            DeploymentStateAction action = previous.getAction(DeploymentStateAction.class);
+            if (action != null) {
+                interrupted.addAll(action.getInterrupted());
+            }
+        }
+        return new DeploymentJournal(build, interrupted);
+    }
+
+    /**
+     * The most recent upgrade of the service that an earlier build left open, if any.
+     */
+    public DeploymentState findInterrupted(String environmentId, String serviceId) {
+        for (DeploymentState state : interrupted) {
+            if (state.isFor(environmentId, serviceId)) {
+                return state;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Marks an interrupted upgrade as taken over by this build, so that later builds do not reattach to it again.
+     */
+    public void resume(DeploymentState state) {
+        resumed.add(state);
+        closeResumed();
+    }
+
+    public void start(String environmentId, String serviceId, String serviceName, String imageUuid, String previousImageUuid, DeploymentPhase phase) {
+        close();
+        current = new DeploymentState(environmentId, serviceId, serviceName, imageUuid, phase);
+        current.setPreviousImageUuid(previousImageUuid);
+        current.setBuild(buildName);
+        states.add(current);
+        save(current);
+    }
+
+    public void phase(DeploymentPhase phase) {
+        if (current != null && current.getPhase() != phase) {
+            current.setPhase(phase);
+            save(current);
+        }
+    }
+
+    /**
+     * Records the scale the service is restored to once the upgrade is finished, see {@link DeploymentState#getOriginalScale()}.
+     */
+    public void surge(int originalScale) {
+        if (current != null) {
+            current.setOriginalScale(originalScale);
+            save(current);
+        }
+    }
+
+    /**
+     * Saves the launch configs the service had before the current upgrade, see {@link LaunchConfigSnapshot}.
+     */
+    public void snapshot(LaunchConfigSnapshot snapshot) {
+        if (current != null) {
+            current.setSnapshot(snapshot);
+            save(current);
+        }
+    }
+
+    /**
+     * Records when the step stops waiting for the service state it currently waits for.
+     */
+    public void deadline(long deadline) {
+        if (current != null) {
+            current.setDeadline(deadline);
+            save(current);
+        }
+    }
+
+    /**
+     * Ends the current upgrade, whatever its outcome, so later builds do not reattach to it.
+     */
+    public void close() {
+        if (current != null) {
+            current.close();
+            save(current);
+            current = null;
+        }
+    }
+
+    /**
+     * Lets the journal save the states on the build while it runs on the other side of the channel, so that a build
+     * started after a restart of the controller can reattach to an upgrade that ran on an agent.
+     */
+    public void saveThrough(VirtualChannel channel) {
+        saver = channel.export(Saver.class, local);
+    }
+
+    /**
+     * Takes over the states of the journal that ran on the agent once the deployment is back on the controller, in case
+     * sending one of them failed, and closes the upgrades it resumed.
+     */
+    public void attach(DeploymentJournal remote) {
+        for (int i = 0; i < remote.states.size(); i++) {
+            save(local, i, remote.states.get(i));
+        }
+        resumed.addAll(remote.resumed);
+        closeResumed();
+    }
+
+    private void closeResumed() {
+        if (build == null) {
+            return;
+        }
+        Run<?, ?> previous = build.getPreviousBuild();
+        for (int i = 0; i < LOOKBACK && previous != null; i++, previous = previous.getPreviousBuild()) {
+            DeploymentStateAction action = previous.getAction(DeploymentStateAction.class);
+            if (action == null || !closeResumed(action)) {
+                continue;
+            }
+            try {
+                previous.save();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "failed to save rancher deployment state of " + previous, e);
+            }
+        }
+    }
+
+    private boolean closeResumed(DeploymentStateAction action) {
+        boolean changed = false;
+        for (DeploymentState state : action.getInterrupted()) {
+            for (DeploymentState taken : resumed) {
+                if (taken.isFor(state.getEnvironmentId(), state.getServiceId()) && taken.getBuild().equals(state.getBuild())) {
+                    state.close();
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    private void save(DeploymentState state) {
+        save(local != null ? local : saver, states.indexOf(state), state);
+    }
+
+    private void save(Saver target, int index, DeploymentState state) {
+        if (target == null) {
+            return;
+        }
+        try {
+            target.save(index, state);
+        } catch (IOException | RuntimeException e) {
+            // losing the state only loses the ability to reattach after a restart
+            LOGGER.log(Level.WARNING, "failed to save rancher deployment state of " + buildName, e);
+        }
+    }
+
+    /**
+     * Saves the states of a journal on its build, exported to the agent the journal runs on.
+     */
+    public interface Saver {
+
+        /**
+         * @param index position of the state in the journal, a state sent again replaces the earlier copy
+         */
+        void save(int index, DeploymentState state) throws IOException;
+    }
+
+    private static final class BuildSaver implements Saver {
+        private final Run<?, ?> build;
+        private final Map<Integer, DeploymentState> saved = new HashMap<>();
+
+        private BuildSaver(Run<?, ?> build) {
+            this.build = build;
+        }
+
+        @Override
+        public synchronized void save(int index, DeploymentState state) throws IOException {
+            DeploymentState earlier = saved.putIfAbsent(index, state);
+            if (earlier != null) {
+                earlier.update(state);
+            }
+            DeploymentStateAction.record(build, earlier != null ? earlier : state);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package jenkins.plugins.rancher.state;
+
+import jenkins.plugins.rancher.timing.DeploymentPhase;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.Serializable;
+
+/**
+ * Durable state of one service upgrade, saved with the build whenever its phase changes.
+ * A state that is still open when the build is loaded again was cut short by a controller restart.
+ */
+@ExportedBean(defaultVisibility = 2)
+public class DeploymentState implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String environmentId;
+    private final String serviceId;
+    private final String serviceName;
+    private final String imageUuid;
+    private String previousImageUuid;
+    private int originalScale;
+    private long deadline;
+    private String build;
+    private DeploymentPhase phase;
+    private boolean closed;
+    private LaunchConfigSnapshot snapshot;
+
+    public DeploymentState(String environmentId, String serviceId, String serviceName, String imageUuid, DeploymentPhase phase) {
+        this.environmentId = environmentId;
+        this.serviceId = serviceId;
+        this.serviceName = serviceName;
+        this.imageUuid = imageUuid;
+        this.phase = phase;
+    }
+
+    @Exported
+    public String getEnvironmentId() {
+        return environmentId;
+    }
+
+    @Exported
+    public String getServiceId() {
+        return serviceId;
+    }
+
+    @Exported
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    @Exported
+    public String getImageUuid() {
+        return imageUuid;
+    }
+
+    /**
+     * Image the service ran before the upgrade, its full launch config is in the service's launch config history.
+     */
+    @Exported
+    public String getPreviousImageUuid() {
+        return previousImageUuid;
+    }
+
+    void setPreviousImageUuid(String previousImageUuid) {
+        this.previousImageUuid = previousImageUuid;
+    }
+
+    /**
+     * Scale of the service before it was raised for a surge, 0 when the upgrade did not surge.
+     */
+    @Exported
+    public int getOriginalScale() {
+        return originalScale;
+    }
+
+    void setOriginalScale(int originalScale) {
+        this.originalScale = originalScale;
+    }
+
+    /**
+     * Epoch millis at which the step stops waiting for the service state of the current phase, 0 before the first wait.
+     */
+    @Exported
+    public long getDeadline() {
+        return deadline;
+    }
+
+    void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Display name of the build that started the upgrade, e.g. {@code #41}.
+     */
+    @Exported
+    public String getBuild() {
+        return build;
+    }
+
+    void setBuild(String build) {
+        this.build = build;
+    }
+
+    @Exported
+    public DeploymentPhase getPhase() {
+        return phase;
+    }
+
+    void setPhase(DeploymentPhase phase) {
+        this.phase = phase;
+    }
+
+    /**
+     * Whether the step ended, successfully or not, while this controller was running.
+     */
+    @Exported
+    public boolean isClosed() {
+        return closed;
+    }
+
+    void close() {
+        this.closed = true;
+    }
+
+    /**
+     * The launch configs the service had before the upgrade, {@code null} unless the step keeps the launch config history.
+     * Not exported, the environment values may be secrets.
+     */
+    public LaunchConfigSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    void setSnapshot(LaunchConfigSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Takes over the progress of the same upgrade as recorded elsewhere, e.g. on an agent.
+     */
+    void update(DeploymentState state) {
+        this.previousImageUuid = state.previousImageUuid;
+        this.originalScale = state.originalScale;
+        this.deadline = state.deadline;
+        this.build = state.build;
+        this.phase = state.phase;
+        this.closed = state.closed;
+        this.snapshot = state.snapshot;
+    }
+
+    boolean isFor(String environmentId, String serviceId) {
+        return this.environmentId.equals(environmentId) && this.serviceId.equals(serviceId);
+    }
+}
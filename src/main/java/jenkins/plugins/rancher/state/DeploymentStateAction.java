@@ -0,0 +1,107 @@
+package jenkins.plugins.rancher.state;
+
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The service upgrades of a build, exported through {@code job/app/42/rancherDeployment/api/json}.
+ */
+@ExportedBean
+public class DeploymentStateAction implements RunAction2 {
+
+    private final List<DeploymentState> deployments = new ArrayList<>();
+    private transient Run<?, ?> run;
+
+    /**
+     * Adds the state to the action of the build on first use and saves the build.
+     */
+    static void record(Run<?, ?> build, DeploymentState state) throws IOException {
+        synchronized (build) {
+            DeploymentStateAction action = build.getAction(DeploymentStateAction.class);
+            if (action == null) {
+                action = new DeploymentStateAction();
+                build.addAction(action);
+            }
+            action.put(state);
+        }
+        build.save();
+    }
+
+    synchronized void put(DeploymentState state) {
+        for (int i = 0; i < deployments.size(); i++) {
+            if (deployments.get(i) == state) {
+                return;
+            }
+        }
+        deployments.add(state);
+    }
+
+    @Exported(inline = true)
+    public synchronized List<DeploymentState> getDeployments() {
+        return new ArrayList<>(deployments);
+    }
+
+    /**
+     * The launch config snapshot of the newest upgrade of the service by the build that replaced {@code imageUuid},
+     * {@code null} when there is none.
+     */
+    public LaunchConfigSnapshot findSnapshot(String environmentId, String serviceId, String imageUuid) {
+        List<DeploymentState> states = getDeployments();
+        for (int i = states.size() - 1; i >= 0; i--) {
+            DeploymentState state = states.get(i);
+            LaunchConfigSnapshot snapshot = state.getSnapshot();
+            if (snapshot != null && state.isFor(environmentId, serviceId) && (imageUuid == null || imageUuid.equals(snapshot.getImageUuid()))) {
+                return snapshot;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Upgrades of the build that were still open when the build was loaded, i.e. interrupted by a restart.
+     */
+    public List<DeploymentState> getInterrupted() {
+        List<DeploymentState> interrupted = new ArrayList<>();
+        for (DeploymentState state : getDeployments()) {
+            if (!state.isClosed()) {
+                interrupted.add(state);
+            }
+        }
+        return interrupted;
+    }
+
+    public Run<?, ?> getRun() {
+        return run;
+    }
+
+    @Override
+    public void onAttached(Run<?, ?> r) {
+        this.run = r;
+    }
+
+    @Override
+    public void onLoad(Run<?, ?> r) {
+        this.run = r;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Rancher Deployment State";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "rancherDeployment";
+    }
+}
@@ -0,0 +1,89 @@
+package jenkins.plugins.rancher.state;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hudson.util.Secret;
+import jenkins.plugins.rancher.entity.LaunchConfig;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The launch configs a service had right before an upgrade, saved with the {@link DeploymentState} of the upgrade so
+ * that a later rollback step can put them back. The environment values are kept as {@link Secret}s, so the build only
+ * stores them encrypted.
+ */
+public class LaunchConfigSnapshot implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final SavedLaunchConfig launchConfig;
+    private final List<SavedLaunchConfig> secondaryLaunchConfigs = new ArrayList<>();
+
+    private LaunchConfigSnapshot(SavedLaunchConfig launchConfig) {
+        this.launchConfig = launchConfig;
+    }
+
+    public static LaunchConfigSnapshot of(LaunchConfig launchConfig, List<LaunchConfig> secondaryLaunchConfigs) throws IOException {
+        LaunchConfigSnapshot snapshot = new LaunchConfigSnapshot(new SavedLaunchConfig(launchConfig));
+        if (secondaryLaunchConfigs != null) {
+            for (LaunchConfig secondary : secondaryLaunchConfigs) {
+                snapshot.secondaryLaunchConfigs.add(new SavedLaunchConfig(secondary));
+            }
+        }
+        return snapshot;
+    }
+
+    public String getImageUuid() {
+        return launchConfig.imageUuid;
+    }
+
+    public LaunchConfig getLaunchConfig() throws IOException {
+        return launchConfig.toLaunchConfig();
+    }
+
+    /**
+     * The sidekicks of the service at that time, empty when it had none.
+     */
+    public List<LaunchConfig> getSecondaryLaunchConfigs() throws IOException {
+        List<LaunchConfig> secondaries = new ArrayList<>();
+        for (SavedLaunchConfig secondary : secondaryLaunchConfigs) {
+            secondaries.add(secondary.toLaunchConfig());
+        }
+        return secondaries;
+    }
+
+    private static final class SavedLaunchConfig implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String imageUuid;
+        private final String json;
+        private final Map<String, Secret> environment = new LinkedHashMap<>();
+
+        private SavedLaunchConfig(LaunchConfig launchConfig) throws JsonProcessingException {
+            LaunchConfig copy = OBJECT_MAPPER.convertValue(launchConfig, LaunchConfig.class);
+            if (copy.getEnvironment() != null) {
+                copy.getEnvironment().forEach((key, value) -> environment.put(key, Secret.fromString(value == null ? null : String.valueOf(value))));
+            }
+            copy.setEnvironment(Collections.emptyMap());
+            this.imageUuid = copy.getImageUuid();
+            this.json = OBJECT_MAPPER.writeValueAsString(copy);
+        }
+
+        private LaunchConfig toLaunchConfig() throws IOException {
+            LaunchConfig launchConfig = OBJECT_MAPPER.readValue(json, LaunchConfig.class);
+            Map<String, Object> plain = new LinkedHashMap<>();
+            environment.forEach((key, value) -> plain.put(key, Secret.toString(value)));
+            launchConfig.setEnvironment(plain);
+            return launchConfig;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package jenkins.plugins.rancher.timing;
+
+/**
+ * Phases of a rancher build step, in execution order.
+ */
+public enum DeploymentPhase {
+    VARIABLES("Variable resolution"),
+    COALESCE("Waiting for in-flight deploy"),
+    STACK("Stack lookup/creation"),
+    SERVICE_LOOKUP("Service lookup"),
+    LEASE("Waiting for deployment lease"),
+    CREATE("Create request"),
+    CAPACITY("Host capacity check"),
+    PRE_PULL("Image pre-pull"),
+    SLO_BASELINE("Latency baseline"),
+    SURGE("Surge scale-up"),
+    UPGRADE("Upgrade request"),
+    WAIT_UPGRADED("Time to upgraded"),
+    WARM_UP("Warm-up traffic"),
+    SLO_GATE("Latency SLO gate"),
+    FINISH("Finish/rollback request"),
+    WAIT_ACTIVE("Time to active"),
+    CUTOVER("Load balancer cutover");
+
+    private final String displayName;
+
+    DeploymentPhase(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+}
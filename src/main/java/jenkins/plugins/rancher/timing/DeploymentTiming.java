@@ -0,0 +1,79 @@
+package jenkins.plugins.rancher.timing;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Phase breakdown of one rancher build step.
+ */
+@ExportedBean(defaultVisibility = 2)
+public class DeploymentTiming implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String step;
+    private final String service;
+    private final boolean success;
+    private final List<PhaseTiming> phases;
+
+    public DeploymentTiming(String step, String service, boolean success, List<PhaseTiming> phases) {
+        this.step = step;
+        this.service = service;
+        this.success = success;
+        this.phases = Collections.unmodifiableList(new ArrayList<>(phases));
+    }
+
+    /**
+     * Display name of the build step, e.g. "Deploy/Upgrade Rancher Service".
+     */
+    @Exported
+    public String getStep() {
+        return step;
+    }
+
+    @Exported
+    public String getService() {
+        return service;
+    }
+
+    @Exported
+    public boolean isSuccess() {
+        return success;
+    }
+
+    @Exported(inline = true)
+    public List<PhaseTiming> getPhases() {
+        return phases;
+    }
+
+    public PhaseTiming getPhase(DeploymentPhase phase) {
+        for (PhaseTiming timing : phases) {
+            if (timing.getPhase() == phase) {
+                return timing;
+            }
+        }
+        return null;
+    }
+
+    @Exported
+    public long getDurationMillis() {
+        long duration = 0;
+        for (PhaseTiming phase : phases) {
+            duration += phase.getDurationMillis();
+        }
+        return duration;
+    }
+
+    @Exported
+    public int getCalls() {
+        int calls = 0;
+        for (PhaseTiming phase : phases) {
+            calls += phase.getCalls();
+        }
+        return calls;
+    }
+}
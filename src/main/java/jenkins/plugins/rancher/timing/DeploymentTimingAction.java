@@ -0,0 +1,98 @@
+package jenkins.plugins.rancher.timing;
+
+import hudson.model.Action;
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+import jenkins.tasks.SimpleBuildStep;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Phase timings of the rancher build steps of a build, shown on the build page and exported
+ * through the remote API, e.g. {@code job/app/42/rancherTiming/api/json?depth=2}.
+ */
+@ExportedBean
+public class DeploymentTimingAction implements RunAction2, SimpleBuildStep.LastBuildAction {
+
+    private final List<DeploymentTiming> deployments = new ArrayList<>();
+    private transient Run<?, ?> run;
+
+    /**
+     * Adds the timing to the action of the build, creating the action on first use.
+     */
+    public static void record(Run<?, ?> build, DeploymentTiming timing) {
+        synchronized (build) {
+            DeploymentTimingAction action = build.getAction(DeploymentTimingAction.class);
+            if (action == null) {
+                action = new DeploymentTimingAction();
+                build.addAction(action);
+            }
+            action.add(timing);
+        }
+    }
+
+    synchronized void add(DeploymentTiming timing) {
+        deployments.add(timing);
+    }
+
+    @Exported(inline = true)
+    public synchronized List<DeploymentTiming> getDeployments() {
+        return new ArrayList<>(deployments);
+    }
+
+    /**
+     * Milliseconds spent per phase over all deployments of the build.
+     */
+    public long getDurationMillis(DeploymentPhase phase) {
+        long duration = 0;
+        for (DeploymentTiming deployment : getDeployments()) {
+            PhaseTiming timing = deployment.getPhase(phase);
+            if (timing != null) {
+                duration += timing.getDurationMillis();
+            }
+        }
+        return duration;
+    }
+
+    public Run<?, ?> getRun() {
+        return run;
+    }
+
+    @Override
+    public void onAttached(Run<?, ?> r) {
+        this.run = r;
+    }
+
+    @Override
+    public void onLoad(Run<?, ?> r) {
+        this.run = r;
+    }
+
+    @Override
+    public Collection<? extends Action> getProjectActions() {
+        if (run == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(new DeploymentTimingProjectAction(run.getParent()));
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Rancher Deployment Timing";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "rancherTiming";
+    }
+}
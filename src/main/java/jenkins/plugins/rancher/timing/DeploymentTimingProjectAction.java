@@ -0,0 +1,81 @@
+package jenkins.plugins.rancher.timing;
+
+import hudson.model.Action;
+import hudson.model.Job;
+import hudson.model.Run;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Trend of the rancher deployment phases over the last builds of a job, shown on the job page.
+ */
+public class DeploymentTimingProjectAction implements Action {
+
+    static final int TREND_BUILDS = 30;
+    private static final String[] COLORS = {"#8c8c8c", "#4e79a7", "#76b7b2", "#59a14f", "#f28e2b", "#e15759", "#edc948", "#b07aa1"};
+
+    private final Job<?, ?> job;
+
+    public DeploymentTimingProjectAction(Job<?, ?> job) {
+        this.job = job;
+    }
+
+    public Job<?, ?> getJob() {
+        return job;
+    }
+
+    public DeploymentPhase[] getPhases() {
+        return DeploymentPhase.values();
+    }
+
+    public String getColor(DeploymentPhase phase) {
+        return COLORS[phase.ordinal() % COLORS.length];
+    }
+
+    /**
+     * Builds with timings, oldest first.
+     */
+    public List<DeploymentTimingAction> getTrend() {
+        List<DeploymentTimingAction> trend = new ArrayList<>();
+        for (Run<?, ?> build : job.getBuilds().limit(TREND_BUILDS)) {
+            DeploymentTimingAction action = build.getAction(DeploymentTimingAction.class);
+            if (action != null) {
+                trend.add(action);
+            }
+        }
+        Collections.reverse(trend);
+        return trend;
+    }
+
+    /**
+     * Longest total deployment time of the trend, used to scale the chart.
+     */
+    public long getMaxDurationMillis() {
+        long max = 1;
+        for (DeploymentTimingAction action : getTrend()) {
+            long duration = 0;
+            for (DeploymentPhase phase : DeploymentPhase.values()) {
+                duration += action.getDurationMillis(phase);
+            }
+            max = Math.max(max, duration);
+        }
+        return max;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Rancher Deployment Trend";
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+}
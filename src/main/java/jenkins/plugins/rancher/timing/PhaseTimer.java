@@ -0,0 +1,61 @@
+package jenkins.plugins.rancher.timing;
+
+import jenkins.plugins.rancher.traffic.ExchangeListener;
+import jenkins.plugins.rancher.traffic.RancherExchange;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the phases of a build step and attributes the rancher API calls to the current phase.
+ * A phase entered several times is accumulated. The timer travels with a deployment run on an agent,
+ * phases must be stopped before it is sent.
+ */
+public class PhaseTimer implements ExchangeListener, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final Map<DeploymentPhase, PhaseTiming> phases = new EnumMap<>(DeploymentPhase.class);
+    private PhaseTiming current;
+    private long currentStart;
+    private String service;
+
+    public synchronized void start(DeploymentPhase phase) {
+        stop();
+        current = phases.computeIfAbsent(phase, PhaseTiming::new);
+        currentStart = System.nanoTime();
+    }
+
+    public synchronized void stop() {
+        if (current != null) {
+            current.durationMillis += TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - currentStart);
+            current = null;
+        }
+    }
+
+    public synchronized void setService(String service) {
+        this.service = service;
+    }
+
+    @Override
+    public synchronized void onExchange(RancherExchange exchange) {
+        if (current == null) {
+            return;
+        }
+        current.calls++;
+        current.bytesSent += length(exchange.getRequestBody());
+        current.bytesReceived += length(exchange.getResponseBody());
+    }
+
+    public synchronized DeploymentTiming toTiming(String step, boolean success) {
+        stop();
+        return new DeploymentTiming(step, service, success, new ArrayList<>(phases.values()));
+    }
+
+    private static int length(String body) {
+        return body == null ? 0 : body.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,53 @@
+package jenkins.plugins.rancher.timing;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.Serializable;
+
+/**
+ * Time, API calls and bytes spent in one {@link DeploymentPhase}.
+ */
+@ExportedBean(defaultVisibility = 3)
+public class PhaseTiming implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final DeploymentPhase phase;
+    long durationMillis;
+    int calls;
+    long bytesSent;
+    long bytesReceived;
+
+    public PhaseTiming(DeploymentPhase phase) {
+        this.phase = phase;
+    }
+
+    @Exported
+    public DeploymentPhase getPhase() {
+        return phase;
+    }
+
+    public String getDisplayName() {
+        return phase.getDisplayName();
+    }
+
+    @Exported
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Exported
+    public int getCalls() {
+        return calls;
+    }
+
+    @Exported
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    @Exported
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+}
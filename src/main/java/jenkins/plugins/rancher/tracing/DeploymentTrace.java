@@ -0,0 +1,161 @@
+package jenkins.plugins.rancher.tracing;
+
+import hudson.model.Run;
+import jenkins.plugins.rancher.traffic.ExchangeListener;
+import jenkins.plugins.rancher.traffic.RancherExchange;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Trace of one rancher build step: a root span for {@code perform()}, a client span per rancher API call
+ * and a span per service state wait. API calls made while waiting are children of the wait span.
+ * <p>
+ * When the build defines a W3C {@code TRACEPARENT} variable the step joins that trace,
+ * so it can be correlated with the other stages of the pipeline.
+ */
+public class DeploymentTrace implements ExchangeListener, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final String TRACEPARENT = "TRACEPARENT";
+    private static final Pattern TRACEPARENT_FORMAT = Pattern.compile("^[0-9a-f]{2}-([0-9a-f]{32})-([0-9a-f]{16})-[0-9a-f]{2}$");
+
+    private final List<Span> spans = new ArrayList<>();
+    private transient long originEpochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    private transient long originNanoTime = System.nanoTime();
+    private final Span root;
+    private String traceId = Span.randomHex(16);
+    private String remoteParentSpanId;
+    private Span wait;
+    private Span call;
+
+    DeploymentTrace(String name) {
+        root = new Span(name, Span.KIND_INTERNAL, null, now());
+        spans.add(root);
+    }
+
+    /**
+     * @return the trace of the build step, or {@code null} when no exporter is configured
+     */
+    public static DeploymentTrace start(String name, Run<?, ?> build) {
+        if (!SpanExporters.isEnabled()) {
+            return null;
+        }
+        DeploymentTrace trace = new DeploymentTrace(name);
+        trace.root.setAttribute("jenkins.build", build.getExternalizableId());
+        return trace;
+    }
+
+    /**
+     * Joins the trace of a {@code 00-<trace id>-<span id>-<flags>} W3C trace context, ignored when malformed.
+     */
+    public synchronized void setParent(String traceparent) {
+        if (traceparent == null) {
+            return;
+        }
+        Matcher matcher = TRACEPARENT_FORMAT.matcher(traceparent.trim());
+        if (matcher.matches()) {
+            traceId = matcher.group(1);
+            remoteParentSpanId = matcher.group(2);
+        }
+    }
+
+    public synchronized void setAttribute(String key, Object value) {
+        root.setAttribute(key, value);
+    }
+
+    public synchronized void startWait(String serviceId, String targetState) {
+        wait = new Span("wait " + targetState, Span.KIND_INTERNAL, root, now())
+                .setAttribute("rancher.service.id", serviceId)
+                .setAttribute("rancher.target_state", targetState);
+        spans.add(wait);
+    }
+
+    public synchronized void endWait(String outcome) {
+        if (wait == null) {
+            return;
+        }
+        wait.setAttribute("rancher.wait.outcome", outcome);
+        if (!"reached".equals(outcome)) {
+            wait.setError(outcome);
+        }
+        wait.end(now());
+        wait = null;
+    }
+
+    @Override
+    public synchronized void onStart(String method, String path) {
+        call = new Span(RancherExchange.operation(method, path), Span.KIND_CLIENT, wait != null ? wait : root, now())
+                .setAttribute("http.method", method)
+                .setAttribute("rancher.path", path);
+        spans.add(call);
+    }
+
+    @Override
+    public synchronized void onExchange(RancherExchange exchange) {
+        if (call == null) {
+            return;
+        }
+        int statusCode = exchange.getStatusCode();
+        call.setAttribute("http.status_code", statusCode);
+        if (statusCode >= 400) {
+            call.setError("HTTP " + statusCode);
+        }
+        call.end(now());
+        call = null;
+    }
+
+    @Override
+    public synchronized void onFailure(String method, String path, Exception failure) {
+        if (call == null) {
+            return;
+        }
+        call.setError(failure.getMessage());
+        call.end(now());
+        call = null;
+    }
+
+    /**
+     * Ends all open spans.
+     */
+    public synchronized List<Span> finish(boolean success, String failure) {
+        long end = now();
+        if (!success) {
+            root.setError(failure);
+        }
+        for (Span span : spans) {
+            span.end(end);
+        }
+        return Collections.unmodifiableList(new ArrayList<>(spans));
+    }
+
+    public synchronized String getTraceId() {
+        return traceId;
+    }
+
+    synchronized String getRemoteParentSpanId() {
+        return remoteParentSpanId;
+    }
+
+    public Span getRoot() {
+        return root;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // System.nanoTime() has a different origin in every JVM, e.g. on the agent running the deployment
+        originEpochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        originNanoTime = System.nanoTime();
+    }
+
+    private long now() {
+        return originEpochNanos + System.nanoTime() - originNanoTime;
+    }
+}
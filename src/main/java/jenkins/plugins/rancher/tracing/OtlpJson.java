@@ -0,0 +1,76 @@
+package jenkins.plugins.rancher.tracing;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes spans as an OTLP/JSON {@code ExportTraceServiceRequest}, the payload of a collector's
+ * {@code /v1/traces} endpoint and the line format of its file exporter.
+ */
+final class OtlpJson {
+
+    static final String SERVICE_NAME = "jenkins-rancher-plugin";
+    static final String SCOPE_NAME = "jenkins.plugins.rancher";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private OtlpJson() {
+    }
+
+    static String encode(DeploymentTrace trace, List<Span> spans) {
+        ObjectNode request = OBJECT_MAPPER.createObjectNode();
+        ObjectNode resourceSpans = request.putArray("resourceSpans").addObject();
+        attribute(resourceSpans.putObject("resource").putArray("attributes"), "service.name", SERVICE_NAME);
+        ObjectNode scopeSpans = resourceSpans.putArray("scopeSpans").addObject();
+        scopeSpans.putObject("scope").put("name", SCOPE_NAME);
+        ArrayNode spanNodes = scopeSpans.putArray("spans");
+
+        for (Span span : spans) {
+            ObjectNode node = spanNodes.addObject();
+            node.put("traceId", trace.getTraceId());
+            node.put("spanId", span.getSpanId());
+            String parentSpanId = span.getParent() != null ? span.getParent().getSpanId() : trace.getRemoteParentSpanId();
+            if (parentSpanId != null) {
+                node.put("parentSpanId", parentSpanId);
+            }
+            node.put("name", span.getName());
+            node.put("kind", span.getKind());
+            node.put("startTimeUnixNano", String.valueOf(span.getStartEpochNanos()));
+            node.put("endTimeUnixNano", String.valueOf(span.getEndEpochNanos()));
+            ArrayNode attributes = node.putArray("attributes");
+            for (Map.Entry<String, Object> attribute : span.getAttributes().entrySet()) {
+                attribute(attributes, attribute.getKey(), attribute.getValue());
+            }
+            ObjectNode status = node.putObject("status");
+            if (span.isError()) {
+                status.put("code", 2);
+                if (span.getStatusMessage() != null) {
+                    status.put("message", span.getStatusMessage());
+                }
+            } else {
+                status.put("code", 1);
+            }
+        }
+        return request.toString();
+    }
+
+    private static void attribute(ArrayNode attributes, String key, Object value) {
+        ObjectNode attribute = attributes.addObject();
+        attribute.put("key", key);
+        ObjectNode anyValue = attribute.putObject("value");
+        if (value instanceof Integer || value instanceof Long) {
+            // OTLP/JSON encodes 64 bit integers as strings
+            anyValue.put("intValue", String.valueOf(value));
+        } else if (value instanceof Boolean) {
+            anyValue.put("boolValue", (Boolean) value);
+        } else if (value instanceof Number) {
+            anyValue.put("doubleValue", ((Number) value).doubleValue());
+        } else {
+            anyValue.put("stringValue", String.valueOf(value));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package jenkins.plugins.rancher.tracing;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A finished or running span of a {@link DeploymentTrace}, modelled after the OpenTelemetry span.
+ */
+public class Span implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final int KIND_INTERNAL = 1;
+    public static final int KIND_CLIENT = 3;
+
+    private final String name;
+    private final int kind;
+    private final String spanId;
+    private final Span parent;
+    private final long startEpochNanos;
+    private long endEpochNanos;
+    private final Map<String, Object> attributes = new LinkedHashMap<>();
+    private boolean error;
+    private String statusMessage;
+
+    Span(String name, int kind, Span parent, long startEpochNanos) {
+        this.name = name;
+        this.kind = kind;
+        this.parent = parent;
+        this.spanId = randomHex(8);
+        this.startEpochNanos = startEpochNanos;
+    }
+
+    public Span setAttribute(String key, Object value) {
+        if (value != null) {
+            attributes.put(key, value);
+        }
+        return this;
+    }
+
+    public void end(long endEpochNanos) {
+        if (this.endEpochNanos == 0) {
+            this.endEpochNanos = endEpochNanos;
+        }
+    }
+
+    public void setError(String message) {
+        this.error = true;
+        this.statusMessage = message;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getKind() {
+        return kind;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    public Span getParent() {
+        return parent;
+    }
+
+    public long getStartEpochNanos() {
+        return startEpochNanos;
+    }
+
+    public long getEndEpochNanos() {
+        return endEpochNanos;
+    }
+
+    public boolean isEnded() {
+        return endEpochNanos != 0;
+    }
+
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    public boolean isError() {
+        return error;
+    }
+
+    public String getStatusMessage() {
+        return statusMessage;
+    }
+
+    static String randomHex(int bytes) {
+        StringBuilder builder = new StringBuilder(bytes * 2);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < bytes; i++) {
+            builder.append(String.format("%02x", random.nextInt(256)));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,80 @@
+package jenkins.plugins.rancher.tracing;
+
+import com.google.common.base.Strings;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.util.EntityUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Exports finished traces as OTLP/JSON, configured with system properties:
+ * <ul>
+ * <li>{@code jenkins.plugins.rancher.tracing.SpanExporters.file}: appends one request per line to the file,
+ * readable by the OpenTelemetry collector {@code otlpjsonfile} receiver</li>
+ * <li>{@code jenkins.plugins.rancher.tracing.SpanExporters.endpoint}: posts to a collector, e.g.
+ * {@code http://localhost:4318/v1/traces}</li>
+ * </ul>
+ */
+public final class SpanExporters {
+
+    public static final String FILE_PROPERTY = SpanExporters.class.getName() + ".file";
+    public static final String ENDPOINT_PROPERTY = SpanExporters.class.getName() + ".endpoint";
+    private static final int TIMEOUT_MILLIS = 2000;
+
+    private SpanExporters() {
+    }
+
+    public static boolean isEnabled() {
+        return !Strings.isNullOrEmpty(System.getProperty(FILE_PROPERTY)) || !Strings.isNullOrEmpty(System.getProperty(ENDPOINT_PROPERTY));
+    }
+
+    public static void export(DeploymentTrace trace, List<Span> spans) throws IOException {
+        String payload = OtlpJson.encode(trace, spans);
+        String file = System.getProperty(FILE_PROPERTY);
+        if (!Strings.isNullOrEmpty(file)) {
+            appendLine(new File(file.trim()), payload);
+        }
+        String endpoint = System.getProperty(ENDPOINT_PROPERTY);
+        if (!Strings.isNullOrEmpty(endpoint)) {
+            post(endpoint.trim(), payload);
+        }
+    }
+
+    private static synchronized void appendLine(File file, String payload) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("can not create directory " + parent);
+        }
+        try (OutputStream output = new FileOutputStream(file, true)) {
+            output.write((payload + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void post(String endpoint, String payload) throws IOException {
+        DefaultHttpClient httpClient = new DefaultHttpClient();
+        HttpConnectionParams.setConnectionTimeout(httpClient.getParams(), TIMEOUT_MILLIS);
+        HttpConnectionParams.setSoTimeout(httpClient.getParams(), TIMEOUT_MILLIS);
+        HttpPost request = new HttpPost(endpoint);
+        request.setEntity(new StringEntity(payload, ContentType.APPLICATION_JSON));
+        try {
+            HttpResponse response = httpClient.execute(request);
+            int statusCode = response.getStatusLine().getStatusCode();
+            EntityUtils.consume(response.getEntity());
+            if (statusCode / 100 != 2) {
+                throw new IOException("collector " + endpoint + " answered " + statusCode);
+            }
+        } finally {
+            httpClient.getConnectionManager().shutdown();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package jenkins.plugins.rancher.traffic;
+
+/**
+ * Notified of every exchange made by a rancher client, successful or not.
+ */
+public interface ExchangeListener {
+
+    /**
+     * Called before the request is sent.
+     */
+    default void onStart(String method, String path) {
+    }
+
+    void onExchange(RancherExchange exchange);
+
+    /**
+     * Called instead of {@link #onExchange} when no response was received, e.g. the connection was refused.
+     */
+    default void onFailure(String method, String path, Exception failure) {
+    }
+}
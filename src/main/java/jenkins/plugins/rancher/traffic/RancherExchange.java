@@ -0,0 +1,113 @@
+package jenkins.plugins.rancher.traffic;
+
+import java.io.Serializable;
+
+/**
+ * One request/response round trip with the rancher API.
+ */
+public class RancherExchange implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String method;
+    private final String path;
+    private final String requestBody;
+    private final int statusCode;
+    private final String responseBody;
+    private final long startedAt;
+    private final long durationNanos;
+
+    public RancherExchange(String method, String path, String requestBody, int statusCode, String responseBody, long startedAt, long durationNanos) {
+        this.method = method;
+        this.path = path;
+        this.requestBody = requestBody;
+        this.statusCode = statusCode;
+        this.responseBody = responseBody;
+        this.startedAt = startedAt;
+        this.durationNanos = durationNanos;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * Path relative to the API endpoint, e.g. {@code /projects/1a5/services/1s3}.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    public String getRequestBody() {
+        return requestBody;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getResponseBody() {
+        return responseBody;
+    }
+
+    /**
+     * Epoch millis at which the request was sent.
+     */
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public String getOperation() {
+        return operation(method, path);
+    }
+
+    /**
+     * Names the API operation of a request: {@code environment}, {@code stacks}, {@code services}, {@code service},
+     * {@code createStack}, {@code createService}, the service action such as {@code upgrade}, or {@code other}. The
+     * query is left out, so paging markers and filters don't make a name of their own.
+     */
+    public static String operation(String method, String path) {
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            for (String parameter : path.substring(query + 1).split("&")) {
+                if (parameter.startsWith("action=") && parameter.length() > "action=".length()) {
+                    return parameter.substring("action=".length());
+                }
+            }
+            path = path.substring(0, query);
+        }
+        String[] segments = path.replaceAll("^/+|/+$", "").split("/+");
+        if (segments.length < 2 || !"projects".equals(segments[0])) {
+            return "other";
+        }
+        if (segments.length == 2) {
+            return "environment";
+        }
+        String collection = segments[2];
+        boolean post = "POST".equals(method);
+        if (segments.length == 3) {
+            if ("stack".equals(collection) && post) {
+                return "createStack";
+            }
+            if ("service".equals(collection) && post) {
+                return "createService";
+            }
+            return collection;
+        }
+        if (segments.length == 4) {
+            return "stacks".equals(collection) ? "stack" : "services".equals(collection) ? "service" : collection;
+        }
+        if (segments.length == 5) {
+            return segments[4];
+        }
+        return "other";
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + path + " -> " + statusCode;
+    }
+}
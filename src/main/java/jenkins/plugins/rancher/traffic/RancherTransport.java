@@ -0,0 +1,16 @@
+package jenkins.plugins.rancher.traffic;
+
+import java.io.IOException;
+
+/**
+ * Sends a request to the rancher API. The default transport is HTTP, replays answer from a recording.
+ */
+public interface RancherTransport {
+
+    /**
+     * @param method      HTTP method
+     * @param path        path relative to the API endpoint
+     * @param requestBody JSON body, {@code null} when the request has none
+     */
+    RancherExchange execute(String method, String path, String requestBody) throws IOException;
+}
@@ -0,0 +1,76 @@
+package jenkins.plugins.rancher.traffic;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Masks the values of credential-like JSON fields, e.g. {@code secretValue} or a {@code DB_PASSWORD} environment variable.
+ */
+class Redactor {
+
+    static final String REDACTED = "<redacted>";
+
+    private static final Pattern SENSITIVE_KEY = Pattern.compile(
+            "(?i).*(password|passwd|secret|token|credential|private_?key|access_?key|api_?key).*");
+
+    private final ObjectMapper objectMapper;
+
+    Redactor(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Returns the body with sensitive values masked. Bodies that are not JSON are returned as is.
+     */
+    String redact(String body) {
+        if (body == null || body.isEmpty()) {
+            return body;
+        }
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(body);
+        } catch (IOException e) {
+            return body;
+        }
+        if (node == null || !redact(node)) {
+            return body;
+        }
+        try {
+            return objectMapper.writeValueAsString(node);
+        } catch (IOException e) {
+            return REDACTED;
+        }
+    }
+
+    private static boolean redact(JsonNode node) {
+        boolean changed = false;
+        if (node instanceof ObjectNode) {
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                if (field.getValue().isValueNode() && !field.getValue().isNull() && isSensitive(field.getKey())) {
+                    ((ObjectNode) node).put(field.getKey(), REDACTED);
+                    changed = true;
+                } else {
+                    changed |= redact(field.getValue());
+                }
+            }
+        } else if (node instanceof ArrayNode) {
+            for (JsonNode element : node) {
+                changed |= redact(element);
+            }
+        }
+        return changed;
+    }
+
+    static boolean isSensitive(String key) {
+        return SENSITIVE_KEY.matcher(key).matches();
+    }
+}
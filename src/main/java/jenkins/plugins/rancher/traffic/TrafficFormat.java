@@ -0,0 +1,83 @@
+package jenkins.plugins.rancher.traffic;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * On-disk format of a traffic recording: gzipped JSON lines, one exchange per line.
+ * <pre>
+ * {"at":0,"us":8123,"m":"GET","p":"/projects/1a5/stacks","s":200,"r":"{...}"}
+ * </pre>
+ * {@code at} is the offset in ms from the first exchange, {@code us} the round trip in microseconds,
+ * {@code q} and {@code r} the redacted request and response bodies. Credentials are never written.
+ */
+final class TrafficFormat {
+
+    static final String EXTENSION = ".jsonl.gz";
+
+    private TrafficFormat() {
+    }
+
+    static ObjectMapper objectMapper() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        return objectMapper;
+    }
+
+    static List<Line> read(File file) throws IOException {
+        ObjectMapper objectMapper = objectMapper();
+        List<Line> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    lines.add(objectMapper.readValue(line, Line.class));
+                } catch (IOException e) {
+                    throw new IOException(String.format("%s:%d: %s", file, lineNumber, e.getMessage()), e);
+                }
+            }
+        }
+        return lines;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    static class Line {
+        @JsonProperty("at")
+        long offsetMillis;
+        @JsonProperty("us")
+        long durationMicros;
+        @JsonProperty("m")
+        String method;
+        @JsonProperty("p")
+        String path;
+        @JsonProperty("s")
+        int statusCode;
+        @JsonProperty("q")
+        String requestBody;
+        @JsonProperty("r")
+        String responseBody;
+
+        RancherExchange toExchange(long origin) {
+            return new RancherExchange(method, path, requestBody, statusCode, responseBody,
+                    origin + offsetMillis, durationMicros * 1000);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package jenkins.plugins.rancher.traffic;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes every exchange of a rancher client to a {@link TrafficFormat} recording.
+ * <p>
+ * Recording of builds is enabled by pointing the {@code jenkins.plugins.rancher.traffic.TrafficRecorder.directory}
+ * system property to a directory, one file is written per build step.
+ */
+public class TrafficRecorder implements ExchangeListener, Closeable {
+
+    public static final String DIRECTORY_PROPERTY = TrafficRecorder.class.getName() + ".directory";
+
+    private final File file;
+    private final TaskListener listener;
+    private final ObjectMapper objectMapper = TrafficFormat.objectMapper();
+    private final Redactor redactor = new Redactor(objectMapper);
+    private Writer writer;
+    private long origin = -1;
+    private int count;
+
+    public TrafficRecorder(File file, TaskListener listener) {
+        this.file = file;
+        this.listener = listener;
+    }
+
+    /**
+     * @return a recorder for the build, or {@code null} when recording is not enabled
+     */
+    public static TrafficRecorder forBuild(Run<?, ?> build, TaskListener listener) {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        if (directory == null || directory.trim().isEmpty()) {
+            return null;
+        }
+        String name = String.format("%s-%d-%d%s", build.getParent().getFullName().replaceAll("[^\\w.-]", "_"),
+                build.getNumber(), System.currentTimeMillis(), TrafficFormat.EXTENSION);
+        return new TrafficRecorder(new File(directory.trim(), name), listener);
+    }
+
+    @Override
+    public synchronized void onExchange(RancherExchange exchange) {
+        try {
+            if (writer == null) {
+                File parent = file.getAbsoluteFile().getParentFile();
+                if (!parent.isDirectory() && !parent.mkdirs()) {
+                    throw new IOException("can not create directory " + parent);
+                }
+                writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)), StandardCharsets.UTF_8));
+                origin = exchange.getStartedAt();
+            }
+            TrafficFormat.Line line = new TrafficFormat.Line();
+            line.offsetMillis = exchange.getStartedAt() - origin;
+            line.durationMicros = exchange.getDurationNanos() / 1000;
+            line.method = exchange.getMethod();
+            line.path = exchange.getPath();
+            line.statusCode = exchange.getStatusCode();
+            line.requestBody = redactor.redact(exchange.getRequestBody());
+            line.responseBody = redactor.redact(exchange.getResponseBody());
+            writer.write(objectMapper.writeValueAsString(line));
+            writer.write('\n');
+            count++;
+        } catch (IOException e) {
+            // a broken recording must never fail the deployment
+            listener.getLogger().println("failed to record rancher API traffic to " + file + ": " + e.getMessage());
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package jenkins.plugins.rancher.traffic;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers rancher client requests from a {@link TrafficRecorder} recording, without any rancher server.
+ * <p>
+ * Requests are matched by method and path in recorded order, so a replayed deployment sees the same
+ * sequence of service states as the recorded one. When a request is made more often than it was recorded,
+ * e.g. one more state poll, the last recorded answer is repeated. Unknown requests get a 404.
+ * <p>
+ * Every answer is delayed by the recorded round trip multiplied by the time scale: {@link #ORIGINAL} speed,
+ * {@link #ACCELERATED} without any delay, or {@link #STRESSED} with a server several times slower.
+ */
+public class TrafficReplay implements RancherTransport {
+
+    public static final double ORIGINAL = 1;
+    public static final double ACCELERATED = 0;
+    public static final double STRESSED = 4;
+
+    private final List<RancherExchange> recorded;
+    private final double timeScale;
+    private final Map<String, Deque<RancherExchange>> pending = new HashMap<>();
+    private final Map<String, RancherExchange> lastAnswers = new HashMap<>();
+    private final List<String> unmatched = new ArrayList<>();
+    private int replayed;
+    private int repeated;
+
+    public TrafficReplay(List<RancherExchange> recorded, double timeScale) {
+        if (timeScale < 0) {
+            throw new IllegalArgumentException("time scale should not be negative: " + timeScale);
+        }
+        this.recorded = Collections.unmodifiableList(new ArrayList<>(recorded));
+        this.timeScale = timeScale;
+        for (RancherExchange exchange : recorded) {
+            pending.computeIfAbsent(key(exchange.getMethod(), exchange.getPath()), key -> new ArrayDeque<>()).add(exchange);
+        }
+    }
+
+    public static TrafficReplay load(File recording, double timeScale) throws IOException {
+        List<RancherExchange> exchanges = new ArrayList<>();
+        for (TrafficFormat.Line line : TrafficFormat.read(recording)) {
+            exchanges.add(line.toExchange(0));
+        }
+        return new TrafficReplay(exchanges, timeScale);
+    }
+
+    /**
+     * Parses {@code original}, {@code accelerated}, {@code stressed} or a plain number.
+     */
+    public static double timeScale(String speed) {
+        switch (speed.trim().toLowerCase()) {
+            case "original":
+                return ORIGINAL;
+            case "accelerated":
+                return ACCELERATED;
+            case "stressed":
+                return STRESSED;
+            default:
+                return Double.parseDouble(speed);
+        }
+    }
+
+    @Override
+    public RancherExchange execute(String method, String path, String requestBody) throws IOException {
+        long startedAt = System.currentTimeMillis();
+        long start = System.nanoTime();
+        RancherExchange answer = answer(method, path);
+        if (answer == null) {
+            return new RancherExchange(method, path, requestBody, 404,
+                    "{\"type\":\"error\",\"status\":404,\"code\":\"NotRecorded\"}", startedAt, System.nanoTime() - start);
+        }
+
+        long delayNanos = (long) (answer.getDurationNanos() * timeScale);
+        if (delayNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(delayNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while replaying " + method + " " + path, e);
+            }
+        }
+        return new RancherExchange(method, path, requestBody, answer.getStatusCode(), answer.getResponseBody(),
+                startedAt, System.nanoTime() - start);
+    }
+
+    private synchronized RancherExchange answer(String method, String path) {
+        String key = key(method, path);
+        Deque<RancherExchange> queue = pending.get(key);
+        if (queue != null && !queue.isEmpty()) {
+            RancherExchange answer = queue.poll();
+            lastAnswers.put(key, answer);
+            replayed++;
+            return answer;
+        }
+        RancherExchange last = lastAnswers.get(key);
+        if (last != null) {
+            repeated++;
+        } else {
+            unmatched.add(key);
+        }
+        return last;
+    }
+
+    private static String key(String method, String path) {
+        return method + " " + path;
+    }
+
+    public List<RancherExchange> getRecorded() {
+        return recorded;
+    }
+
+    /**
+     * Number of recorded exchanges that were answered.
+     */
+    public synchronized int getReplayed() {
+        return replayed;
+    }
+
+    /**
+     * Number of requests beyond the recorded ones, answered by repeating the last recorded answer.
+     */
+    public synchronized int getRepeated() {
+        return repeated;
+    }
+
+    /**
+     * Requests that were never recorded.
+     */
+    public synchronized List<String> getUnmatched() {
+        return new ArrayList<>(unmatched);
+    }
+
+    /**
+     * Recorded exchanges the replayed run did not make.
+     */
+    public synchronized int getRemaining() {
+        return recorded.size() - replayed;
+    }
+
+    /**
+     * Time from the first recorded request to the last recorded response.
+     */
+    public long getRecordedMillis() {
+        long end = 0;
+        long origin = recorded.isEmpty() ? 0 : recorded.get(0).getStartedAt();
+        for (RancherExchange exchange : recorded) {
+            end = Math.max(end, exchange.getStartedAt() - origin + TimeUnit.NANOSECONDS.toMillis(exchange.getDurationNanos()));
+        }
+        return end;
+    }
+}
@@ -0,0 +1,78 @@
+package jenkins.plugins.rancher.util;
+
+import hudson.EnvVars;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Lazy view over the build environment. The environment is only computed when a template
+ * actually asks for a variable, and only the referenced keys are ever read from it.
+ */
+public class BuildVariables implements Function<String, String> {
+
+    private final Run<?, ?> build;
+    private final TaskListener listener;
+    private final Set<String> referencedVariables;
+    private Map<String, String> resolved;
+
+    public BuildVariables(Run<?, ?> build, TaskListener listener, Set<String> referencedVariables) {
+        this.build = build;
+        this.listener = listener;
+        this.referencedVariables = referencedVariables;
+    }
+
+    @Override
+    public String apply(String key) {
+        if (!referencedVariables.contains(key)) {
+            return null;
+        }
+        return resolve().get(key);
+    }
+
+    private Map<String, String> resolve() {
+        if (resolved != null) {
+            return resolved;
+        }
+        resolved = Collections.emptyMap();
+        try {
+            EnvVars environment = build.getEnvironment(listener);
+            if (environment != null) {
+                Map<String, String> values = new HashMap<>(referencedVariables.size());
+                for (String key : referencedVariables) {
+                    String value = environment.get(key);
+                    if (value != null) {
+                        values.put(key, value);
+                    }
+                }
+                resolved = values;
+            }
+        } catch (Exception e) {
+            listener.getLogger().println(e.getMessage());
+        }
+        return resolved;
+    }
+
+    /**
+     * Resolved values of the referenced variables, e.g. to ship them to an agent.
+     * The build environment is not computed when no variable is referenced.
+     */
+    public Map<String, String> toMap() {
+        if (referencedVariables.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return new HashMap<>(resolve());
+    }
+
+    /**
+     * Whether the build environment had to be computed so far.
+     */
+    public boolean isResolved() {
+        return resolved != null;
+    }
+}
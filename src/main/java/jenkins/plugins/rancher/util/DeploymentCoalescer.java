@@ -0,0 +1,127 @@
+package jenkins.plugins.rancher.util;
+
+import hudson.model.TaskListener;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collapses queued deploys of the same service to the latest one. Per (endpoint, environment, service) one deploy
+ * is in flight and at most one waits: a newer deploy replaces the waiting one, which is then superseded.
+ * Coordination is per controller.
+ */
+public final class DeploymentCoalescer {
+
+    private static final DeploymentCoalescer INSTANCE = new DeploymentCoalescer();
+
+    private final Map<String, Lane> lanes = new HashMap<>();
+
+    DeploymentCoalescer() {
+    }
+
+    public static DeploymentCoalescer get() {
+        return INSTANCE;
+    }
+
+    public static String key(String endpoint, String environmentId, String service) {
+        return endpoint + "|" + environmentId + "|" + service;
+    }
+
+    /**
+     * Waits until the deploy may run or has been superseded by a newer one.
+     *
+     * @param build name of the deploying build, e.g. {@code #42}
+     */
+    public Ticket enter(String key, String build, TaskListener listener) throws InterruptedException {
+        Ticket ticket = new Ticket(key, build);
+        synchronized (this) {
+            Lane lane = lanes.computeIfAbsent(key, k -> new Lane());
+            if (lane.inFlight == null) {
+                lane.inFlight = ticket;
+                return ticket;
+            }
+            if (lane.pending != null) {
+                lane.pending.supersededBy = build;
+            }
+            lane.pending = ticket;
+            listener.getLogger().printf("deploy of %s by %s in flight, waiting for it to finish%n", key, lane.inFlight.build);
+            notifyAll();
+            try {
+                while (ticket.supersededBy == null && lane.inFlight != ticket) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                // the build may have been aborted right after it was promoted, it then has to hand over the lane
+                if (lane.pending == ticket) {
+                    lane.pending = null;
+                } else if (lane.inFlight == ticket) {
+                    promotePending(lane, ticket);
+                }
+                throw e;
+            }
+            return ticket;
+        }
+    }
+
+    private synchronized void release(Ticket ticket) {
+        Lane lane = lanes.get(ticket.key);
+        if (lane == null || lane.inFlight != ticket) {
+            return;
+        }
+        promotePending(lane, ticket);
+    }
+
+    private void promotePending(Lane lane, Ticket ticket) {
+        lane.inFlight = lane.pending;
+        lane.pending = null;
+        if (lane.inFlight == null) {
+            lanes.remove(ticket.key);
+        }
+        notifyAll();
+    }
+
+    synchronized boolean hasPending(String key) {
+        Lane lane = lanes.get(key);
+        return lane != null && lane.pending != null;
+    }
+
+    synchronized int size() {
+        return lanes.size();
+    }
+
+    private static final class Lane {
+        private Ticket inFlight;
+        private Ticket pending;
+    }
+
+    public final class Ticket {
+        private final String key;
+        private final String build;
+        private String supersededBy;
+
+        private Ticket(String key, String build) {
+            this.key = key;
+            this.build = build;
+        }
+
+        /**
+         * Name of the newer build that replaced this one, or {@code null} when this deploy may run.
+         */
+        public String getSupersededBy() {
+            synchronized (DeploymentCoalescer.this) {
+                return supersededBy;
+            }
+        }
+
+        public boolean isSuperseded() {
+            return getSupersededBy() != null;
+        }
+
+        /**
+         * Ends the deploy and lets the waiting one, if any, run.
+         */
+        public void release() {
+            DeploymentCoalescer.this.release(this);
+        }
+    }
+}
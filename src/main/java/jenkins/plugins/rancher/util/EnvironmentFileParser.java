@@ -0,0 +1,232 @@
+package jenkins.plugins.rancher.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Streaming parser for {@code .env} and {@code .properties} files.
+ * <ul>
+ * <li>{@code KEY=VALUE}, {@code KEY: VALUE} and {@code export KEY=VALUE} entries, one per line</li>
+ * <li>{@code #} and {@code !} comment lines, and {@code  #} trailing comments on unquoted values</li>
+ * <li>single quoted values are taken literally</li>
+ * <li>double quoted values may span several lines and support {@code \n \r \t \" \\ \$} escapes</li>
+ * <li>unquoted values are taken literally in {@code .env} files; in {@code .properties} files they support the
+ * {@code java.util.Properties} backslash escapes and a trailing backslash to continue on the next line</li>
+ * </ul>
+ * The input is consumed line by line, so large files are never held in memory as a whole.
+ */
+public class EnvironmentFileParser {
+
+    private static final String EXPORT_PREFIX = "export ";
+    private static final String PROPERTIES_SUFFIX = ".properties";
+
+    private final BufferedReader reader;
+    private final String source;
+    private final boolean properties;
+    private int lineNumber;
+
+    private EnvironmentFileParser(Reader reader, String source) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        this.source = source;
+        this.properties = source.endsWith(PROPERTIES_SUFFIX);
+    }
+
+    public static Map<String, String> parse(Reader reader, String source) throws IOException {
+        return new EnvironmentFileParser(reader, source).parse();
+    }
+
+    private Map<String, String> parse() throws IOException {
+        Map<String, String> variables = new LinkedHashMap<>();
+        String line;
+        while ((line = nextLine()) != null) {
+            String trimmed = trimLeading(line);
+            if (trimmed.isEmpty() || trimmed.charAt(0) == '#' || trimmed.charAt(0) == '!') {
+                continue;
+            }
+            if (trimmed.startsWith(EXPORT_PREFIX)) {
+                trimmed = trimLeading(trimmed.substring(EXPORT_PREFIX.length()));
+            }
+
+            int separator = separatorIndex(trimmed);
+            if (separator < 0) {
+                throw new IOException(String.format("%s:%d: expected KEY=VALUE but got '%s'", source, lineNumber, line));
+            }
+            String key = unescape(trimmed.substring(0, separator).trim());
+            if (key.isEmpty()) {
+                throw new IOException(String.format("%s:%d: empty variable name", source, lineNumber));
+            }
+            variables.put(key, value(trimLeading(trimmed.substring(separator + 1))));
+        }
+        return variables;
+    }
+
+    private String value(String raw) throws IOException {
+        if (raw.isEmpty()) {
+            return "";
+        }
+        char quote = raw.charAt(0);
+        if (quote == '\'') {
+            return singleQuoted(raw);
+        }
+        if (quote == '"') {
+            return doubleQuoted(raw);
+        }
+        return properties ? unquotedProperty(raw) : unquoted(raw);
+    }
+
+    private String singleQuoted(String raw) throws IOException {
+        int end = raw.indexOf('\'', 1);
+        if (end < 0) {
+            throw new IOException(String.format("%s:%d: unterminated single quoted value", source, lineNumber));
+        }
+        return raw.substring(1, end);
+    }
+
+    private String doubleQuoted(String raw) throws IOException {
+        int startLine = lineNumber;
+        StringBuilder value = new StringBuilder();
+        String line = raw;
+        int position = 1;
+        while (true) {
+            while (position < line.length()) {
+                char c = line.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c == '\\' && position < line.length()) {
+                    value.append(escaped(line.charAt(position++)));
+                } else {
+                    value.append(c);
+                }
+            }
+            line = nextLine();
+            if (line == null) {
+                throw new IOException(String.format("%s:%d: unterminated double quoted value", source, startLine));
+            }
+            value.append('\n');
+            position = 0;
+        }
+    }
+
+    private static String unquoted(String raw) {
+        return raw.substring(0, commentIndex(raw)).trim();
+    }
+
+    private String unquotedProperty(String raw) throws IOException {
+        StringBuilder value = new StringBuilder();
+        String line = raw;
+        while (true) {
+            boolean continued = false;
+            int end = commentIndex(line);
+            for (int position = 0; position < end; position++) {
+                char c = line.charAt(position);
+                if (c == '\\') {
+                    if (position == end - 1) {
+                        continued = end == line.length();
+                        break;
+                    }
+                    position++;
+                    if (line.charAt(position) == 'u') {
+                        value.append(unicode(line, position + 1, end));
+                        position += 4;
+                    } else {
+                        value.append(escaped(line.charAt(position)));
+                    }
+                } else {
+                    value.append(c);
+                }
+            }
+            if (!continued) {
+                return value.toString().trim();
+            }
+            line = nextLine();
+            if (line == null) {
+                return value.toString().trim();
+            }
+            line = trimLeading(line);
+        }
+    }
+
+    private char unicode(String line, int start, int end) throws IOException {
+        if (start + 4 <= end) {
+            String digits = line.substring(start, start + 4);
+            if (digits.chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+                return (char) Integer.parseInt(digits, 16);
+            }
+        }
+        throw new IOException(String.format("%s:%d: malformed \\uxxxx escape, write a literal backslash as \\\\",
+                source, lineNumber));
+    }
+
+    private String nextLine() throws IOException {
+        String line = reader.readLine();
+        if (line != null) {
+            lineNumber++;
+        }
+        return line;
+    }
+
+    /**
+     * Start of a {@code  #} trailing comment, or the length of the line.
+     */
+    private static int commentIndex(String line) {
+        for (int position = 1; position < line.length(); position++) {
+            if (line.charAt(position) == '#' && Character.isWhitespace(line.charAt(position - 1))) {
+                return position;
+            }
+        }
+        return line.length();
+    }
+
+    private static int separatorIndex(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '=' || c == ':') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static char escaped(char c) {
+        switch (c) {
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            default:
+                return c;
+        }
+    }
+
+    private static String unescape(String key) {
+        if (key.indexOf('\\') < 0) {
+            return key;
+        }
+        StringBuilder builder = new StringBuilder(key.length());
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c == '\\' && i + 1 < key.length()) {
+                builder.append(escaped(key.charAt(++i)));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static String trimLeading(String line) {
+        int start = 0;
+        while (start < line.length() && Character.isWhitespace(line.charAt(start))) {
+            start++;
+        }
+        return line.substring(start);
+    }
+}
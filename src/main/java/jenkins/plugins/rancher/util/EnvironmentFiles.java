@@ -0,0 +1,58 @@
+package jenkins.plugins.rancher.util;
+
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads {@code .env}/properties files from the workspace. Files are parsed where the workspace lives,
+ * only the resulting variables are sent back to the controller.
+ */
+public class EnvironmentFiles {
+
+    /**
+     * Reads the comma or newline separated workspace relative files in order, later files override earlier ones.
+     */
+    public static Map<String, String> read(FilePath workspace, String files) throws IOException, InterruptedException {
+        Map<String, String> variables = new LinkedHashMap<>();
+        for (String path : files.split("[,\\n]")) {
+            String trimmed = path.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            FilePath file = workspace.child(trimmed);
+            if (!file.exists()) {
+                throw new AbortException(String.format("Environment file [%s] does not exist in workspace", trimmed));
+            }
+            variables.putAll(file.act(new ParseEnvironmentFile(trimmed)));
+        }
+        return variables;
+    }
+
+    private static class ParseEnvironmentFile extends MasterToSlaveFileCallable<LinkedHashMap<String, String>> {
+        private static final long serialVersionUID = 1L;
+
+        private final String path;
+
+        ParseEnvironmentFile(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public LinkedHashMap<String, String> invoke(File file, VirtualChannel channel) throws IOException {
+            try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                return new LinkedHashMap<>(EnvironmentFileParser.parse(reader, path));
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package jenkins.plugins.rancher.util;
+
+import jenkins.plugins.rancher.entity.Host;
+import jenkins.plugins.rancher.entity.Instance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Free memory and CPU of the active hosts of an environment, as the scheduler sees them: the host resources minus
+ * the reservations of the containers that run or are about to run on it. A container without a memory reservation
+ * is counted with its memory limit, as it may use that much.
+ * <p>
+ * Scheduling rules (affinity, host labels) are not evaluated, so the number of free slots is an upper bound.
+ */
+public final class HostCapacity {
+
+    private static final Set<String> ACTIVE_HOST_STATES = new HashSet<>(Arrays.asList("active", "activating"));
+    private static final Set<String> ALLOCATING_STATES = new HashSet<>(Arrays.asList(
+            "requested", "creating", "starting", "running", "restarting", "updating-running"));
+    private static final long MIB = 1024 * 1024;
+
+    private final Map<String, Free> hosts = new LinkedHashMap<>();
+
+    private HostCapacity() {
+    }
+
+    /**
+     * @param instances the instances of each host, by host id
+     */
+    public static HostCapacity of(List<Host> hosts, Map<String, List<Instance>> instances) {
+        HostCapacity capacity = new HostCapacity();
+        for (Host host : hosts) {
+            if (!ACTIVE_HOST_STATES.contains(host.getState()) || (host.getAgentState() != null && !"active".equals(host.getAgentState()))) {
+                continue;
+            }
+            long memory = host.getMemory() == null ? Long.MAX_VALUE : host.getMemory();
+            long milliCpu = host.getMilliCpu() == null ? Long.MAX_VALUE : host.getMilliCpu();
+            for (Instance instance : instances.getOrDefault(host.getId(), new ArrayList<>())) {
+                if (!ALLOCATING_STATES.contains(instance.getState())) {
+                    continue;
+                }
+                memory -= memoryOf(instance.getMemoryReservation(), instance.getMemory());
+                milliCpu -= instance.getMilliCpuReservation() == null ? 0 : instance.getMilliCpuReservation();
+            }
+            String name = host.getHostname() != null ? host.getHostname() : host.getName() != null ? host.getName() : host.getId();
+            capacity.hosts.put(host.getId(), new Free(name, memory, milliCpu));
+        }
+        return capacity;
+    }
+
+    /**
+     * The memory a container with the given reservation and limit takes from its host.
+     */
+    public static long memoryOf(Long memoryReservation, Long memory) {
+        if (memoryReservation != null && memoryReservation > 0) {
+            return memoryReservation;
+        }
+        return memory == null ? 0 : memory;
+    }
+
+    /**
+     * How many more containers needing the given memory and CPU fit on the hosts.
+     *
+     * @param onePerHost the hosts that can take at most one such container, e.g. for published ports
+     * @param excluded   the hosts that can not take any, e.g. because they already publish the ports
+     */
+    public int slots(long memory, long milliCpu, Set<String> onePerHost, Set<String> excluded) {
+        long slots = 0;
+        for (Map.Entry<String, Free> host : hosts.entrySet()) {
+            if (excluded.contains(host.getKey())) {
+                continue;
+            }
+            Free free = host.getValue();
+            long fit = Long.MAX_VALUE;
+            if (memory > 0) {
+                fit = Math.min(fit, Math.max(free.memory, 0) / memory);
+            }
+            if (milliCpu > 0) {
+                fit = Math.min(fit, Math.max(free.milliCpu, 0) / milliCpu);
+            }
+            if (onePerHost.contains(host.getKey())) {
+                fit = Math.min(fit, 1);
+            }
+            slots += Math.min(fit, Integer.MAX_VALUE);
+            if (slots >= Integer.MAX_VALUE) {
+                return Integer.MAX_VALUE;
+            }
+        }
+        return (int) slots;
+    }
+
+    public Set<String> getHostIds() {
+        return hosts.keySet();
+    }
+
+    @Override
+    public String toString() {
+        List<String> free = new ArrayList<>();
+        for (Free host : hosts.values()) {
+            free.add(String.format("%s: %s memory, %s CPU free", host.name,
+                    host.memory == Long.MAX_VALUE ? "unknown" : Math.max(host.memory, 0) / MIB + "MiB",
+                    host.milliCpu == Long.MAX_VALUE ? "unknown" : Math.max(host.milliCpu, 0) + "m"));
+        }
+        return free.isEmpty() ? "no active host" : String.join(", ", free);
+    }
+
+    private static final class Free {
+        private final String name;
+        private final long memory;
+        private final long milliCpu;
+
+        Free(String name, long memory, long milliCpu) {
+            this.name = name;
+            this.memory = memory;
+            this.milliCpu = milliCpu;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package jenkins.plugins.rancher.util;
+
+import jenkins.plugins.rancher.entity.Instance;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Hosts that already hold the layers of an image because they ran an earlier version of the service, or because the
+ * image was pre-pulled there. Rancher has no soft affinity to host ids, so new containers are pointed at these hosts
+ * with a soft affinity to the containers of the earlier versions.
+ * <p>
+ * The affinity must not outlive the rollout, or every later scale-up would prefer hosts that already run the service.
+ * So it does not point at the service but at the image the earlier containers run: each deployed launch config is
+ * stamped with the {@link #IMAGE_LABEL} of its image, and the affinity matches the stamp of the image being replaced.
+ * Once the rollout replaced those containers nothing matches anymore, and the scheduler spreads as usual. The first
+ * deploy with the option only stamps, there is no earlier stamped container yet.
+ */
+public final class ImageLocality {
+
+    public static final String AFFINITY_LABEL = "io.rancher.scheduler.affinity:container_label_soft";
+    public static final String IMAGE_LABEL = "io.jenkins.rancher.image";
+
+    private final Set<String> hostIds = new LinkedHashSet<>();
+    private final Set<String> images = new LinkedHashSet<>();
+
+    /**
+     * Adds the hosts of the instances of an earlier version.
+     */
+    public void addInstances(Collection<Instance> instances) {
+        for (Instance instance : instances) {
+            if (instance.getHostId() == null) {
+                continue;
+            }
+            hostIds.add(instance.getHostId());
+            if (instance.getLabels() != null && instance.getLabels().containsKey(IMAGE_LABEL)) {
+                images.add(instance.getLabels().get(IMAGE_LABEL));
+            }
+        }
+    }
+
+    public void addHosts(Collection<String> hostIds) {
+        this.hostIds.addAll(hostIds);
+    }
+
+    /**
+     * Whether no earlier container carries an image stamp to point the affinity at.
+     */
+    public boolean isEmpty() {
+        return images.isEmpty();
+    }
+
+    public Set<String> getHostIds() {
+        return hostIds;
+    }
+
+    /**
+     * The {@link #IMAGE_LABEL} value of the image.
+     */
+    public static String imageLabel(String imageUuid) {
+        return Integer.toHexString(imageUuid.hashCode());
+    }
+
+    /**
+     * The affinity label value: the conditions of the live value, without the ones an earlier rollout added, plus the
+     * ones pointing at the earlier containers. Empty when no condition is left.
+     *
+     * @param live the live value of the label, may be {@code null}
+     */
+    public String affinity(String live) {
+        Set<String> conditions = new LinkedHashSet<>();
+        if (live != null) {
+            for (String condition : live.split(",")) {
+                String trimmed = condition.trim();
+                if (!trimmed.isEmpty() && !trimmed.startsWith(IMAGE_LABEL + "=")) {
+                    conditions.add(trimmed);
+                }
+            }
+        }
+        for (String image : images) {
+            conditions.add(IMAGE_LABEL + "=" + image);
+        }
+        return String.join(",", conditions);
+    }
+
+    /**
+     * Number of the instances running the image that were started on one of the warm hosts.
+     */
+    public int warmInstances(Collection<Instance> instances, String imageUuid) {
+        return (int) instances.stream()
+                .filter(instance -> imageUuid.equals(instance.getImageUuid()) && hostIds.contains(instance.getHostId()))
+                .count();
+    }
+}
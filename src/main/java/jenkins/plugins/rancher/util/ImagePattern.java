@@ -0,0 +1,95 @@
+package jenkins.plugins.rancher.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Image patterns, separated by commas or new lines, where {@code *} matches any characters. A pattern with a tag, like
+ * {@code base/java:8-*}, is matched against the repository and tag of an image, a pattern without one, like
+ * {@code registry.example.com:5000/base/*}, against the repository only. Images without a tag are {@code latest}.
+ */
+public final class ImagePattern {
+
+    private static final String DOCKER_PREFIX = "docker:";
+    private static final String DEFAULT_TAG = "latest";
+
+    private final List<Pattern> repositoryPatterns = new ArrayList<>();
+    private final List<Pattern> imagePatterns = new ArrayList<>();
+
+    private ImagePattern() {
+    }
+
+    public static ImagePattern compile(String patterns) {
+        ImagePattern imagePattern = new ImagePattern();
+        for (String pattern : (patterns == null ? "" : patterns).split("[,\\r\\n]+")) {
+            pattern = pattern.trim();
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            pattern = strip(pattern);
+            Pattern regex = Pattern.compile(glob(pattern));
+            if (tag(pattern) == null) {
+                imagePattern.repositoryPatterns.add(regex);
+            } else {
+                imagePattern.imagePatterns.add(regex);
+            }
+        }
+        if (imagePattern.repositoryPatterns.isEmpty() && imagePattern.imagePatterns.isEmpty()) {
+            throw new IllegalArgumentException("image pattern is empty, e.g. base/java or base/java:8-*");
+        }
+        return imagePattern;
+    }
+
+    public boolean matches(String imageUuid) {
+        if (imageUuid == null) {
+            return false;
+        }
+        String repository = repository(imageUuid);
+        String tag = tag(strip(imageUuid));
+        String image = repository + ":" + (tag == null ? DEFAULT_TAG : tag);
+        return repositoryPatterns.stream().anyMatch(pattern -> pattern.matcher(repository).matches())
+                || imagePatterns.stream().anyMatch(pattern -> pattern.matcher(image).matches());
+    }
+
+    /**
+     * The repository of the image, without tag or digest.
+     */
+    public static String repository(String imageUuid) {
+        String image = strip(imageUuid);
+        if (image.contains("@")) {
+            return image.substring(0, image.indexOf('@'));
+        }
+        String tag = tag(image);
+        return tag == null ? image : image.substring(0, image.length() - tag.length() - 1);
+    }
+
+    /**
+     * The image with its tag or digest replaced by the given tag, as rancher image uuid.
+     */
+    public static String withTag(String imageUuid, String tag) {
+        return DOCKER_PREFIX + repository(imageUuid) + ":" + tag;
+    }
+
+    private static String strip(String image) {
+        return image.startsWith(DOCKER_PREFIX) ? image.substring(DOCKER_PREFIX.length()) : image;
+    }
+
+    private static String tag(String image) {
+        if (image.contains("@")) {
+            return null;
+        }
+        // a colon before the last slash separates the registry port
+        int colon = image.lastIndexOf(':');
+        return colon > image.lastIndexOf('/') ? image.substring(colon + 1) : null;
+    }
+
+    private static String glob(String pattern) {
+        String[] parts = pattern.split("\\*", -1);
+        StringBuilder regex = new StringBuilder(Pattern.quote(parts[0]));
+        for (int i = 1; i < parts.length; i++) {
+            regex.append(".*").append(Pattern.quote(parts[i]));
+        }
+        return regex.toString();
+    }
+}
@@ -0,0 +1,162 @@
+package jenkins.plugins.rancher.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fixed size latency sample of a service: sends the given GET requests round robin to every container address at a
+ * fixed rate and reports the median and 99th percentile response time of the successful ones, and the share of
+ * requests that failed or answered with a 5xx status.
+ */
+public final class LatencyProbe {
+
+    static int rate = Integer.getInteger(LatencyProbe.class.getName() + ".rate", 20);
+    static int requestTimeoutMillis = Integer.getInteger(LatencyProbe.class.getName() + ".requestTimeoutMillis", 5000);
+
+    private final List<String> addresses;
+    private final List<String> paths;
+    private final int port;
+    private final int samples;
+    private final long intervalNanos;
+    private final List<Long> latencies = new ArrayList<>();
+    private long nextSendAt;
+    private int sent;
+    private int failed;
+
+    public LatencyProbe(List<String> addresses, List<String> paths, int port, int samples) {
+        if (addresses.isEmpty() || paths.isEmpty()) {
+            throw new IllegalArgumentException("latency probe needs at least one address and one request");
+        }
+        this.addresses = new ArrayList<>(addresses);
+        this.paths = new ArrayList<>(paths);
+        this.port = port;
+        this.samples = Math.max(samples, 1);
+        this.intervalNanos = 1_000_000_000L / Math.max(rate, 1);
+        this.nextSendAt = System.nanoTime();
+    }
+
+    public boolean isDone() {
+        return sent >= samples;
+    }
+
+    public void send() throws InterruptedException {
+        long wait = nextSendAt - System.nanoTime();
+        if (wait > 0) {
+            Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+        }
+        nextSendAt = Math.max(nextSendAt + intervalNanos, System.nanoTime());
+
+        String address = addresses.get(sent % addresses.size());
+        String path = paths.get((sent / addresses.size()) % paths.size());
+        sent++;
+        long latency = request(address, port, path, requestTimeoutMillis);
+        if (latency < 0) {
+            failed++;
+        } else {
+            latencies.add(latency);
+        }
+    }
+
+    public Result getResult() {
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        return new Result(percentile(sorted, 0.5), percentile(sorted, 0.99), sent == 0 ? 0 : (double) failed / sent, sent);
+    }
+
+    /**
+     * Response time of a GET request in milliseconds including the transfer of the body, or {@code -1} when it failed
+     * or answered with a 5xx status.
+     */
+    static long request(String address, int port, String path, int timeoutMillis) {
+        long start = System.nanoTime();
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http", address, port, path).openConnection();
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+            connection.setUseCaches(false);
+            int status = connection.getResponseCode();
+            InputStream body = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            if (body != null) {
+                try (InputStream in = body) {
+                    byte[] buffer = new byte[8192];
+                    while (in.read(buffer) >= 0) {
+                        // drain the body so the connection is kept alive, the response time includes the transfer
+                    }
+                }
+            }
+            return status >= 500 ? -1 : (System.nanoTime() - start) / 1_000_000;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static long percentile(List<Long> sorted, double percentile) {
+        if (sorted.isEmpty()) {
+            return -1;
+        }
+        return sorted.get((int) Math.ceil(percentile * sorted.size()) - 1);
+    }
+
+    public static final class Result {
+        private final long p50;
+        private final long p99;
+        private final double errorRate;
+        private final int samples;
+
+        public Result(long p50, long p99, double errorRate, int samples) {
+            this.p50 = p50;
+            this.p99 = p99;
+            this.errorRate = errorRate;
+            this.samples = samples;
+        }
+
+        /**
+         * Median response time in milliseconds, {@code -1} when no request succeeded.
+         */
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public double getErrorRate() {
+            return errorRate;
+        }
+
+        public int getSamples() {
+            return samples;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("p50", p50);
+            map.put("p99", p99);
+            map.put("errorRate", errorRate);
+            map.put("samples", samples);
+            return map;
+        }
+
+        static Result fromMap(Map<?, ?> map) {
+            return new Result(number(map.get("p50")).longValue(), number(map.get("p99")).longValue(),
+                    number(map.get("errorRate")).doubleValue(), number(map.get("samples")).intValue());
+        }
+
+        private static Number number(Object value) {
+            return value instanceof Number ? (Number) value : -1;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("p50 %dms, p99 %dms, errors %.1f%% of %d", p50, p99, 100 * errorRate, samples);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package jenkins.plugins.rancher.util;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jenkins.plugins.rancher.entity.LaunchConfig;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Semantic diff between the live launch config of a service and the one a build wants to submit.
+ * Only the fields the build controls (image, environment, ports and the labels it sets or removes, as {@code null})
+ * are compared.
+ */
+public class LaunchConfigDiff {
+
+    private static final String DEFAULT_PORT_PROTOCOL = "/tcp";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final LaunchConfig live;
+    private final LaunchConfig desired;
+    private final List<String> changes;
+    private boolean imageChanged;
+    private boolean environmentChanged;
+    private boolean portsChanged;
+    private boolean labelsChanged;
+
+    private LaunchConfigDiff(LaunchConfig live, LaunchConfig desired, List<String> changes) {
+        this.live = live;
+        this.desired = desired;
+        this.changes = changes;
+    }
+
+    public static LaunchConfigDiff between(LaunchConfig live, LaunchConfig desired) {
+        LaunchConfigDiff diff = new LaunchConfigDiff(live, desired, new ArrayList<>());
+        List<String> changes = diff.changes;
+
+        if (desired.getImageUuid() != null && !desired.getImageUuid().equals(live.getImageUuid())) {
+            changes.add(String.format("imageUuid: %s -> %s", live.getImageUuid(), desired.getImageUuid()));
+            diff.imageChanged = true;
+        }
+
+        Map<String, Object> liveEnvironment = liveEnvironment(live);
+        if (desired.getEnvironment() != null) {
+            for (String key : new TreeSet<>(desired.getEnvironment().keySet())) {
+                String liveValue = stringValue(liveEnvironment.get(key));
+                String desiredValue = stringValue(desired.getEnvironment().get(key));
+                // environment values are often secrets and end up in the build log, so only the keys are listed
+                if (!liveEnvironment.containsKey(key)) {
+                    changes.add(String.format("environment.%s: (set)", key));
+                    diff.environmentChanged = true;
+                } else if (!Objects.equals(liveValue, desiredValue)) {
+                    changes.add(String.format("environment.%s: %s", key, desiredValue == null ? "(removed)" : "(changed)"));
+                    diff.environmentChanged = true;
+                }
+            }
+        }
+
+        if (desired.getPorts() != null && !desired.getPorts().isEmpty()) {
+            Set<String> livePorts = normalizePorts(live.getPorts());
+            Set<String> desiredPorts = normalizePorts(desired.getPorts());
+            if (!livePorts.equals(desiredPorts)) {
+                changes.add(String.format("ports: %s -> %s", livePorts, desiredPorts));
+                diff.portsChanged = true;
+            }
+        }
+
+        if (desired.getLabels() != null) {
+            Map<String, String> liveLabels = live.getLabels() == null ? Collections.emptyMap() : live.getLabels();
+            for (String key : new TreeSet<>(desired.getLabels().keySet())) {
+                if (!Objects.equals(liveLabels.get(key), desired.getLabels().get(key))) {
+                    changes.add(String.format("labels.%s: %s -> %s", key, liveLabels.containsKey(key) ? liveLabels.get(key) : "(unset)",
+                            desired.getLabels().get(key) != null ? desired.getLabels().get(key) : "(unset)"));
+                    diff.labelsChanged = true;
+                }
+            }
+        }
+
+        return diff;
+    }
+
+    /**
+     * Builds the launch config to submit for the upgrade: a copy of the live one with the changed image, environment,
+     * ports and labels applied. The whole config is sent back, like the plugin always did, so volumes, command,
+     * health check, secrets and limits survive whether rancher merges or replaces the upgrade launch config; the diff
+     * only decides whether an upgrade is needed at all.
+     */
+    public LaunchConfig toUpgradeLaunchConfig() {
+        LaunchConfig launchConfig = OBJECT_MAPPER.convertValue(live, LaunchConfig.class);
+        if (imageChanged) {
+            launchConfig.setImageUuid(desired.getImageUuid());
+        }
+        if (labelsChanged) {
+            Map<String, String> labels = live.getLabels() == null ? new HashMap<>() : new HashMap<>(live.getLabels());
+            labels.putAll(desired.getLabels());
+            // a label the build sets to null is removed
+            labels.values().removeIf(Objects::isNull);
+            launchConfig.setLabels(labels);
+        }
+        if (portsChanged) {
+            launchConfig.setPorts(desired.getPorts());
+        }
+        if (environmentChanged) {
+            Map<String, Object> environment = new HashMap<>(liveEnvironment(live));
+            environment.putAll(desired.getEnvironment());
+            launchConfig.setEnvironment(environment);
+        }
+        return launchConfig;
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    public List<String> getChanges() {
+        return Collections.unmodifiableList(changes);
+    }
+
+    private static Map<String, Object> liveEnvironment(LaunchConfig live) {
+        return live.getEnvironment() == null ? Collections.emptyMap() : live.getEnvironment();
+    }
+
+    private static String stringValue(Object value) {
+        return value == null ? null : String.valueOf(value);
+    }
+
+    private static Set<String> normalizePorts(List<String> ports) {
+        Set<String> normalized = new TreeSet<>();
+        if (ports == null) {
+            return normalized;
+        }
+        for (String port : ports) {
+            if (port == null || port.trim().isEmpty()) {
+                continue;
+            }
+            String trimmed = port.trim();
+            // rancher reports published ports with their protocol, e.g. 8080:8080/tcp
+            normalized.add(trimmed.contains("/") ? trimmed : trimmed + DEFAULT_PORT_PROTOCOL);
+        }
+        return normalized;
+    }
+
+    @Override
+    public String toString() {
+        return String.join(", ", changes);
+    }
+}
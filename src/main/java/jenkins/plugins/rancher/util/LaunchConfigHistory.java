@@ -0,0 +1,121 @@
+package jenkins.plugins.rancher.util;
+
+import jenkins.plugins.rancher.RancherClientRancher;
+import jenkins.plugins.rancher.entity.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded history of the upgrades of a service, newest first: which build replaced which image. It is kept in the
+ * service metadata, so a rollback step in any job can find the build by its number. The launch configs themselves are
+ * saved on the build, see {@link jenkins.plugins.rancher.state.LaunchConfigSnapshot}, as rancher-metadata serves the
+ * service metadata to every container of the environment and every service read returns it.
+ */
+public final class LaunchConfigHistory {
+
+    public static final String METADATA_KEY = "io.jenkins.rancher.history";
+
+    static int size = Integer.getInteger(LaunchConfigHistory.class.getName() + ".size", 10);
+
+    private LaunchConfigHistory() {
+    }
+
+    /**
+     * Records that {@code build} is about to replace the launch config the service has right now.
+     *
+     * @param service the service as read before the upgrade
+     * @param build   the upgrading build, e.g. {@code deploy-web#42}
+     */
+    public static void record(RancherClientRancher client, String environmentId, Service service, String build) throws IOException {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("build", build);
+        entry.put("at", System.currentTimeMillis());
+        entry.put("imageUuid", service.getLaunchConfig() == null ? null : service.getLaunchConfig().getImageUuid());
+        client.updateServiceMetadata(environmentId, service.getId(), METADATA_KEY, history -> {
+            List<Object> entries = new ArrayList<>();
+            entries.add(entry);
+            for (Entry earlier : readEntries(history)) {
+                if (entries.size() >= size) {
+                    break;
+                }
+                // rewritten, so entries of earlier versions drop the full launch configs they carried
+                Map<String, Object> kept = new LinkedHashMap<>();
+                kept.put("build", earlier.getBuild());
+                kept.put("at", earlier.getAt());
+                kept.put("imageUuid", earlier.getImageUuid());
+                entries.add(kept);
+            }
+            return entries;
+        });
+    }
+
+    public static List<Entry> read(Service service) {
+        return readEntries(service.getMetadata() == null ? null : service.getMetadata().get(METADATA_KEY));
+    }
+
+    private static List<Entry> readEntries(Object entries) {
+        List<Entry> history = new ArrayList<>();
+        for (Object entry : entries instanceof List ? (List<?>) entries : Collections.emptyList()) {
+            if (entry instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) entry;
+                Object at = map.get("at");
+                Object imageUuid = map.get("imageUuid");
+                if (imageUuid == null && map.get("launchConfig") instanceof Map) {
+                    imageUuid = ((Map<?, ?>) map.get("launchConfig")).get("imageUuid");
+                }
+                history.add(new Entry(String.valueOf(map.get("build")), at instanceof Number ? ((Number) at).longValue() : 0,
+                        imageUuid == null ? null : String.valueOf(imageUuid)));
+            }
+        }
+        return history;
+    }
+
+    /**
+     * The newest upgrade by the build, given as {@code job#42} or only as {@code 42}.
+     */
+    public static Entry find(Service service, String build) {
+        String wanted = build.startsWith("#") ? build.substring(1) : build;
+        for (Entry entry : read(service)) {
+            String taken = entry.getBuild();
+            if (taken.equals(wanted) || (!wanted.contains("#") && taken.endsWith("#" + wanted))) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    public static final class Entry {
+        private final String build;
+        private final long at;
+        private final String imageUuid;
+
+        Entry(String build, long at, String imageUuid) {
+            this.build = build;
+            this.at = at;
+            this.imageUuid = imageUuid;
+        }
+
+        /**
+         * The build whose upgrade replaced the launch config, e.g. {@code deploy-web#42}.
+         */
+        public String getBuild() {
+            return build;
+        }
+
+        public long getAt() {
+            return at;
+        }
+
+        /**
+         * The image the service ran before the upgrade.
+         */
+        public String getImageUuid() {
+            return imageUuid;
+        }
+    }
+}
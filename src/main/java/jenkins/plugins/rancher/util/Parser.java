@@ -3,28 +3,26 @@ package jenkins.plugins.rancher.util;
 import com.google.common.base.Strings;
 
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Function;
 
 public class Parser {
 
-    private static final String BUILDER_REGEX = "(\\$\\{\\w*\\})";
-
     public static String paraser(String source, Map<String, String> envs) {
 
         if (Strings.isNullOrEmpty(source)) {
             return "";
         }
 
-        Matcher matcher = Pattern.compile(BUILDER_REGEX).matcher(source);
-        while (matcher.find()) {
-            String param = matcher.group();
-            String key = matcher.group().replace("${", "").replace("}", "");
-            if (envs.keySet().contains(key)) {
-                source = source.replace(param, envs.get(key));
-            }
+        return Template.compile(source).render(envs);
+    }
+
+    public static String paraser(String source, Function<String, String> variables) {
+
+        if (Strings.isNullOrEmpty(source)) {
+            return "";
         }
-        return source;
+
+        return Template.compile(source).render(variables);
     }
 
 }
@@ -0,0 +1,183 @@
+package jenkins.plugins.rancher.util;
+
+import hudson.AbortException;
+import hudson.model.TaskListener;
+import jenkins.plugins.rancher.RancherClientRancher;
+import jenkins.plugins.rancher.entity.Service;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Deployment lease on a rancher service, shared by every Jenkins controller deploying to it. The lease is an entry
+ * of the service metadata holding its owner, a token and an expiry time.
+ * <p>
+ * The rancher API has no conditional update, so the lease is taken by writing it and reading it back after a
+ * settle delay: of concurrent writers only the last one reads its own token. The holder renews the lease while it
+ * deploys, an expired lease is taken over.
+ */
+public final class ServiceLease {
+
+    public static final String METADATA_KEY = "io.jenkins.rancher.lease";
+
+    static long ttlMillis = TimeUnit.SECONDS.toMillis(Long.getLong(ServiceLease.class.getName() + ".ttlSeconds", 300));
+    static long settleMillis = Long.getLong(ServiceLease.class.getName() + ".settleMillis", 1000);
+    static long maxBackoffMillis = TimeUnit.SECONDS.toMillis(30);
+
+    private final RancherClientRancher client;
+    private final String environmentId;
+    private final String serviceId;
+    private final String owner;
+    private final String token = UUID.randomUUID().toString();
+    private Service service;
+    private long renewedAt;
+    private boolean released;
+
+    private ServiceLease(RancherClientRancher client, String environmentId, String serviceId, String owner) {
+        this.client = client;
+        this.environmentId = environmentId;
+        this.serviceId = serviceId;
+        this.owner = owner;
+    }
+
+    /**
+     * Waits until the lease of the service is free or expired, then takes it.
+     *
+     * @param owner       shown to the builds waiting for this lease, e.g. {@code deploy-web#42}
+     * @param pollMillis  first delay between two lease checks, doubled on every check up to 30 seconds
+     */
+    public static ServiceLease acquire(RancherClientRancher client, String environmentId, String serviceId, String owner,
+                                       long pollMillis, TaskListener listener) throws IOException, InterruptedException {
+        ServiceLease lease = new ServiceLease(client, environmentId, serviceId, owner);
+        long backoff = Math.max(pollMillis, 1);
+        String waitingFor = null;
+        while (true) {
+            Service service = lease.fetch();
+            Map<String, Object> current = entry(service);
+            long now = System.currentTimeMillis();
+            if (current == null || lease.isOwn(current) || expiresAt(current) <= now) {
+                if (current != null && !lease.isOwn(current)) {
+                    listener.getLogger().printf("deployment lease of %s held by %s expired at %s, taking it over%n",
+                            serviceId, current.get("owner"), new Date(expiresAt(current)));
+                }
+                // written whatever lease is found by then, of concurrent writers the read back decides
+                lease.write(found -> true, now);
+                Thread.sleep(settleMillis);
+                service = lease.fetch();
+                current = entry(service);
+                if (current == null) {
+                    throw new AbortException("rancher did not store the deployment lease in the metadata of service " + serviceId);
+                }
+                if (lease.isOwn(current)) {
+                    lease.service = service;
+                    listener.getLogger().printf("acquired deployment lease of service %s until %s%n", serviceId, new Date(expiresAt(current)));
+                    return lease;
+                }
+                now = System.currentTimeMillis();
+            }
+
+            Object holder = current.get("owner");
+            if (!Objects.equals(holder, waitingFor)) {
+                listener.getLogger().printf("service %s is being deployed by %s, waiting for its deployment lease (expires %s)%n",
+                        serviceId, holder, new Date(expiresAt(current)));
+                waitingFor = String.valueOf(holder);
+            }
+            // never sleep past the expiry of the lease, the jitter spreads the controllers waiting for it
+            long delay = Math.min(backoff, Math.max(expiresAt(current) - now, 0)) + ThreadLocalRandom.current().nextLong(backoff / 4 + 1);
+            Thread.sleep(delay);
+            backoff = Math.min(backoff * 2, maxBackoffMillis);
+        }
+    }
+
+    /**
+     * Extends the lease when a third of its time to live has passed.
+     *
+     * @throws AbortException when another controller took the lease over
+     */
+    public void renewIfDue() throws IOException {
+        long now = System.currentTimeMillis();
+        if (released || now - renewedAt < ttlMillis / 3) {
+            return;
+        }
+        Map<String, Object> current = entry(write(this::isOwn, now));
+        if (current == null || !isOwn(current)) {
+            throw new AbortException("lost the deployment lease of service " + serviceId + " to " + (current == null ? "nobody" : current.get("owner")));
+        }
+    }
+
+    /**
+     * Gives the lease back, unless it was taken over meanwhile. Failures are only logged, the lease expires anyway.
+     */
+    public void release(TaskListener listener) {
+        if (released) {
+            return;
+        }
+        released = true;
+        try {
+            Service service = client.updateServiceMetadata(environmentId, serviceId, METADATA_KEY, current -> isOwn(current) ? null : current)
+                    .orElseThrow(this::notFound);
+            if (isOwn(entry(service))) {
+                listener.getLogger().println("released deployment lease of service " + serviceId);
+            }
+        } catch (IOException | RuntimeException e) {
+            listener.getLogger().println("failed to release deployment lease of service " + serviceId + ", it expires on its own: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The service as read back when the lease was acquired.
+     */
+    public Service getService() {
+        return service;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    private Service fetch() throws IOException {
+        return client.service(environmentId, serviceId).orElseThrow(this::notFound);
+    }
+
+    private AbortException notFound() {
+        return new AbortException("service " + serviceId + " not found");
+    }
+
+    /**
+     * Writes the lease if the lease found right before the write passes {@code free}.
+     *
+     * @return the service as read before the write
+     */
+    private Service write(Predicate<Object> free, long now) throws IOException {
+        Map<String, Object> lease = new LinkedHashMap<>();
+        lease.put("owner", owner);
+        lease.put("token", token);
+        lease.put("expiresAt", now + ttlMillis);
+        Service service = client.updateServiceMetadata(environmentId, serviceId, METADATA_KEY, current -> free.test(current) ? lease : current)
+                .orElseThrow(this::notFound);
+        renewedAt = now;
+        return service;
+    }
+
+    private boolean isOwn(Object lease) {
+        return lease instanceof Map && token.equals(((Map<?, ?>) lease).get("token"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> entry(Service service) {
+        Object lease = service.getMetadata() == null ? null : service.getMetadata().get(METADATA_KEY);
+        return lease instanceof Map ? (Map<String, Object>) lease : null;
+    }
+
+    private static long expiresAt(Map<String, Object> lease) {
+        Object expiresAt = lease.get("expiresAt");
+        return expiresAt instanceof Number ? ((Number) expiresAt).longValue() : 0;
+    }
+}
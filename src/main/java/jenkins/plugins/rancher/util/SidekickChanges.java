@@ -0,0 +1,62 @@
+package jenkins.plugins.rancher.util;
+
+import jenkins.plugins.rancher.entity.LaunchConfig;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Changes to the sidekicks of a service, one per line:
+ * <ul>
+ * <li>{@code <sidekick>.image=<image>} replaces the image of the sidekick</li>
+ * <li>{@code <sidekick>.env.<KEY>=<value>} sets an environment variable of the sidekick</li>
+ * </ul>
+ * Blank lines and {@code #} comments are skipped. The result holds one desired launch config per sidekick name, with
+ * only the image and environment the lines set, to be diffed against the live secondary launch config.
+ */
+public final class SidekickChanges {
+
+    private static final String IMAGE = "image";
+    private static final String ENV_PREFIX = "env.";
+
+    private SidekickChanges() {
+    }
+
+    public static Map<String, LaunchConfig> parse(String changes) {
+        if (changes == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, LaunchConfig> sidekicks = new LinkedHashMap<>();
+        String[] lines = changes.split("\\r?\\n");
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i].trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int separator = line.indexOf('=');
+            int dot = line.indexOf('.');
+            if (separator < 0 || dot <= 0 || dot > separator) {
+                throw new IllegalArgumentException(String.format("sidekick change %d: expected <sidekick>.image=<image> or <sidekick>.env.<KEY>=<value> but got '%s'", i + 1, line));
+            }
+            String name = line.substring(0, dot);
+            String field = line.substring(dot + 1, separator).trim();
+            String value = line.substring(separator + 1).trim();
+            LaunchConfig launchConfig = sidekicks.computeIfAbsent(name, SidekickChanges::desired);
+            if (IMAGE.equals(field)) {
+                launchConfig.setImageUuid(value.startsWith("docker:") ? value : "docker:" + value);
+            } else if (field.startsWith(ENV_PREFIX) && field.length() > ENV_PREFIX.length()) {
+                launchConfig.getEnvironment().put(field.substring(ENV_PREFIX.length()), value);
+            } else {
+                throw new IllegalArgumentException(String.format("sidekick change %d: unknown field '%s' of sidekick %s, use image or env.<KEY>", i + 1, field, name));
+            }
+        }
+        return sidekicks;
+    }
+
+    private static LaunchConfig desired(String name) {
+        LaunchConfig launchConfig = new LaunchConfig();
+        launchConfig.setName(name);
+        return launchConfig;
+    }
+}
@@ -0,0 +1,115 @@
+package jenkins.plugins.rancher.util;
+
+import jenkins.plugins.rancher.RancherClientRancher;
+import jenkins.plugins.rancher.entity.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Latency gate of an upgrade. The latency of the running version is sampled before the upgrade and kept as baseline
+ * in the service metadata, so a later confirm step, also on another controller, compares against the same numbers.
+ * The upgraded containers pass when their median and 99th percentile response times did not regress by more than the
+ * allowed share of the baseline, and their error rate did not grow by more than the allowed percentage points.
+ * <p>
+ * Latency differences below a few milliseconds are treated as noise, whatever share of the baseline they are.
+ */
+public final class SloGate {
+
+    public static final String METADATA_KEY = "io.jenkins.rancher.slo-baseline";
+
+    static long noiseMillis = Long.getLong(SloGate.class.getName() + ".noiseMillis", 5);
+
+    private final int p50Regression;
+    private final int p99Regression;
+    private final double errorRateIncrease;
+
+    /**
+     * @param p50Regression     allowed median regression in percent of the baseline
+     * @param p99Regression     allowed 99th percentile regression in percent of the baseline
+     * @param errorRateIncrease allowed error rate increase in percentage points
+     */
+    public SloGate(int p50Regression, int p99Regression, double errorRateIncrease) {
+        this.p50Regression = p50Regression;
+        this.p99Regression = p99Regression;
+        this.errorRateIncrease = errorRateIncrease;
+    }
+
+    /**
+     * Saves the latency of the running version as baseline of the upgrade to {@code targetImageUuid}.
+     */
+    public static void saveBaseline(RancherClientRancher client, String environmentId, Service service, String targetImageUuid,
+                                    LatencyProbe.Result baseline) throws IOException {
+        Map<String, Object> entry = baseline.toMap();
+        entry.put("imageUuid", service.getLaunchConfig() == null ? null : service.getLaunchConfig().getImageUuid());
+        entry.put("targetImageUuid", targetImageUuid);
+        entry.put("at", System.currentTimeMillis());
+        client.updateServiceMetadata(environmentId, service.getId(), METADATA_KEY, current -> entry);
+    }
+
+    /**
+     * Removes the baseline of an earlier upgrade, so it cannot gate an upgrade it was not sampled for.
+     */
+    public static void clearBaseline(RancherClientRancher client, String environmentId, Service service) throws IOException {
+        client.updateServiceMetadata(environmentId, service.getId(), METADATA_KEY, current -> null);
+    }
+
+    /**
+     * The baseline saved before the upgrade to the image the service runs now, {@code null} when there is none.
+     */
+    public static LatencyProbe.Result baseline(Service service) {
+        Object entry = service.getMetadata() == null ? null : service.getMetadata().get(METADATA_KEY);
+        if (!(entry instanceof Map)) {
+            return null;
+        }
+        String imageUuid = service.getLaunchConfig() == null ? null : service.getLaunchConfig().getImageUuid();
+        if (imageUuid == null || !imageUuid.equals(((Map<?, ?>) entry).get("targetImageUuid"))) {
+            return null;
+        }
+        return LatencyProbe.Result.fromMap((Map<?, ?>) entry);
+    }
+
+    /**
+     * The thresholds the candidate exceeds compared to the baseline, empty when it passes.
+     */
+    public List<String> violations(LatencyProbe.Result baseline, LatencyProbe.Result candidate) {
+        List<String> violations = new ArrayList<>();
+        if (candidate.getP50() < 0) {
+            violations.add("no request to the upgraded containers succeeded");
+            return violations;
+        }
+        checkLatency("p50", baseline.getP50(), candidate.getP50(), p50Regression, violations);
+        checkLatency("p99", baseline.getP99(), candidate.getP99(), p99Regression, violations);
+        double increase = 100 * (candidate.getErrorRate() - Math.max(baseline.getErrorRate(), 0));
+        if (increase > errorRateIncrease) {
+            violations.add(String.format("error rate %.1f%% is %.1f points above the baseline %.1f%%, %.1f allowed",
+                    100 * candidate.getErrorRate(), increase, 100 * baseline.getErrorRate(), errorRateIncrease));
+        }
+        return violations;
+    }
+
+    private static void checkLatency(String name, long baseline, long candidate, int regression, List<String> violations) {
+        if (baseline < 0) {
+            // the old version did not answer, nothing to regress from
+            return;
+        }
+        long allowed = baseline + Math.max(baseline * regression / 100, noiseMillis);
+        if (candidate > allowed) {
+            violations.add(String.format("%s %dms is above the baseline %dms plus %d%%", name, candidate, baseline, regression));
+        }
+    }
+
+    public int getP50Regression() {
+        return p50Regression;
+    }
+
+    public int getP99Regression() {
+        return p99Regression;
+    }
+
+    public double getErrorRateIncrease() {
+        return errorRateIncrease;
+    }
+}
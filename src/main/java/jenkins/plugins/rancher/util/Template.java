@@ -0,0 +1,174 @@
+package jenkins.plugins.rancher.util;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * A parsed {@code ${VAR}} template. Sources are parsed once and cached, rendering is a single pass.
+ * <ul>
+ * <li>{@code ${VAR}} is replaced by the variable, and left as is when the variable is not defined</li>
+ * <li>{@code ${VAR:-default}} falls back to {@code default} when the variable is not defined or empty</li>
+ * <li>{@code $${VAR}} renders the literal text {@code ${VAR}}</li>
+ * </ul>
+ */
+public final class Template {
+
+    private static final int CACHE_SIZE = 512;
+    private static final String DEFAULT_SEPARATOR = ":-";
+
+    private static final LoadingCache<String, Template> CACHE = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .recordStats()
+            .build(new CacheLoader<String, Template>() {
+                @Override
+                public Template load(String source) {
+                    return parse(source);
+                }
+            });
+
+    private final String source;
+    private final List<Token> tokens;
+    private final Set<String> variables;
+
+    private Template(String source, List<Token> tokens) {
+        this.source = source;
+        this.tokens = tokens;
+        Set<String> names = new LinkedHashSet<>();
+        for (Token token : tokens) {
+            if (token.name != null) {
+                names.add(token.name);
+            }
+        }
+        this.variables = Collections.unmodifiableSet(names);
+    }
+
+    public static Template compile(String source) {
+        return CACHE.getUnchecked(source == null ? "" : source);
+    }
+
+    public static CacheStats cacheStats() {
+        return CACHE.stats();
+    }
+
+    static Template parse(String source) {
+        List<Token> tokens = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int length = source.length();
+        int position = 0;
+        while (position < length) {
+            int start = source.indexOf("${", position);
+            if (start < 0) {
+                literal.append(source, position, length);
+                break;
+            }
+            int end = source.indexOf('}', start + 2);
+            if (end < 0) {
+                literal.append(source, position, length);
+                break;
+            }
+            if (start > 0 && source.charAt(start - 1) == '$') {
+                // $${VAR} is an escaped placeholder, drop the escaping '$' and keep the rest verbatim
+                literal.append(source, position, start - 1).append(source, start, end + 1);
+                position = end + 1;
+                continue;
+            }
+
+            String expression = source.substring(start + 2, end);
+            int separator = expression.indexOf(DEFAULT_SEPARATOR);
+            String name = separator < 0 ? expression : expression.substring(0, separator);
+            if (!isWord(name)) {
+                literal.append(source, position, start + 2);
+                position = start + 2;
+                continue;
+            }
+
+            literal.append(source, position, start);
+            if (literal.length() > 0) {
+                tokens.add(Token.literal(literal.toString()));
+                literal.setLength(0);
+            }
+            String defaultValue = separator < 0 ? null : expression.substring(separator + DEFAULT_SEPARATOR.length());
+            tokens.add(Token.variable(name, defaultValue, source.substring(start, end + 1)));
+            position = end + 1;
+        }
+        if (literal.length() > 0) {
+            tokens.add(Token.literal(literal.toString()));
+        }
+        return new Template(source, Collections.unmodifiableList(tokens));
+    }
+
+    private static boolean isWord(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String render(Map<String, String> variables) {
+        return render(variables::get);
+    }
+
+    public String render(Function<String, String> resolver) {
+        if (variables.isEmpty()) {
+            return tokens.isEmpty() ? "" : tokens.get(0).text;
+        }
+        StringBuilder builder = new StringBuilder(source.length() + 16 * variables.size());
+        for (Token token : tokens) {
+            if (token.name == null) {
+                builder.append(token.text);
+                continue;
+            }
+            String value = resolver.apply(token.name);
+            if (token.defaultValue != null && (value == null || value.isEmpty())) {
+                builder.append(token.defaultValue);
+            } else {
+                builder.append(value != null ? value : token.text);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Names of the variables referenced by this template, in order of appearance.
+     */
+    public Set<String> getVariables() {
+        return variables;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    private static final class Token {
+        private final String text;
+        private final String name;
+        private final String defaultValue;
+
+        private Token(String text, String name, String defaultValue) {
+            this.text = text;
+            this.name = name;
+            this.defaultValue = defaultValue;
+        }
+
+        static Token literal(String text) {
+            return new Token(text, null, null);
+        }
+
+        static Token variable(String name, String defaultValue, String placeholder) {
+            return new Token(placeholder, name, defaultValue);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package jenkins.plugins.rancher.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Warm-up traffic for freshly started containers: sends the configured GET requests round robin to every container
+ * address at a fixed rate, until the 90th percentile response time of the last requests is within the target or the
+ * budget is used up. A request that fails or answers with a 5xx status counts as missing the target.
+ * <p>
+ * Requests are sent one at a time, so the rate is an upper bound when responses are slower than the send interval.
+ */
+public final class WarmUp {
+
+    static int window = Integer.getInteger(WarmUp.class.getName() + ".window", 20);
+    static int requestTimeoutMillis = Integer.getInteger(WarmUp.class.getName() + ".requestTimeoutMillis", 5000);
+
+    private final List<String> addresses;
+    private final List<String> paths;
+    private final int port;
+    private final long intervalNanos;
+    private final long targetMillis;
+    private final long deadline;
+    private final Deque<Long> latencies = new ArrayDeque<>();
+    private long nextSendAt;
+    private int sent;
+    private int failed;
+
+    public WarmUp(List<String> addresses, List<String> paths, int port, int rate, long targetMillis, long budgetMillis) {
+        if (addresses.isEmpty() || paths.isEmpty()) {
+            throw new IllegalArgumentException("warm-up needs at least one address and one request");
+        }
+        this.addresses = new ArrayList<>(addresses);
+        this.paths = new ArrayList<>(paths);
+        this.port = port;
+        this.intervalNanos = 1_000_000_000L / Math.max(rate, 1);
+        this.targetMillis = targetMillis;
+        this.nextSendAt = System.nanoTime();
+        this.deadline = System.currentTimeMillis() + budgetMillis;
+    }
+
+    /**
+     * The request paths of a warm-up definition, one per line. Blank lines and {@code #} comments are skipped, and a
+     * leading {@code /} is added where it is missing.
+     */
+    public static List<String> paths(String requests) {
+        if (requests == null) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(requests.split("\\r?\\n"))
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .map(line -> line.startsWith("/") ? line : "/" + line)
+                .collect(Collectors.toList());
+    }
+
+    public boolean isDone() {
+        return isTargetMet() || System.currentTimeMillis() >= deadline;
+    }
+
+    public boolean isTargetMet() {
+        return latencies.size() >= window && percentile90() <= targetMillis;
+    }
+
+    /**
+     * Sends the next request once its slot at the configured rate has come.
+     */
+    public void send() throws InterruptedException {
+        long wait = nextSendAt - System.nanoTime();
+        if (wait > 0) {
+            Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+        }
+        nextSendAt = Math.max(nextSendAt + intervalNanos, System.nanoTime());
+
+        String address = addresses.get(sent % addresses.size());
+        String path = paths.get((sent / addresses.size()) % paths.size());
+        sent++;
+        long latency = LatencyProbe.request(address, port, path, requestTimeoutMillis);
+        if (latency < 0) {
+            failed++;
+            latency = Long.MAX_VALUE;
+        }
+        latencies.addLast(latency);
+        while (latencies.size() > window) {
+            latencies.removeFirst();
+        }
+    }
+
+    /**
+     * The 90th percentile response time of the last requests in milliseconds, failed requests count as never
+     * answered.
+     */
+    public long percentile90() {
+        if (latencies.isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        return sorted.get((int) Math.ceil(0.9 * sorted.size()) - 1);
+    }
+
+    public int getSent() {
+        return sent;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+}
@@ -0,0 +1,57 @@
+package jenkins.plugins.rancher;
+
+import hudson.model.Run;
+import jenkins.plugins.rancher.state.DeploymentJournal;
+import jenkins.plugins.rancher.timing.DeploymentPhase;
+import jenkins.plugins.rancher.timing.PhaseTimer;
+import jenkins.plugins.rancher.traffic.RancherExchange;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DeploymentContextTest {
+
+    @Test
+    public void should_only_time_the_calls_of_its_own_build_on_a_shared_client() throws Exception {
+        RancherClientRancher client = new RancherClientRancher("http://rancher");
+        client.setTransport((method, path, requestBody) -> new RancherExchange(method, path, requestBody, 200, "{}", 0, 0));
+        DeploymentContext first = context("#1");
+        DeploymentContext second = context("#2");
+
+        first.listenTo(client);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread concurrent = new Thread(() -> {
+            try {
+                second.listenTo(client);
+                client.stacks("1a5");
+                client.stacks("1a5");
+                second.close(client);
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        });
+        concurrent.start();
+        concurrent.join();
+        client.stacks("1a5");
+        first.close(client);
+        client.stacks("1a5");
+
+        assertThat(failure.get(), is(nullValue()));
+        assertThat(first.getTimer().toTiming("step", true).getCalls(), is(1));
+        assertThat(second.getTimer().toTiming("step", true).getCalls(), is(2));
+    }
+
+    private static DeploymentContext context(String buildName) {
+        Run build = mock(Run.class);
+        when(build.getDisplayName()).thenReturn(buildName);
+        PhaseTimer timer = new PhaseTimer();
+        timer.start(DeploymentPhase.STACK);
+        return new DeploymentContext(timer, null, null, DeploymentJournal.forBuild(build));
+    }
+}
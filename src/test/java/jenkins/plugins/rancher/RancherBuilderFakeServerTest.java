@@ -0,0 +1,446 @@
+package jenkins.plugins.rancher;
+
+import com.sun.net.httpserver.HttpServer;
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import jenkins.plugins.rancher.fake.FakeRancherServer;
+import jenkins.plugins.rancher.state.DeploymentStateAction;
+import jenkins.plugins.rancher.util.CredentialsUtil;
+import jenkins.plugins.rancher.util.ImageLocality;
+import jenkins.plugins.rancher.util.LaunchConfigHistory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static jenkins.plugins.rancher.RancherBuilder.ACTIVE;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RancherBuilderFakeServerTest {
+
+    private Run build;
+    private Launcher launcher;
+    private FilePath filePath;
+    private TaskListener listener;
+    private CredentialsUtil credentialsUtil;
+    private FakeRancherServer server;
+    private long pollIntervalMillis;
+
+    @Before
+    public void setUp() throws Exception {
+        filePath = new FilePath(new File("/tmp/jenkins/workspace/test"));
+        build = mock(Run.class);
+        launcher = mock(Launcher.class);
+        listener = mock(TaskListener.class);
+        when(listener.getLogger()).thenReturn(mock(PrintStream.class));
+        credentialsUtil = mock(CredentialsUtil.class);
+        when(credentialsUtil.getCredential(anyString())).thenReturn(Optional.empty());
+
+        server = new FakeRancherServer().withTransitionDelay(20);
+        pollIntervalMillis = AbstractRancherBuilder.pollIntervalMillis;
+        AbstractRancherBuilder.pollIntervalMillis = 10;
+    }
+
+    @After
+    public void tearDown() {
+        AbstractRancherBuilder.pollIntervalMillis = pollIntervalMillis;
+        server.close();
+    }
+
+    @Test
+    public void should_create_stack_and_service() throws IOException, InterruptedException {
+        deploy("nginx:1.13");
+
+        assertThat(server.getRequestCount("createStack"), is(1L));
+        assertThat(server.getRequestCount("createService"), is(1L));
+        Map<String, Object> service = server.getServices().iterator().next();
+        assertThat(service.get("state"), is((Object) ACTIVE));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void should_upgrade_and_finish_existing_service() throws IOException, InterruptedException {
+        String serviceId = server.addService(server.addStack("stack"), "service", "docker:nginx:1.13");
+        ((Map<String, Object>) server.getService(serviceId).get("launchConfig")).put("dataVolumes", Collections.singletonList("/data:/data"));
+
+        deploy("nginx:1.14");
+
+        Map<String, Object> service = server.getService(serviceId);
+        assertThat(service.get("state"), is((Object) ACTIVE));
+        assertThat(((Map<String, Object>) service.get("launchConfig")).get("imageUuid"), is((Object) "docker:nginx:1.14"));
+        assertThat(((Map<String, Object>) service.get("launchConfig")).get("dataVolumes"), is((Object) Collections.singletonList("/data:/data")));
+        assertThat(server.getRequestCount("upgrade"), is(1L));
+        assertThat(server.getRequestCount("finishupgrade"), is(1L));
+    }
+
+    @Test
+    public void should_not_upgrade_when_image_is_already_deployed() throws IOException, InterruptedException {
+        server.addService(server.addStack("stack"), "service", "docker:nginx:1.13");
+
+        deploy("nginx:1.13");
+
+        assertThat(server.getRequestCount("upgrade"), is(0L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void should_upgrade_primary_and_sidekick_in_one_upgrade() throws IOException, InterruptedException {
+        String serviceId = server.addService(server.addStack("stack"), "service", "docker:nginx:1.13");
+        server.addSidekick(serviceId, "log", "docker:fluent-bit:1.0");
+        server.addSidekick(serviceId, "proxy", "docker:envoy:1.5");
+
+        RancherBuilder builder = RancherBuilder.newInstance("1a5", server.getEndpoint(), "", "stack/service", "nginx:1.14", true, false, "", "", 5,
+                new RancherClientRancher(server.getEndpoint()), credentialsUtil);
+        builder.setSidekicks("log.image=fluent-bit:1.1\nlog.env.LEVEL=debug\nproxy.image=envoy:1.5");
+        builder.perform(build, filePath, launcher, listener);
+
+        Map<String, Object> service = server.getService(serviceId);
+        assertThat(((Map<String, Object>) service.get("launchConfig")).get("imageUuid"), is((Object) "docker:nginx:1.14"));
+        List<Map<String, Object>> sidekicks = (List<Map<String, Object>>) service.get("secondaryLaunchConfigs");
+        assertThat(sidekicks.get(0).get("imageUuid"), is((Object) "docker:fluent-bit:1.1"));
+        assertThat(((Map<String, Object>) sidekicks.get(0).get("environment")).get("LEVEL"), is((Object) "debug"));
+        assertThat(sidekicks.get(1).get("imageUuid"), is((Object) "docker:envoy:1.5"));
+        assertThat(server.getRequestCount("upgrade"), is(1L));
+    }
+
+    @Test(expected = AbortException.class)
+    public void should_fail_on_unknown_sidekick() throws IOException, InterruptedException {
+        server.addService(server.addStack("stack"), "service", "docker:nginx:1.13");
+
+        RancherBuilder builder = RancherBuilder.newInstance("1a5", server.getEndpoint(), "", "stack/service", "nginx:1.14", true, false, "", "", 5,
+                new RancherClientRancher(server.getEndpoint()), credentialsUtil);
+        builder.setSidekicks("log.image=fluent-bit:1.1");
+        builder.perform(build, filePath, launcher, listener);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void should_surge_during_upgrade_and_restore_scale() throws IOException, InterruptedException {
+        String serviceId = server.addService(server.addStack("stack"), "service", "docker:nginx:1.13");
+        server.getService(serviceId).put("scale", 3);
+
+        RancherBuilder builder = RancherBuilder.newInstance("1a5", server.getEndpoint(), "", "stack/service", "nginx:1.14", true, false, "", "", 5,
+                new RancherClientRancher(server.getEndpoint()), credentialsUtil);
+        builder.setSurge("50%");
+        builder.perform(build, filePath, launcher, listener);
+
+        Map<String, Object> service = server.getService(serviceId);
+        assertThat(((Map<String, Object>) service.get("launchConfig")).get("imageUuid"), is((Object) "docker:nginx:1.14"));
+        assertThat(service.get("scale"), is((Object) 3));
+        assertThat(service.get("state"), is((Object) ACTIVE));
+        assertThat(server.getRequestCount("update"), is(2L));
+    }
+
+    @Test
+    public void should_refuse_surge_without_auto_confirm() throws IOException, InterruptedException {
+        String serviceId = server.addService(server.addStack("stack"), "service", "docker:nginx:1.13");
+        server.getService(serviceId).put("scale", 3);
+
+        RancherBuilder builder = RancherBuilder.newInstance("1a5", server.getEndpoint(), "", "stack/service", "nginx:1.14", false, false, "", "", 5,
+                new RancherClientRancher(server.getEndpoint()), credentialsUtil);
+        builder.setSurge("1");
+        try {
+            builder.perform(build, filePath, launcher, listener);
+            fail("surge without auto confirm should have been refused");
+        } catch (AbortException e) {
+            assertThat(e.getMessage().contains("Auto Confirm"), is(true));
+        }
+
+        assertThat(server.getRequestCount("upgrade"), is(0L));
+        assertThat(server.getService(serviceId).get("scale"), is((Object) 3));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void should_skip_surge_without_host_capacity() throws IOException, InterruptedException {
+        server.withHosts(2).withHostMemory(512L << 20);
+        String serviceId = server.addService(server.addStack("stack"), "service", "docker:nginx:1.13");
+        server.getService(serviceId).put("scale", 4);
+        ((Map<String, Object>) server.getService(serviceId).get("launchConfig")).put("memoryReservation", 256L << 20);
+
+        RancherBuilder builder = RancherBuilder.newInstance("1a5", server.getEndpoint(), "", "stack/service", "nginx:1.14", true, false, "", "", 5,
+                new RancherClientRancher(server.getEndpoint()), credentialsUtil);
+        builder.setSurge("1");
+        builder.setCheckCapacity(true);
+        builder.perform(build, filePath, launcher, listener);
+
+        Map<String, Object> service = server.getService(serviceId);
+        assertThat(((Map<String, Object>) service.get("launchConfig")).get("imageUuid"), is((Object) "docker:nginx:1.14"));
+        assertThat(server.getRequestCount("hostInstances"), is(2L));
+        assertThat(server.getRequestCount("update"), is(0L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void should_fail_start_first_upgrade_without_host_capacity() throws IOException, InterruptedException {
+        server.withHosts(2).withHostMemory(512L << 20);
+        String serviceId = server.addService(server.addStack("stack"), "service", "docker:nginx:1.13");
+        server.getService(serviceId).put("scale", 2);
+        ((Map<String, Object>) server.getService(serviceId).get("launchConfig")).put("memory", 384L << 20);
+
+        RancherBuilder builder = RancherBuilder.newInstance("1a5", server.getEndpoint(), "", "stack/service", "nginx:1.14", true, true, "", "", 5,
+                new RancherClientRancher(server.getEndpoint()), credentialsUtil);
+        builder.setCheckCapacity(true);
+        try {
+            builder.perform(build, filePath, launcher, listener);
+            fail("the start-first upgrade should have failed for lack of memory");
+        } catch (AbortException e) {
+            assertThat(e.getMessage().contains("no room"), is(true));
+        }
+
+        assertThat(server.getRequestCount("upgrade"), is(0L));
+        assertThat(server.getService(serviceId).get("state"), is((Object) ACTIVE));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void should_prefer_hosts_of_earlier_version_on_upgrade() throws IOException, InterruptedException {
+        server.withHosts(3);
+        String serviceId = server.addService(server.addStack("stack"), "service", "docker:nginx:1.13");
+        server.getService(serviceId).put("scale", 2);
+
+        deployPreferringWarmHosts("nginx:1.14");
+        Map<String, Object> labels = (Map<String, Object>) ((Map<String, Object>) server.getService(serviceId).get("launchConfig")).get("labels");
+        assertThat(labels.get(ImageLocality.IMAGE_LABEL), is((Object) ImageLocality.imageLabel("docker:nginx:1.14")));
+        assertThat(labels.containsKey(ImageLocality.AFFINITY_LABEL), is(false));
+
+        deployPreferringWarmHosts("nginx:1.15");
+        labels = (Map<String, Object>) ((Map<String, Object>) server.getService(serviceId).get("launchConfig")).get("labels");
+        assertThat(labels.get(ImageLocality.IMAGE_LABEL), is((Object) ImageLocality.imageLabel("docker:nginx:1.15")));
+        // only the containers of the replaced image match, none is left after the rollout
+        assertThat(labels.get(ImageLocality.AFFINITY_LABEL), is((Object) (ImageLocality.IMAGE_LABEL + "=" + ImageLocality.imageLabel("docker:nginx:1.14"))));
+    }
+
+    @Test
+    public void should_pre_pull_image_on_every_host_before_upgrade() throws IOException, InterruptedException {
+        server.withHosts(3);
+        String serviceId = server.addService(server.addStack("stack"), "service", "docker:nginx:1.13");
+        server.getService(serviceId).put("scale", 3);
+
+        RancherBuilder builder = RancherBuilder.newInstance("1a5", server.getEndpoint(), "", "stack/service", "nginx:1.14", true, false, "", "", 5,
+                new RancherClientRancher(server.getEndpoint()), credentialsUtil);
+        builder.setPrePull(true);
+        builder.perform(build, filePath, launcher, listener);
+
+        assertThat(server.getRequestCount("createService"), is(1L));
+        assertThat(server.getRequestCount("remove"), is(1L));
+        assertThat(server.getRequestCount("upgrade"), is(1L));
+        assertThat(server.getServices().size(), is(1));
+    }
+
+    @Test
+    public void should_report_hosts_where_pre_pull_failed() throws IOException, InterruptedException {
+        server.withHosts(3).withFailedPull("1h2");
+        String serviceId = server.addService(server.addStack("stack"), "service", "docker:nginx:1.13");
+        server.getService(serviceId).put("scale", 3);
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        when(listener.getLogger()).thenReturn(new PrintStream(log, true));
+
+        RancherBuilder builder = RancherBuilder.newInstance("1a5", server.getEndpoint(), "", "stack/service", "nginx:1.14", true, false, "", "", 5,
+                new RancherClientRancher(server.getEndpoint()), credentialsUtil);
+        builder.setPrePull(true);
+        builder.perform(build, filePath, launcher, listener);
+
+        assertThat(log.toString(), containsString("image pre-pull failed on host(s) [1h2]"));
+        assertThat(log.toString(), containsString("was pulled on 2 of 3 host(s)"));
+        assertThat(server.getRequestCount("remove"), is(1L));
+        assertThat(server.getRequestCount("upgrade"), is(1L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void should_cut_over_load_balancer_to_idle_color_and_back() throws IOException, InterruptedException {
+        String stackId = server.addStack("stack");
+        String blue = server.addService(stackId, "service-blue", "docker:nginx:1.13");
+        String balancer = server.addLoadBalancer(stackId, "lb", 80, blue);
+
+        deployBlueGreen("nginx:1.14");
+
+        String green = routedServiceId(balancer);
+        assertThat(green, not(blue));
+        Map<String, Object> greenService = server.getService(green);
+        assertThat(greenService.get("name"), is((Object) "service-green"));
+        assertThat(((Map<String, Object>) greenService.get("launchConfig")).get("imageUuid"), is((Object) "docker:nginx:1.14"));
+        assertThat(server.getService(blue).get("state"), is((Object) ACTIVE));
+        assertThat(((Map<String, Object>) server.getService(balancer).get("lbConfig")).get("config"), is((Object) "timeout client 50000"));
+
+        deployBlueGreen("nginx:1.13");
+
+        assertThat(routedServiceId(balancer), is(blue));
+        assertThat(server.getRequestCount("upgrade"), is(0L));
+        assertThat(server.getRequestCount("update"), is(2L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void should_roll_back_to_launch_config_saved_before_build() throws IOException, InterruptedException {
+        String serviceId = server.addService(server.addStack("stack"), "service", "docker:nginx:1.13");
+        server.getService(serviceId).put("scale", 2);
+        DeploymentStateAction deployment = new DeploymentStateAction();
+        when(build.getAction(DeploymentStateAction.class)).thenReturn(deployment);
+
+        RancherBuilder builder = RancherBuilder.newInstance("1a5", server.getEndpoint(), "", "stack/service", "nginx:1.14", true, false, "", "", 5,
+                new RancherClientRancher(server.getEndpoint()), credentialsUtil);
+        builder.setKeepHistory(true);
+        builder.perform(build, filePath, launcher, listener);
+        assertThat(((Map<String, Object>) server.getService(serviceId).get("launchConfig")).get("imageUuid"), is((Object) "docker:nginx:1.14"));
+
+        Map<String, Object> metadata = (Map<String, Object>) server.getService(serviceId).get("metadata");
+        List<Map<String, Object>> history = (List<Map<String, Object>>) metadata.get(LaunchConfigHistory.METADATA_KEY);
+        assertThat(history.size(), is(1));
+        assertThat(history.get(0).get("imageUuid"), is((Object) "docker:nginx:1.13"));
+        assertThat(history.get(0).containsKey("launchConfig"), is(false));
+        assertThat(deployment.findSnapshot("1a5", serviceId, "docker:nginx:1.13"), is(notNullValue()));
+
+        RancherRollbackBuilder rollback = RancherRollbackBuilder.newInstance("1a5", server.getEndpoint(), "", "stack/service",
+                (String) history.get(0).get("build"), 5, new RancherClientRancher(server.getEndpoint()), credentialsUtil);
+        rollback.setBuilds(name -> build);
+        rollback.perform(build, filePath, launcher, listener);
+
+        Map<String, Object> service = server.getService(serviceId);
+        assertThat(((Map<String, Object>) service.get("launchConfig")).get("imageUuid"), is((Object) "docker:nginx:1.13"));
+        assertThat(service.get("state"), is((Object) ACTIVE));
+        assertThat(server.getRequestCount("upgrade"), is(2L));
+    }
+
+    @Test(expected = AbortException.class)
+    public void should_fail_rollback_without_snapshot() throws IOException, InterruptedException {
+        server.addService(server.addStack("stack"), "service", "docker:nginx:1.13");
+
+        RancherRollbackBuilder.newInstance("1a5", server.getEndpoint(), "", "stack/service", "42", 5,
+                new RancherClientRancher(server.getEndpoint()), credentialsUtil)
+                .perform(build, filePath, launcher, listener);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void should_roll_back_upgrade_that_regresses_latency() throws IOException, InterruptedException {
+        String serviceId = server.addService(server.addStack("stack"), "service", "docker:nginx:1.13");
+        server.withInstanceAddress(InetAddress.getLoopbackAddress().getHostAddress());
+        HttpServer app = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        app.createContext("/", exchange -> {
+            Map<String, Object> launchConfig = (Map<String, Object>) server.getService(serviceId).get("launchConfig");
+            if ("docker:nginx:1.14".equals(launchConfig.get("imageUuid"))) {
+                try {
+                    Thread.sleep(40);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        app.start();
+        try {
+            RancherBuilder builder = RancherBuilder.newInstance("1a5", server.getEndpoint(), "", "stack/service", "nginx:1.14", true, false, "", "", 5,
+                    new RancherClientRancher(server.getEndpoint()), credentialsUtil);
+            builder.setSloRequests("/health");
+            builder.setSloPort(app.getAddress().getPort());
+            builder.setSloSamples(10);
+            builder.perform(build, filePath, launcher, listener);
+            fail("the slower upgrade should have been rolled back");
+        } catch (AbortException e) {
+            assertThat(e.getMessage().contains("rolled back"), is(true));
+        } finally {
+            app.stop(0);
+        }
+
+        Map<String, Object> service = server.getService(serviceId);
+        assertThat(((Map<String, Object>) service.get("launchConfig")).get("imageUuid"), is((Object) "docker:nginx:1.13"));
+        assertThat(service.get("state"), is((Object) ACTIVE));
+        assertThat(server.getRequestCount("rollback"), is(1L));
+        assertThat(server.getRequestCount("finishupgrade"), is(0L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void should_bump_every_matching_image_with_bounded_concurrency() throws IOException, InterruptedException {
+        String web = server.addStack("web");
+        String batch = server.addStack("batch");
+        String api = server.addService(web, "api", "docker:base/java:8-1");
+        String admin = server.addService(web, "admin", "docker:base/java:8-1");
+        String proxy = server.addService(web, "proxy", "docker:nginx:1.13");
+        server.addSidekick(proxy, "agent", "docker:base/java:8-1");
+        String worker = server.addService(batch, "worker", "docker:registry.example.com:5000/base/java:8-1");
+        String current = server.addService(batch, "current", "docker:base/java:8-2");
+        String other = server.addService(batch, "other", "docker:base/python:3-1");
+        RancherClientRancher client = new RancherClientRancher(server.getEndpoint());
+        client.setServicesPageSize(2);
+        RancherImageBumpBuilder builder = RancherImageBumpBuilder.newInstance("1a5", server.getEndpoint(), "", "base/java\n*/base/java:8-*", "8-2", 5,
+                client, credentialsUtil);
+        builder.setConcurrency(2);
+        builder.perform(build, filePath, launcher, listener);
+
+        for (String serviceId : new String[]{api, admin}) {
+            assertThat(((Map<String, Object>) server.getService(serviceId).get("launchConfig")).get("imageUuid"), is((Object) "docker:base/java:8-2"));
+        }
+        assertThat(((Map<String, Object>) server.getService(worker).get("launchConfig")).get("imageUuid"), is((Object) "docker:registry.example.com:5000/base/java:8-2"));
+        assertThat(((Map<String, Object>) server.getService(proxy).get("launchConfig")).get("imageUuid"), is((Object) "docker:nginx:1.13"));
+        assertThat(((List<Map<String, Object>>) server.getService(proxy).get("secondaryLaunchConfigs")).get(0).get("imageUuid"), is((Object) "docker:base/java:8-2"));
+        assertThat(((Map<String, Object>) server.getService(other).get("launchConfig")).get("imageUuid"), is((Object) "docker:base/python:3-1"));
+        assertThat(server.getService(current).get("state"), is((Object) ACTIVE));
+        assertThat(server.getRequestCount("environmentServices"), is(3L));
+        assertThat(server.getRequestCount("upgrade"), is(4L));
+        assertThat(server.getRequestCount("finishupgrade"), is(4L));
+        assertThat(server.getMaxConcurrentUpgrades() <= 2, is(true));
+    }
+
+    @Test
+    public void should_only_report_matching_images_on_dry_run() throws IOException, InterruptedException {
+        server.addService(server.addStack("web"), "api", "docker:base/java:8-1");
+
+        RancherImageBumpBuilder builder = RancherImageBumpBuilder.newInstance("1a5", server.getEndpoint(), "", "base/java", "8-2", 5,
+                new RancherClientRancher(server.getEndpoint()), credentialsUtil);
+        builder.setDryRun(true);
+        builder.perform(build, filePath, launcher, listener);
+
+        assertThat(server.getRequestCount("upgrade"), is(0L));
+    }
+
+    @SuppressWarnings("unchecked")
+    private String routedServiceId(String balancerId) {
+        Map<String, Object> lbConfig = (Map<String, Object>) server.getService(balancerId).get("lbConfig");
+        return (String) ((List<Map<String, Object>>) lbConfig.get("portRules")).get(0).get("serviceId");
+    }
+
+    private void deployPreferringWarmHosts(String image) throws IOException, InterruptedException {
+        RancherBuilder builder = RancherBuilder.newInstance("1a5", server.getEndpoint(), "", "stack/service", image, true, false, "", "", 5,
+                new RancherClientRancher(server.getEndpoint()), credentialsUtil);
+        builder.setPreferWarmHosts(true);
+        builder.perform(build, filePath, launcher, listener);
+    }
+
+    private void deployBlueGreen(String image) throws IOException, InterruptedException {
+        RancherBuilder builder = RancherBuilder.newInstance("1a5", server.getEndpoint(), "", "stack/service", image, true, false, "", "", 5,
+                new RancherClientRancher(server.getEndpoint()), credentialsUtil);
+        builder.setLoadBalancer("stack/lb");
+        builder.perform(build, filePath, launcher, listener);
+    }
+
+    private void deploy(String image) throws IOException, InterruptedException {
+        RancherBuilder.newInstance("1a5", server.getEndpoint(), "", "stack/service", image, true, false, "", "", 5,
+                new RancherClientRancher(server.getEndpoint()), credentialsUtil)
+                .perform(build, filePath, launcher, listener);
+    }
+}
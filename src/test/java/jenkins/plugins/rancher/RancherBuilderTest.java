@@ -81,6 +81,7 @@ public class RancherBuilderTest {
         // then
         verify(rancherClient, timeout(1)).createStack(any(Stack.class), anyString());
         verify(rancherClient, timeout(1)).createService(any(Service.class), anyString(), anyString());
+        verify(build, never()).getEnvironment(listener);
     }
 
     @Test
@@ -115,6 +116,31 @@ public class RancherBuilderTest {
         verify(rancherClient, timeout(1)).finishUpgradeService(anyString(), anyString());
     }
 
+    @Test
+    public void should_skip_upgrade_when_launch_config_is_unchanged() throws IOException, InterruptedException {
+        // given
+        Stacks existingStacks = new Stacks();
+        Stack stack = new Stack();
+        stack.setName("stack");
+        existingStacks.setData(Collections.singletonList(stack));
+        when(rancherClient.stacks(anyString())).thenReturn(Optional.of(existingStacks));
+
+        Service activeService = makeTestService(ACTIVE);
+        LaunchConfig launchConfig = new LaunchConfig();
+        launchConfig.setImageUuid("docker:nginx");
+        activeService.setLaunchConfig(launchConfig);
+        Services activeServices = new Services();
+        activeServices.setData(Collections.singletonList(activeService));
+        when(rancherClient.services(anyString(), anyString())).thenReturn(Optional.of(activeServices));
+
+        // when
+        rancherBuilder.perform(build, filePath, launcher, listener);
+
+        // then
+        verify(rancherClient, never()).upgradeService(anyString(), anyString(), any(ServiceUpgrade.class));
+        verify(rancherClient, never()).finishUpgradeService(anyString(), anyString());
+    }
+
     private Service makeTestService(String state) {
         Service service = new Service();
         service.setName("service");
@@ -0,0 +1,18 @@
+package jenkins.plugins.rancher;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class RancherImageBumpBuilderTest {
+
+    @Test
+    public void should_quote_report_fields_with_separators() {
+        assertThat(RancherImageBumpBuilder.csvLine("api", "", "docker:base/java:8-1", "docker:base/java:8-2", "bumped"),
+                is("api,,docker:base/java:8-1,docker:base/java:8-2,bumped\r\n"));
+        assertThat(RancherImageBumpBuilder.csvLine("api", "api", null, null, "failed, upgrade request failed: \"image\" is invalid"),
+                is("api,api,,,\"failed, upgrade request failed: \"\"image\"\" is invalid\"\r\n"));
+        assertThat(RancherImageBumpBuilder.csvLine("worker", "failed\nat line 2"), is("worker,\"failed\nat line 2\"\r\n"));
+    }
+}
@@ -0,0 +1,132 @@
+package jenkins.plugins.rancher;
+
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import jenkins.plugins.rancher.state.DeploymentJournal;
+import jenkins.plugins.rancher.state.DeploymentState;
+import jenkins.plugins.rancher.state.DeploymentStateAction;
+import jenkins.plugins.rancher.timing.DeploymentPhase;
+import jenkins.plugins.rancher.timing.DeploymentTiming;
+import jenkins.plugins.rancher.timing.PhaseTimer;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Collections;
+import java.util.function.Function;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RemoteDeploymentTest {
+
+    private Run build;
+    private DeploymentStateAction action;
+
+    @Before
+    public void setUp() {
+        action = new DeploymentStateAction();
+        build = mock(Run.class);
+        when(build.getDisplayName()).thenReturn("#2");
+        when(build.getAction(DeploymentStateAction.class)).thenReturn(action);
+    }
+
+    @Test
+    public void should_bring_timings_and_deployment_states_back_from_the_agent() throws Exception {
+        DeploymentJournal journal = DeploymentJournal.forBuild(build);
+
+        RemoteDeployment.Result result = callOnAgent(new UpgradingBuilder(null), journal);
+        result.rethrow();
+        journal.attach(result.journal);
+
+        DeploymentTiming timing = result.timer.toTiming("step", true);
+        assertThat(timing.getPhase(DeploymentPhase.UPGRADE), is(notNullValue()));
+        assertThat(timing.getPhase(DeploymentPhase.WAIT_UPGRADED), is(notNullValue()));
+        assertThat(action.getDeployments().size(), is(1));
+        DeploymentState state = action.getDeployments().get(0);
+        assertThat(state.getServiceId(), is("1s1"));
+        assertThat(state.getPhase(), is(DeploymentPhase.WAIT_UPGRADED));
+        assertThat(state.isClosed(), is(true));
+    }
+
+    @Test
+    public void should_rethrow_failure_of_the_agent_and_keep_its_timings() throws Exception {
+        DeploymentJournal journal = DeploymentJournal.forBuild(build);
+
+        RemoteDeployment.Result result = callOnAgent(new UpgradingBuilder("timeout"), journal);
+
+        assertThat(result.timer.toTiming("step", false).getPhase(DeploymentPhase.WAIT_UPGRADED), is(notNullValue()));
+        try {
+            result.rethrow();
+            fail("the failure of the agent should be rethrown");
+        } catch (AbortException e) {
+            assertThat(e.getMessage(), is("timeout"));
+        }
+    }
+
+    /**
+     * Sends the deployment to the "agent" and its result back as serialized copies, like the remoting channel does.
+     */
+    private static RemoteDeployment.Result callOnAgent(AbstractRancherBuilder builder, DeploymentJournal journal) throws IOException {
+        PhaseTimer timer = new PhaseTimer();
+        timer.start(DeploymentPhase.VARIABLES);
+        timer.stop();
+        RemoteDeployment deployment = new RemoteDeployment(builder, Collections.emptyMap(), "http://rancher", null, null,
+                null, null, new DeploymentContext(timer, null, null, journal));
+        RemoteDeployment.Result result = roundTrip(roundTrip(deployment).call());
+        assertThat(result.trace, is(nullValue()));
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T roundTrip(T object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (T) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static class UpgradingBuilder extends AbstractRancherBuilder {
+        private static final long serialVersionUID = 1L;
+
+        private final String failure;
+
+        UpgradingBuilder(String failure) {
+            super("1a5", "http://rancher", null, "stack/web", 50);
+            this.failure = failure;
+        }
+
+        @Override
+        protected void doPerform(@Nonnull DeploymentContext context, @Nonnull Function<String, String> buildVariables,
+                                 @Nonnull FilePath workspace, @Nonnull TaskListener listener) throws IOException {
+            context.phase(DeploymentPhase.UPGRADE);
+            context.journalUpgrade("1a5", "1s1", "web", "docker:nginx:1.14", "docker:nginx:1.13", DeploymentPhase.UPGRADE);
+            context.phase(DeploymentPhase.WAIT_UPGRADED);
+            if (failure != null) {
+                throw new AbortException(failure);
+            }
+        }
+
+        @Override
+        protected String getStepName() {
+            return "test";
+        }
+    }
+}
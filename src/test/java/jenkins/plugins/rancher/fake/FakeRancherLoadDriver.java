@@ -0,0 +1,134 @@
+package jenkins.plugins.rancher.fake;
+
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import jenkins.plugins.rancher.RancherBuilder;
+import jenkins.plugins.rancher.RancherClientRancher;
+import jenkins.plugins.rancher.util.CredentialsUtil;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs N concurrent {@code RancherBuilder.perform()} calls against a {@link FakeRancherServer}
+ * and reports throughput and latency percentiles.
+ * <p>
+ * Arguments are {@code key=value} pairs: concurrency (default 8), deploys (default 200),
+ * transitionDelay in ms (default 100), latency and jitter in ms (default 5 and 5),
+ * errorRate between 0 and 1 (default 0), poll interval in ms (default 50) and timeout in s (default 60).
+ * Run it with {@code ./gradlew fakeRancherLoad -PloadArgs="concurrency=32 deploys=1000"}.
+ */
+public class FakeRancherLoadDriver {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            for (String option : arg.trim().split("\\s+")) {
+                int separator = option.indexOf('=');
+                if (separator > 0) {
+                    options.put(option.substring(0, separator), option.substring(separator + 1));
+                }
+            }
+        }
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "8"));
+        int deploys = Integer.parseInt(options.getOrDefault("deploys", "200"));
+        long transitionDelay = Long.parseLong(options.getOrDefault("transitionDelay", "100"));
+        long latency = Long.parseLong(options.getOrDefault("latency", "5"));
+        long jitter = Long.parseLong(options.getOrDefault("jitter", "5"));
+        double errorRate = Double.parseDouble(options.getOrDefault("errorRate", "0"));
+        int timeout = Integer.parseInt(options.getOrDefault("timeout", "60"));
+        // must be set before the builder classes are loaded
+        System.setProperty("jenkins.plugins.rancher.AbstractRancherBuilder.pollIntervalMillis", options.getOrDefault("poll", "50"));
+
+        try (FakeRancherServer server = new FakeRancherServer()
+                .withTransitionDelay(transitionDelay)
+                .withLatency(latency, jitter)
+                .withErrorRate(errorRate)) {
+            String stackId = server.addStack("load");
+            for (int i = 0; i < concurrency; i++) {
+                server.addService(stackId, "service-" + i, "docker:nginx:0");
+            }
+
+            System.out.printf("deploying %d times over %d services against %s (transition %dms, latency %d+%dms, error rate %.2f)%n",
+                    deploys, concurrency, server.getEndpoint(), transitionDelay, latency, jitter, errorRate);
+
+            ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+            List<Future<Long>> results = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < deploys; i++) {
+                // each worker owns one service so concurrent deploys never contend on the same service state
+                String service = "load/service-" + (i % concurrency);
+                String image = "nginx:" + (i + 1);
+                String endpoint = server.getEndpoint();
+                results.add(executor.submit(() -> deploy(endpoint, service, image, timeout)));
+            }
+
+            List<Long> latencies = new ArrayList<>();
+            int failures = 0;
+            for (Future<Long> result : results) {
+                try {
+                    latencies.add(result.get());
+                } catch (Exception e) {
+                    failures++;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            executor.shutdown();
+
+            Collections.sort(latencies);
+            System.out.printf("completed %d deploys, %d failed, in %.1fs%n", latencies.size(), failures, elapsed / 1e9);
+            System.out.printf("throughput %.2f deploys/s%n", latencies.size() / (elapsed / 1e9));
+            System.out.printf("latency p50 %dms, p99 %dms, max %dms%n",
+                    percentile(latencies, 50), percentile(latencies, 99), latencies.isEmpty() ? 0 : latencies.get(latencies.size() - 1));
+            for (String operation : new String[]{"stacks", "services", "service", "upgrade", "finishupgrade"}) {
+                System.out.printf("  %-14s %d requests%n", operation, server.getRequestCount(operation));
+            }
+        }
+    }
+
+    private static long deploy(String endpoint, String service, String image, int timeout) throws Exception {
+        Run build = mock(Run.class);
+        Launcher launcher = mock(Launcher.class);
+        TaskListener listener = mock(TaskListener.class);
+        when(listener.getLogger()).thenReturn(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+        CredentialsUtil credentialsUtil = mock(CredentialsUtil.class);
+        when(credentialsUtil.getCredential(anyString())).thenReturn(Optional.empty());
+
+        RancherBuilder builder = new RancherBuilder("1a5", endpoint, null, service, image, true, false, "", "", timeout);
+        builder.setCredentialsUtil(credentialsUtil);
+        builder.setRancherClient(new RancherClientRancher(endpoint));
+
+        long start = System.nanoTime();
+        builder.perform(build, new FilePath(new File("/tmp/jenkins/workspace/load")), launcher, listener);
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static long percentile(List<Long> sorted, int percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+}
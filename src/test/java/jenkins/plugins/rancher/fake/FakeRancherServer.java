@@ -0,0 +1,634 @@
+package jenkins.plugins.rancher.fake;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-JVM fake of the rancher v2-beta endpoints used by {@code RancherClientRancher}: projects, stacks,
+ * services and the upgrade/finishupgrade/rollback actions. Services follow rancher's state machine
+ * (activating, upgrading, upgraded, finishing-upgrade, rolling-back, active) with a configurable delay
+ * for every transition. Error rate and response latency can be injected to exercise the plugin under load.
+ */
+public class FakeRancherServer implements AutoCloseable {
+
+    public static final String ACTIVE = "active";
+    public static final String UPGRADED = "upgraded";
+
+    private static final Pattern PROJECT = Pattern.compile("/v2-beta/projects/([^/]+)/?");
+    private static final Pattern STACKS = Pattern.compile("/v2-beta/projects/([^/]+)/stacks/?");
+    private static final Pattern CREATE_STACK = Pattern.compile("/v2-beta/projects/([^/]+)/stack/?");
+    private static final Pattern STACK_SERVICES = Pattern.compile("/v2-beta/projects/([^/]+)/stacks/([^/]+)/services/?");
+    private static final Pattern CREATE_SERVICE = Pattern.compile("/v2-beta/projects/([^/]+)/service/?");
+    private static final Pattern ENVIRONMENT_SERVICES = Pattern.compile("/v2-beta/projects/([^/]+)/services/?");
+    private static final Pattern HOSTS = Pattern.compile("/v2-beta/projects/([^/]+)/hosts/?");
+    private static final Pattern HOST_INSTANCES = Pattern.compile("/v2-beta/projects/([^/]+)/hosts/([^/]+)/instances/?");
+    private static final Pattern SERVICE_INSTANCES = Pattern.compile("/v2-beta/projects/([^/]+)/services/([^/]+)/instances/?");
+    private static final Pattern SERVICE = Pattern.compile("/v2-beta/projects/([^/]+)/(?:services|loadbalancerservices)/([^/]+)/?");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ConcurrentMap<String, Map<String, Object>> stacks = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Map<String, Object>> services = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> requests = new ConcurrentHashMap<>();
+    private final AtomicInteger ids = new AtomicInteger();
+    private final AtomicInteger maxConcurrentUpgrades = new AtomicInteger();
+    private final Set<String> failedPullHosts = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService transitions = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService workers = Executors.newCachedThreadPool();
+    private final HttpServer server;
+
+    private volatile long transitionDelayMillis = 50;
+    private volatile long latencyMillis;
+    private volatile long latencyJitterMillis;
+    private volatile double errorRate;
+    private volatile int hosts = 1;
+    private volatile String instanceAddress;
+    private volatile Long hostMemory;
+
+    public FakeRancherServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(workers);
+        server.start();
+    }
+
+    public FakeRancherServer withTransitionDelay(long millis) {
+        this.transitionDelayMillis = millis;
+        return this;
+    }
+
+    /**
+     * Every response is delayed by {@code millis} plus a random jitter in {@code [0, jitterMillis)}.
+     */
+    public FakeRancherServer withLatency(long millis, long jitterMillis) {
+        this.latencyMillis = millis;
+        this.latencyJitterMillis = jitterMillis;
+        return this;
+    }
+
+    /**
+     * Share of requests, between 0 and 1, answered with a 500 error.
+     */
+    public FakeRancherServer withErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Number of hosts the instances of the services are spread over, global services run one instance per host.
+     */
+    public FakeRancherServer withHosts(int hosts) {
+        this.hosts = hosts;
+        return this;
+    }
+
+    /**
+     * Gives every instance this address instead of one on the rancher network, to reach a local stand-in for the containers.
+     */
+    public FakeRancherServer withInstanceAddress(String address) {
+        this.instanceAddress = address;
+        return this;
+    }
+
+    /**
+     * Memory of every host in bytes, unset hosts report no memory like hosts without resource accounting.
+     */
+    public FakeRancherServer withHostMemory(long bytes) {
+        this.hostMemory = bytes;
+        return this;
+    }
+
+    /**
+     * Start-once instances on this host end up in error, like a container whose image could not be pulled.
+     */
+    public FakeRancherServer withFailedPull(String hostId) {
+        failedPullHosts.add(hostId);
+        return this;
+    }
+
+    public String getEndpoint() {
+        return String.format("http://127.0.0.1:%d/v2-beta", server.getAddress().getPort());
+    }
+
+    public String addStack(String name) {
+        String id = "1st" + ids.incrementAndGet();
+        Map<String, Object> stack = new LinkedHashMap<>();
+        stack.put("id", id);
+        stack.put("type", "stack");
+        stack.put("name", name);
+        stack.put("state", ACTIVE);
+        stacks.put(id, stack);
+        return id;
+    }
+
+    public String addService(String stackId, String name, String imageUuid) {
+        Map<String, Object> launchConfig = new LinkedHashMap<>();
+        launchConfig.put("imageUuid", imageUuid);
+        launchConfig.put("environment", new LinkedHashMap<>());
+        launchConfig.put("ports", new ArrayList<>());
+        Map<String, Object> service = newService(stackId, name, launchConfig);
+        service.put("state", ACTIVE);
+        return (String) service.get("id");
+    }
+
+    @SuppressWarnings("unchecked")
+    public void addSidekick(String serviceId, String name, String imageUuid) {
+        Map<String, Object> service = services.get(serviceId);
+        synchronized (service) {
+            Map<String, Object> launchConfig = new LinkedHashMap<>();
+            launchConfig.put("name", name);
+            launchConfig.put("imageUuid", imageUuid);
+            launchConfig.put("environment", new LinkedHashMap<>());
+            ((List<Map<String, Object>>) service.computeIfAbsent("secondaryLaunchConfigs", key -> new ArrayList<>())).add(launchConfig);
+        }
+    }
+
+    /**
+     * Adds a load balancer with one port rule per target service, {@code sourcePort} upwards.
+     */
+    public String addLoadBalancer(String stackId, String name, int sourcePort, String... targetServiceIds) {
+        List<Map<String, Object>> portRules = new ArrayList<>();
+        for (String targetServiceId : targetServiceIds) {
+            Map<String, Object> portRule = new LinkedHashMap<>();
+            portRule.put("type", "portRule");
+            portRule.put("protocol", "http");
+            portRule.put("sourcePort", sourcePort++);
+            portRule.put("targetPort", 80);
+            portRule.put("serviceId", targetServiceId);
+            portRules.add(portRule);
+        }
+        Map<String, Object> lbConfig = new LinkedHashMap<>();
+        lbConfig.put("type", "lbConfig");
+        lbConfig.put("portRules", portRules);
+        lbConfig.put("config", "timeout client 50000");
+        Map<String, Object> launchConfig = new LinkedHashMap<>();
+        launchConfig.put("imageUuid", "docker:rancher/lb-service-haproxy:v0.9.1");
+        Map<String, Object> service = newService(stackId, name, launchConfig);
+        service.put("type", "loadBalancerService");
+        service.put("lbConfig", lbConfig);
+        service.put("state", ACTIVE);
+        return (String) service.get("id");
+    }
+
+    public Map<String, Object> getService(String serviceId) {
+        return services.get(serviceId);
+    }
+
+    public Collection<Map<String, Object>> getServices() {
+        return services.values();
+    }
+
+    /**
+     * Number of requests served per operation (project, stacks, createStack, services, createService,
+     * service, environmentServices, instances, hosts, hostInstances, update, remove, upgrade, finishupgrade, rollback).
+     */
+    public long getRequestCount(String operation) {
+        AtomicLong count = requests.get(operation);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Highest number of services that were upgrading, upgraded or finishing their upgrade at the same time.
+     */
+    public int getMaxConcurrentUpgrades() {
+        return maxConcurrentUpgrades.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            injectLatency();
+            byte[] body = readBody(exchange);
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                respond(exchange, 500, error(500, "injected error"));
+                return;
+            }
+            route(exchange, body);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, error(503, "interrupted"));
+        } catch (RuntimeException e) {
+            respond(exchange, 500, error(500, String.valueOf(e.getMessage())));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void route(HttpExchange exchange, byte[] body) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        String action = action(exchange.getRequestURI().getQuery());
+        Matcher matcher;
+
+        if ("GET".equals(method) && (matcher = STACKS.matcher(path)).matches()) {
+            count("stacks");
+            respond(exchange, 200, collection("stack", stacks.values()));
+        } else if ("POST".equals(method) && (matcher = CREATE_STACK.matcher(path)).matches()) {
+            count("createStack");
+            Map<String, Object> request = readMap(body);
+            String id = addStack((String) request.get("name"));
+            respond(exchange, 201, stacks.get(id));
+        } else if ("GET".equals(method) && (matcher = STACK_SERVICES.matcher(path)).matches()) {
+            count("services");
+            String stackId = matcher.group(2);
+            List<Map<String, Object>> data = new ArrayList<>();
+            for (Map<String, Object> service : services.values()) {
+                if (stackId.equals(service.get("stackId"))) {
+                    data.add(snapshot(service));
+                }
+            }
+            respond(exchange, 200, collection("service", data));
+        } else if ("POST".equals(method) && (matcher = CREATE_SERVICE.matcher(path)).matches()) {
+            count("createService");
+            createService(exchange, readMap(body));
+        } else if ("GET".equals(method) && (matcher = ENVIRONMENT_SERVICES.matcher(path)).matches()) {
+            count("environmentServices");
+            respond(exchange, 200, servicePage(matcher.group(1), exchange.getRequestURI().getQuery()));
+        } else if ("GET".equals(method) && (matcher = HOSTS.matcher(path)).matches()) {
+            count("hosts");
+            List<Map<String, Object>> data = new ArrayList<>();
+            for (int i = 1; i <= hosts; i++) {
+                Map<String, Object> host = new LinkedHashMap<>();
+                host.put("id", "1h" + i);
+                host.put("type", "host");
+                host.put("hostname", "host-" + i);
+                host.put("state", ACTIVE);
+                host.put("memory", hostMemory);
+                data.add(host);
+            }
+            respond(exchange, 200, collection("host", data));
+        } else if ("GET".equals(method) && (matcher = HOST_INSTANCES.matcher(path)).matches()) {
+            count("hostInstances");
+            List<Map<String, Object>> data = new ArrayList<>();
+            for (Map<String, Object> service : services.values()) {
+                for (Map<String, Object> instance : instances(service)) {
+                    if (matcher.group(2).equals(instance.get("hostId"))) {
+                        data.add(instance);
+                    }
+                }
+            }
+            respond(exchange, 200, collection("instance", data));
+        } else if ("GET".equals(method) && (matcher = SERVICE_INSTANCES.matcher(path)).matches()) {
+            count("instances");
+            Map<String, Object> service = services.get(matcher.group(2));
+            if (service == null) {
+                respond(exchange, 404, error(404, "service not found"));
+            } else {
+                respond(exchange, 200, collection("instance", instances(service)));
+            }
+        } else if ((matcher = SERVICE.matcher(path)).matches()) {
+            Map<String, Object> service = services.get(matcher.group(2));
+            if (service == null) {
+                respond(exchange, 404, error(404, "service not found"));
+            } else if ("GET".equals(method) && action == null) {
+                count("service");
+                respond(exchange, 200, snapshot(service));
+            } else if ("POST".equals(method) && action != null) {
+                count(action);
+                serviceAction(exchange, service, action, readMap(body));
+            } else if ("DELETE".equals(method) && action == null) {
+                count("remove");
+                services.remove(matcher.group(2));
+                synchronized (service) {
+                    service.put("state", "removed");
+                    respond(exchange, 200, snapshot(service));
+                }
+            } else if ("PUT".equals(method) && action == null) {
+                count("update");
+                updateService(exchange, service, readMap(body));
+            } else {
+                respond(exchange, 405, error(405, "method not allowed"));
+            }
+        } else if ("GET".equals(method) && (matcher = PROJECT.matcher(path)).matches()) {
+            count("project");
+            Map<String, Object> project = new LinkedHashMap<>();
+            project.put("id", matcher.group(1));
+            project.put("type", "project");
+            project.put("name", "Default");
+            project.put("state", ACTIVE);
+            respond(exchange, 200, project);
+        } else {
+            respond(exchange, 404, error(404, "not found"));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void createService(HttpExchange exchange, Map<String, Object> request) throws IOException {
+        Map<String, Object> launchConfig = (Map<String, Object>) request.get("launchConfig");
+        Map<String, Object> service = newService((String) request.get("stackId"), (String) request.get("name"),
+                launchConfig == null ? new LinkedHashMap<>() : launchConfig);
+        synchronized (service) {
+            service.put("state", "activating");
+            transition(service, "activating", ACTIVE);
+            respond(exchange, 201, snapshot(service));
+        }
+    }
+
+    private void updateService(HttpExchange exchange, Map<String, Object> service, Map<String, Object> request) throws IOException {
+        synchronized (service) {
+            // like rancher, only the updatable fields are taken, the launch config needs an upgrade
+            if (request.containsKey("metadata")) {
+                service.put("metadata", request.get("metadata"));
+            }
+            if (request.containsKey("scale")) {
+                String state = (String) service.get("state");
+                service.put("scale", request.get("scale"));
+                if (ACTIVE.equals(state)) {
+                    service.put("state", "updating-active");
+                    transition(service, "updating-active", ACTIVE);
+                }
+            }
+            if (request.containsKey("lbConfig")) {
+                service.put("lbConfig", request.get("lbConfig"));
+                service.put("state", "updating-active");
+                transition(service, "updating-active", ACTIVE);
+            }
+            respond(exchange, 200, snapshot(service));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void serviceAction(HttpExchange exchange, Map<String, Object> service, String action, Map<String, Object> request) throws IOException {
+        synchronized (service) {
+            String state = (String) service.get("state");
+            switch (action) {
+                case "upgrade":
+                    if (!ACTIVE.equals(state) && !"inactive".equals(state)) {
+                        respond(exchange, 422, error(422, "InvalidState: service is " + state));
+                        return;
+                    }
+                    Map<String, Object> strategy = (Map<String, Object>) request.get("inServiceStrategy");
+                    Map<String, Object> launchConfig = (Map<String, Object>) service.get("launchConfig");
+                    service.put("previousLaunchConfig", new LinkedHashMap<>(launchConfig));
+                    if (strategy != null && strategy.get("launchConfig") != null) {
+                        // the upgrade launch config replaces the current one, fields left out are lost
+                        launchConfig.clear();
+                        launchConfig.putAll((Map<String, Object>) strategy.get("launchConfig"));
+                    }
+                    List<Map<String, Object>> secondaries = (List<Map<String, Object>>) service.get("secondaryLaunchConfigs");
+                    if (strategy != null && strategy.get("secondaryLaunchConfigs") != null && secondaries != null) {
+                        List<Map<String, Object>> previousSecondaries = new ArrayList<>();
+                        secondaries.forEach(secondary -> previousSecondaries.add(new LinkedHashMap<>(secondary)));
+                        service.put("previousSecondaryLaunchConfigs", previousSecondaries);
+                        // sidekicks are replaced by name
+                        for (Map<String, Object> upgrade : (List<Map<String, Object>>) strategy.get("secondaryLaunchConfigs")) {
+                            secondaries.stream().filter(secondary -> secondary.get("name").equals(upgrade.get("name")))
+                                    .forEach(secondary -> {
+                                        secondary.clear();
+                                        secondary.putAll(upgrade);
+                                    });
+                        }
+                    }
+                    service.put("state", "upgrading");
+                    int upgrading = (int) services.values().stream()
+                            .filter(other -> Arrays.asList("upgrading", UPGRADED, "finishing-upgrade").contains(other.get("state"))).count();
+                    maxConcurrentUpgrades.accumulateAndGet(upgrading, Math::max);
+                    transition(service, "upgrading", UPGRADED);
+                    break;
+                case "finishupgrade":
+                    if (!UPGRADED.equals(state)) {
+                        respond(exchange, 422, error(422, "InvalidState: service is " + state));
+                        return;
+                    }
+                    service.remove("previousLaunchConfig");
+                    service.remove("previousSecondaryLaunchConfigs");
+                    service.put("state", "finishing-upgrade");
+                    transition(service, "finishing-upgrade", ACTIVE);
+                    break;
+                case "rollback":
+                    if (!UPGRADED.equals(state) && !"upgrading".equals(state)) {
+                        respond(exchange, 422, error(422, "InvalidState: service is " + state));
+                        return;
+                    }
+                    Object previous = service.remove("previousLaunchConfig");
+                    if (previous != null) {
+                        service.put("launchConfig", previous);
+                    }
+                    Object previousSecondaries = service.remove("previousSecondaryLaunchConfigs");
+                    if (previousSecondaries != null) {
+                        service.put("secondaryLaunchConfigs", previousSecondaries);
+                    }
+                    service.put("state", "rolling-back");
+                    transition(service, "rolling-back", ACTIVE);
+                    break;
+                default:
+                    respond(exchange, 422, error(422, "InvalidAction: " + action));
+                    return;
+            }
+            respond(exchange, 202, snapshot(service));
+        }
+    }
+
+    /**
+     * One page of all services of the environment in id order, {@code limit} per page starting after the {@code marker}
+     * service, with a {@code next} link while more services follow.
+     */
+    private Map<String, Object> servicePage(String projectId, String query) {
+        int limit = 100;
+        String marker = null;
+        for (String parameter : query == null ? new String[0] : query.split("&")) {
+            if (parameter.startsWith("limit=")) {
+                limit = Integer.parseInt(parameter.substring("limit=".length()));
+            } else if (parameter.startsWith("marker=m")) {
+                marker = parameter.substring("marker=m".length());
+            }
+        }
+        List<Map<String, Object>> all = new ArrayList<>();
+        for (Map<String, Object> service : services.values()) {
+            all.add(snapshot(service));
+        }
+        all.sort((a, b) -> Integer.compare(serial(a), serial(b)));
+        List<Map<String, Object>> page = new ArrayList<>();
+        for (Map<String, Object> service : all) {
+            if ((marker == null || serial(service) > Integer.parseInt(marker.substring(2))) && page.size() < limit) {
+                page.add(service);
+            }
+        }
+        Map<String, Object> collection = collection("service", page);
+        Map<String, Object> pagination = new LinkedHashMap<>();
+        pagination.put("limit", limit);
+        boolean partial = !page.isEmpty() && serial(page.get(page.size() - 1)) < serial(all.get(all.size() - 1));
+        pagination.put("partial", partial);
+        if (partial) {
+            pagination.put("next", String.format("%s/projects/%s/services?limit=%d&marker=m%s", getEndpoint(), projectId, limit, page.get(page.size() - 1).get("id")));
+        }
+        collection.put("pagination", pagination);
+        return collection;
+    }
+
+    private static int serial(Map<String, Object> resource) {
+        return Integer.parseInt(((String) resource.get("id")).substring(2));
+    }
+
+    /**
+     * Instances of the service as rancher would schedule them: {@code scale} instances spread over the hosts,
+     * or one per host for global services. Start-once instances are stopped once the service is active.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> instances(Map<String, Object> service) {
+        List<Map<String, Object>> instances = new ArrayList<>();
+        synchronized (service) {
+            Map<String, Object> launchConfig = (Map<String, Object>) service.get("launchConfig");
+            Map<String, Object> labels = launchConfig.get("labels") instanceof Map ? (Map<String, Object>) launchConfig.get("labels") : new HashMap<>();
+            boolean global = "true".equals(labels.get("io.rancher.scheduler.global"));
+            int count = global ? hosts : ((Number) service.get("scale")).intValue();
+            String state = (String) service.get("state");
+            Map<String, Object> stack = stacks.get(service.get("stackId"));
+            for (int i = 0; i < count; i++) {
+                Map<String, Object> instance = new LinkedHashMap<>();
+                instance.put("id", "1i" + ((String) service.get("id")).substring(2) + "x" + i);
+                instance.put("type", "container");
+                instance.put("name", service.get("name") + "-" + (i + 1));
+                String hostId = "1h" + (i % hosts + 1);
+                boolean startOnce = "true".equals(labels.get("io.rancher.container.start_once"));
+                instance.put("state", "activating".equals(state) ? "creating"
+                        : !startOnce ? "running" : failedPullHosts.contains(hostId) ? "error" : "stopped");
+                instance.put("hostId", hostId);
+                instance.put("primaryIpAddress", instanceAddress != null ? instanceAddress : "10.42." + ((String) service.get("id")).substring(2) + "." + (i + 1));
+                instance.put("imageUuid", launchConfig.get("imageUuid"));
+                instance.put("memory", launchConfig.get("memory"));
+                instance.put("memoryReservation", launchConfig.get("memoryReservation"));
+                Map<String, Object> instanceLabels = new LinkedHashMap<>(labels);
+                instanceLabels.put("io.rancher.stack_service.name", (stack == null ? "" : stack.get("name")) + "/" + service.get("name"));
+                instance.put("labels", instanceLabels);
+                instances.add(instance);
+            }
+        }
+        return instances;
+    }
+
+    private Map<String, Object> newService(String stackId, String name, Map<String, Object> launchConfig) {
+        String id = "1s" + ids.incrementAndGet();
+        Map<String, Object> service = new LinkedHashMap<>();
+        service.put("id", id);
+        service.put("type", "service");
+        service.put("name", name);
+        service.put("stackId", stackId);
+        service.put("scale", 1);
+        service.put("launchConfig", launchConfig);
+        services.put(id, service);
+        return service;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> snapshot(Map<String, Object> service) {
+        synchronized (service) {
+            Map<String, Object> copy = new LinkedHashMap<>(service);
+            copy.remove("previousLaunchConfig");
+            copy.remove("previousSecondaryLaunchConfigs");
+            copy.put("launchConfig", new LinkedHashMap<>((Map<String, Object>) service.get("launchConfig")));
+            return copy;
+        }
+    }
+
+    private void transition(Map<String, Object> service, String from, String to) {
+        transitions.schedule(() -> {
+            synchronized (service) {
+                if (from.equals(service.get("state"))) {
+                    service.put("state", to);
+                }
+            }
+        }, transitionDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void injectLatency() throws InterruptedException {
+        long delay = latencyMillis + (latencyJitterMillis > 0 ? ThreadLocalRandom.current().nextLong(latencyJitterMillis) : 0);
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+    }
+
+    private void count(String operation) {
+        requests.computeIfAbsent(operation, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    private static String action(String query) {
+        if (query == null) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith("action=")) {
+                return parameter.substring("action=".length());
+            }
+        }
+        return null;
+    }
+
+    private static Map<String, Object> collection(String resourceType, Collection<Map<String, Object>> data) {
+        Map<String, Object> collection = new LinkedHashMap<>();
+        collection.put("type", "collection");
+        collection.put("resourceType", resourceType);
+        collection.put("data", new ArrayList<>(data));
+        return collection;
+    }
+
+    private static Map<String, Object> error(int status, String message) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("type", "error");
+        error.put("status", status);
+        error.put("message", message);
+        return error;
+    }
+
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        try (InputStream input = exchange.getRequestBody()) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readMap(byte[] body) throws IOException {
+        if (body.length == 0) {
+            return new HashMap<>();
+        }
+        Map<String, Object> map = objectMapper.readValue(body, Map.class);
+        return map == null ? new HashMap<>() : map;
+    }
+
+    private void respond(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        transitions.shutdownNow();
+        workers.shutdownNow();
+    }
+}
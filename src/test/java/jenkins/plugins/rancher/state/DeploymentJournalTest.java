@@ -0,0 +1,104 @@
+package jenkins.plugins.rancher.state;
+
+import hudson.model.Run;
+import hudson.remoting.VirtualChannel;
+import jenkins.plugins.rancher.timing.DeploymentPhase;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DeploymentJournalTest {
+
+    private static DeploymentJournal.Saver exported;
+    private Run build;
+    private Run previous;
+    private DeploymentState open;
+
+    @Before
+    public void setUp() {
+        open = new DeploymentState("1a5", "1s1", "web", "docker:nginx:1.13", DeploymentPhase.WAIT_UPGRADED);
+        open.setBuild("#1");
+        DeploymentStateAction action = new DeploymentStateAction();
+        action.put(open);
+
+        previous = mock(Run.class);
+        when(previous.getAction(DeploymentStateAction.class)).thenReturn(action);
+        build = mock(Run.class);
+        when(build.getDisplayName()).thenReturn("#2");
+        when(build.getPreviousBuild()).thenReturn(previous);
+    }
+
+    @Test
+    public void should_find_upgrades_left_open_by_earlier_builds() {
+        DeploymentJournal journal = DeploymentJournal.forBuild(build);
+
+        assertThat(journal.findInterrupted("1a5", "1s1"), is(open));
+        assertThat(journal.findInterrupted("1a5", "1s2"), is(nullValue()));
+    }
+
+    @Test
+    public void should_close_the_resumed_upgrade_of_the_earlier_build() throws Exception {
+        DeploymentJournal journal = DeploymentJournal.forBuild(build);
+
+        journal.resume(journal.findInterrupted("1a5", "1s1"));
+
+        assertThat(open.isClosed(), is(true));
+        verify(previous).save();
+        assertThat(DeploymentJournal.forBuild(build).findInterrupted("1a5", "1s1"), is(nullValue()));
+    }
+
+    @Test
+    public void should_save_the_states_of_a_journal_on_the_agent_as_they_change() throws Exception {
+        DeploymentStateAction action = new DeploymentStateAction();
+        when(build.getAction(DeploymentStateAction.class)).thenReturn(action);
+        VirtualChannel channel = mock(VirtualChannel.class);
+        when(channel.export(eq(DeploymentJournal.Saver.class), any(DeploymentJournal.Saver.class))).thenAnswer(invocation -> {
+            exported = (DeploymentJournal.Saver) invocation.getArguments()[1];
+            // the agent sends copies of the states, like a remoting proxy
+            return (DeploymentJournal.Saver & Serializable) (index, state) -> exported.save(index, roundTrip(state));
+        });
+        DeploymentJournal journal = DeploymentJournal.forBuild(build);
+        journal.saveThrough(channel);
+
+        DeploymentJournal agent = roundTrip(journal);
+        agent.start("1a5", "1s2", "api", "docker:api:2", "docker:api:1", DeploymentPhase.UPGRADE);
+        agent.phase(DeploymentPhase.WAIT_UPGRADED);
+
+        assertThat(action.getInterrupted().size(), is(1));
+        assertThat(action.getInterrupted().get(0).getPhase(), is(DeploymentPhase.WAIT_UPGRADED));
+
+        agent.close();
+        journal.attach(roundTrip(agent));
+
+        assertThat(action.getDeployments().size(), is(1));
+        assertThat(action.getInterrupted().size(), is(0));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T roundTrip(T object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (T) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package jenkins.plugins.rancher.state;
+
+import jenkins.plugins.rancher.entity.LaunchConfig;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LaunchConfigSnapshotTest {
+
+    @Test
+    public void should_restore_launch_config_with_its_environment() throws IOException {
+        LaunchConfig sidekick = new LaunchConfig();
+        sidekick.setName("log");
+        sidekick.setImageUuid("docker:fluentd:1");
+        LaunchConfig launchConfig = new LaunchConfig();
+        launchConfig.setImageUuid("docker:nginx:1.13");
+        launchConfig.setPorts(Collections.singletonList("80:80/tcp"));
+        launchConfig.getEnvironment().put("DB_PASSWORD", "s3cret");
+        launchConfig.getEnvironment().put("WORKERS", 4);
+
+        LaunchConfigSnapshot snapshot = LaunchConfigSnapshot.of(launchConfig, Collections.singletonList(sidekick));
+        launchConfig.getEnvironment().put("DB_PASSWORD", "changed");
+
+        LaunchConfig restored = snapshot.getLaunchConfig();
+        assertThat(snapshot.getImageUuid(), is("docker:nginx:1.13"));
+        assertThat(restored.getImageUuid(), is("docker:nginx:1.13"));
+        assertThat(restored.getPorts(), is(Collections.singletonList("80:80/tcp")));
+        assertThat(restored.getEnvironment().get("DB_PASSWORD"), is((Object) "s3cret"));
+        assertThat(restored.getEnvironment().get("WORKERS"), is((Object) "4"));
+        assertThat(snapshot.getSecondaryLaunchConfigs().get(0).getName(), is("log"));
+    }
+}
@@ -0,0 +1,54 @@
+package jenkins.plugins.rancher.timing;
+
+import jenkins.plugins.rancher.traffic.RancherExchange;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class PhaseTimerTest {
+
+    @Test
+    public void should_attribute_calls_and_bytes_to_the_current_phase() {
+        PhaseTimer timer = new PhaseTimer();
+        timer.setService("stack/service");
+
+        timer.start(DeploymentPhase.STACK);
+        timer.onExchange(exchange(null, "{\"data\":[]}"));
+        timer.start(DeploymentPhase.UPGRADE);
+        timer.onExchange(exchange("{\"a\":1}", "{}"));
+        timer.onExchange(exchange("{}", "{}"));
+
+        DeploymentTiming timing = timer.toTiming("step", true);
+
+        assertThat(timing.getService(), is("stack/service"));
+        assertThat(timing.getCalls(), is(3));
+        assertThat(timing.getPhase(DeploymentPhase.STACK).getCalls(), is(1));
+        assertThat(timing.getPhase(DeploymentPhase.STACK).getBytesReceived(), is(11L));
+        assertThat(timing.getPhase(DeploymentPhase.UPGRADE).getCalls(), is(2));
+        assertThat(timing.getPhase(DeploymentPhase.UPGRADE).getBytesSent(), is(9L));
+        assertThat(timing.getPhase(DeploymentPhase.WAIT_ACTIVE), is(nullValue()));
+    }
+
+    @Test
+    public void should_accumulate_a_phase_entered_twice() throws InterruptedException {
+        PhaseTimer timer = new PhaseTimer();
+
+        timer.start(DeploymentPhase.WAIT_ACTIVE);
+        Thread.sleep(20);
+        timer.start(DeploymentPhase.FINISH);
+        timer.start(DeploymentPhase.WAIT_ACTIVE);
+        Thread.sleep(20);
+
+        DeploymentTiming timing = timer.toTiming("step", false);
+
+        assertThat(timing.getPhases().size(), is(2));
+        assertThat(timing.getPhase(DeploymentPhase.WAIT_ACTIVE).getDurationMillis() >= 40, is(true));
+        assertThat(timing.isSuccess(), is(false));
+    }
+
+    private static RancherExchange exchange(String request, String response) {
+        return new RancherExchange("GET", "/projects/1a5", request, 200, response, 0, 0);
+    }
+}
@@ -0,0 +1,66 @@
+package jenkins.plugins.rancher.tracing;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jenkins.plugins.rancher.traffic.RancherExchange;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class DeploymentTraceTest {
+
+    private static final String UPGRADE = "/projects/1a5/services/1s3/?action=upgrade";
+    private static final String SERVICE = "/projects/1a5/services/1s3";
+
+    @Test
+    public void should_nest_api_calls_under_root_and_wait_spans() throws IOException {
+        DeploymentTrace trace = new DeploymentTrace("Deploy/Upgrade Rancher Service");
+        trace.setAttribute("rancher.image", "docker:nginx:1.14");
+
+        call(trace, "POST", UPGRADE, 202);
+        trace.startWait("1s3", "upgraded");
+        call(trace, "GET", SERVICE, 200);
+        call(trace, "GET", SERVICE, 200);
+        trace.endWait("reached");
+
+        List<Span> spans = trace.finish(true, null);
+        JsonNode otlp = new ObjectMapper().readTree(OtlpJson.encode(trace, spans));
+        JsonNode encoded = otlp.path("resourceSpans").path(0).path("scopeSpans").path(0).path("spans");
+
+        assertThat(encoded.size(), is(5));
+        String rootId = encoded.path(0).path("spanId").asText();
+        assertThat(encoded.path(0).has("parentSpanId"), is(false));
+        assertThat(encoded.path(1).path("name").asText(), is("upgrade"));
+        assertThat(encoded.path(1).path("kind").asInt(), is(Span.KIND_CLIENT));
+        assertThat(encoded.path(1).path("parentSpanId").asText(), is(rootId));
+        assertThat(encoded.path(2).path("name").asText(), is("wait upgraded"));
+        assertThat(encoded.path(3).path("parentSpanId").asText(), is(encoded.path(2).path("spanId").asText()));
+        assertThat(encoded.path(0).path("attributes").path(0).path("value").path("stringValue").asText(), is("docker:nginx:1.14"));
+        assertThat(encoded.path(0).path("status").path("code").asInt(), is(1));
+    }
+
+    @Test
+    public void should_join_the_trace_of_the_pipeline() throws IOException {
+        DeploymentTrace trace = new DeploymentTrace("step");
+        trace.setParent("00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01");
+        call(trace, "GET", SERVICE, 500);
+
+        JsonNode encoded = new ObjectMapper().readTree(OtlpJson.encode(trace, trace.finish(false, "boom")))
+                .path("resourceSpans").path(0).path("scopeSpans").path(0).path("spans");
+
+        assertThat(encoded.path(0).path("traceId").asText(), is("4bf92f3577b34da6a3ce929d0e0e4736"));
+        assertThat(encoded.path(0).path("parentSpanId").asText(), is("00f067aa0ba902b7"));
+        assertThat(encoded.path(0).path("status").path("code").asInt(), is(2));
+        assertThat(encoded.path(1).path("traceId").asText(), is("4bf92f3577b34da6a3ce929d0e0e4736"));
+        assertThat(encoded.path(1).path("status").path("message").asText(), is("HTTP 500"));
+    }
+
+    private static void call(DeploymentTrace trace, String method, String path, int statusCode) {
+        trace.onStart(method, path);
+        trace.onExchange(new RancherExchange(method, path, null, statusCode, "{}", 0, 0));
+    }
+}
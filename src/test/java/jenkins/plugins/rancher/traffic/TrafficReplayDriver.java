@@ -0,0 +1,103 @@
+package jenkins.plugins.rancher.traffic;
+
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import jenkins.plugins.rancher.RancherBuilder;
+import jenkins.plugins.rancher.RancherClientRancher;
+import jenkins.plugins.rancher.util.CredentialsUtil;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Replays a recorded deployment against {@code RancherBuilder.perform()} and compares call count and duration.
+ * <p>
+ * Arguments are {@code key=value} pairs: recording (required), service as stack/service (required),
+ * image (required), speed as original, accelerated, stressed or a factor (default original),
+ * confirm (default true) and poll interval in ms (default 2000, as in production).
+ * Run it with {@code ./gradlew replayTraffic -PreplayArgs="recording=app-42.jsonl.gz service=web/app image=app:1.2"}.
+ */
+public class TrafficReplayDriver {
+
+    private static final Pattern PROJECT = Pattern.compile("^/projects/([^/?]+)");
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            for (String option : arg.trim().split("\\s+")) {
+                int separator = option.indexOf('=');
+                if (separator > 0) {
+                    options.put(option.substring(0, separator), option.substring(separator + 1));
+                }
+            }
+        }
+        File recording = new File(required(options, "recording"));
+        String service = required(options, "service");
+        String image = required(options, "image");
+        double timeScale = TrafficReplay.timeScale(options.getOrDefault("speed", "original"));
+        boolean confirm = Boolean.parseBoolean(options.getOrDefault("confirm", "true"));
+        // must be set before the builder classes are loaded
+        System.setProperty("jenkins.plugins.rancher.AbstractRancherBuilder.pollIntervalMillis", options.getOrDefault("poll", "2000"));
+
+        TrafficReplay replay = TrafficReplay.load(recording, timeScale);
+        String environmentId = environmentId(replay);
+
+        RancherClientRancher client = new RancherClientRancher("http://replay.invalid");
+        client.setTransport(replay);
+        CredentialsUtil credentialsUtil = mock(CredentialsUtil.class);
+        when(credentialsUtil.getCredential(anyString())).thenReturn(Optional.empty());
+        TaskListener listener = mock(TaskListener.class);
+        when(listener.getLogger()).thenReturn(System.out);
+
+        RancherBuilder builder = new RancherBuilder(environmentId, "http://replay.invalid", "", service, image, confirm, false, "", "", 600);
+        builder.setCredentialsUtil(credentialsUtil);
+        builder.setRancherClient(client);
+
+        long start = System.nanoTime();
+        String failure = null;
+        try {
+            builder.perform(mock(Run.class), new FilePath(new File(".")), mock(Launcher.class), listener);
+        } catch (Exception e) {
+            failure = e.getMessage();
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("%nrecorded: %d calls in %d ms%n", replay.getRecorded().size(), replay.getRecordedMillis());
+        System.out.printf("replayed: %d calls in %d ms at time scale %.2f%n",
+                replay.getReplayed() + replay.getRepeated() + replay.getUnmatched().size(), elapsedMillis, timeScale);
+        System.out.printf("  beyond recording: %d, not recorded: %s, not made: %d%n",
+                replay.getRepeated(), replay.getUnmatched(), replay.getRemaining());
+        if (failure != null) {
+            System.out.println("deployment failed: " + failure);
+        }
+        System.exit(failure == null && replay.getRepeated() == 0 && replay.getUnmatched().isEmpty() ? 0 : 1);
+    }
+
+    private static String environmentId(TrafficReplay replay) {
+        for (RancherExchange exchange : replay.getRecorded()) {
+            Matcher matcher = PROJECT.matcher(exchange.getPath());
+            if (matcher.find()) {
+                return matcher.group(1);
+            }
+        }
+        throw new IllegalArgumentException("recording has no /projects/<environment> request");
+    }
+
+    private static String required(Map<String, String> options, String key) {
+        String value = options.get(key);
+        if (value == null) {
+            throw new IllegalArgumentException("missing argument " + key + "=...");
+        }
+        return value;
+    }
+}
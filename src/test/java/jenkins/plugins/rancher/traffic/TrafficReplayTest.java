@@ -0,0 +1,128 @@
+package jenkins.plugins.rancher.traffic;
+
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import jenkins.plugins.rancher.RancherBuilder;
+import jenkins.plugins.rancher.RancherClientRancher;
+import jenkins.plugins.rancher.fake.FakeRancherServer;
+import jenkins.plugins.rancher.util.CredentialsUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TrafficReplayTest {
+
+    private TaskListener listener;
+    private CredentialsUtil credentialsUtil;
+    private FakeRancherServer server;
+    private File recording;
+
+    @Before
+    public void setUp() throws Exception {
+        listener = mock(TaskListener.class);
+        when(listener.getLogger()).thenReturn(mock(PrintStream.class));
+        credentialsUtil = mock(CredentialsUtil.class);
+        when(credentialsUtil.getCredential(anyString())).thenReturn(Optional.empty());
+        server = new FakeRancherServer().withTransitionDelay(0);
+        recording = File.createTempFile("rancher-traffic", TrafficFormat.EXTENSION);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+        recording.delete();
+    }
+
+    @Test
+    public void should_replay_recorded_upgrade_with_the_same_calls() throws Exception {
+        server.addService(server.addStack("stack"), "service", "docker:nginx:1.13");
+        RancherClientRancher recordingClient = new RancherClientRancher(server.getEndpoint(), "access", "secret");
+        try (TrafficRecorder recorder = new TrafficRecorder(recording, listener)) {
+            recordingClient.addExchangeListener(recorder);
+            deploy(recordingClient);
+        }
+
+        TrafficReplay replay = TrafficReplay.load(recording, TrafficReplay.ACCELERATED);
+        RancherClientRancher replayClient = new RancherClientRancher("http://replay.invalid");
+        replayClient.setTransport(replay);
+        deploy(replayClient);
+
+        assertThat(replay.getRecorded().size() > 0, is(true));
+        assertThat(replay.getRemaining(), is(0));
+        assertThat(replay.getRepeated(), is(0));
+        assertThat(replay.getUnmatched(), is(Collections.<String>emptyList()));
+    }
+
+    @Test
+    public void should_redact_credentials_from_recording() throws Exception {
+        server.addService(server.addStack("stack"), "service", "docker:nginx:1.13");
+        RancherClientRancher client = new RancherClientRancher(server.getEndpoint(), "access", "s3cr3t-key");
+        try (TrafficRecorder recorder = new TrafficRecorder(recording, listener)) {
+            client.addExchangeListener(recorder);
+            deploy(client);
+        }
+
+        String content = read(recording);
+        assertThat(content, containsString("nginx:1.14"));
+        assertThat(content, not(containsString("s3cr3t-key")));
+        assertThat(content, not(containsString("hunter2")));
+        assertThat(content, containsString(Redactor.REDACTED));
+    }
+
+    @Test
+    public void should_answer_unknown_requests_with_not_found() throws IOException {
+        TrafficReplay replay = new TrafficReplay(Collections.singletonList(
+                new RancherExchange("GET", "/projects/1a5/stacks", null, 200, "{}", 0, 1000)), TrafficReplay.ACCELERATED);
+
+        RancherExchange first = replay.execute("GET", "/projects/1a5/stacks", null);
+        RancherExchange second = replay.execute("GET", "/projects/1a5/stacks", null);
+        RancherExchange unknown = replay.execute("GET", "/projects/1a5/services", null);
+
+        assertThat(first.getStatusCode(), is(200));
+        assertThat(second.getStatusCode(), is(200));
+        assertThat(replay.getRepeated(), is(1));
+        assertThat(unknown.getStatusCode(), is(404));
+        assertThat(replay.getUnmatched(), is(Collections.singletonList("GET /projects/1a5/services")));
+    }
+
+    private void deploy(RancherClientRancher client) throws IOException, InterruptedException {
+        RancherBuilder builder = new RancherBuilder("1a5", server.getEndpoint(), "", "stack/service", "nginx:1.14", true, false, "",
+                "DB_PASSWORD:hunter2", 5);
+        builder.setCredentialsUtil(credentialsUtil);
+        builder.setRancherClient(client);
+        builder.perform(mock(Run.class), new FilePath(new File("/tmp/jenkins/workspace/test")), mock(Launcher.class), listener);
+    }
+
+    private static String read(File file) throws IOException {
+        try (Reader reader = new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8)) {
+            StringBuilder builder = new StringBuilder();
+            char[] buffer = new char[4096];
+            int read;
+            while ((read = reader.read(buffer)) > 0) {
+                builder.append(buffer, 0, read);
+            }
+            return builder.toString();
+        }
+    }
+}
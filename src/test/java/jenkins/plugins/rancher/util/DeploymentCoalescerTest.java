@@ -0,0 +1,103 @@
+package jenkins.plugins.rancher.util;
+
+import hudson.model.TaskListener;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.PrintStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DeploymentCoalescerTest {
+
+    private final DeploymentCoalescer coalescer = new DeploymentCoalescer();
+    private TaskListener listener;
+
+    @Before
+    public void setUp() {
+        listener = mock(TaskListener.class);
+        when(listener.getLogger()).thenReturn(mock(PrintStream.class));
+    }
+
+    @Test
+    public void newerDeploySupersedesTheWaitingOne() throws Exception {
+        String key = DeploymentCoalescer.key("http://rancher", "1a5", "stack/web");
+        DeploymentCoalescer.Ticket first = coalescer.enter(key, "#1", listener);
+        assertFalse(first.isSuperseded());
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<DeploymentCoalescer.Ticket> second = executor.submit(() -> coalescer.enter(key, "#2", listener));
+            waitUntilPending(key);
+            Future<DeploymentCoalescer.Ticket> third = executor.submit(() -> coalescer.enter(key, "#3", listener));
+
+            assertEquals("#3", second.get(5, TimeUnit.SECONDS).getSupersededBy());
+            assertFalse(third.isDone());
+
+            first.release();
+            DeploymentCoalescer.Ticket latest = third.get(5, TimeUnit.SECONDS);
+            assertNull(latest.getSupersededBy());
+            latest.release();
+            assertEquals(0, coalescer.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void abortAfterPromotionReleasesTheLane() throws Exception {
+        String key = DeploymentCoalescer.key("http://rancher", "1a5", "stack/web");
+        DeploymentCoalescer.Ticket first = coalescer.enter(key, "#1", listener);
+        AtomicBoolean aborted = new AtomicBoolean();
+        Thread second = new Thread(() -> {
+            try {
+                coalescer.enter(key, "#2", listener);
+            } catch (InterruptedException e) {
+                aborted.set(true);
+            }
+        });
+        second.start();
+        waitUntilPending(key);
+
+        synchronized (coalescer) {
+            // abort the waiting build, then promote it before it gets to run again
+            second.interrupt();
+            for (int i = 0; i < 500 && second.getState() != Thread.State.BLOCKED; i++) {
+                Thread.sleep(10);
+            }
+            first.release();
+        }
+        second.join(5000);
+
+        assertTrue(aborted.get());
+        assertEquals(0, coalescer.size());
+        coalescer.enter(key, "#3", listener).release();
+    }
+
+    @Test
+    public void otherServicesDoNotWait() throws Exception {
+        DeploymentCoalescer.Ticket web = coalescer.enter(DeploymentCoalescer.key("http://rancher", "1a5", "stack/web"), "#1", listener);
+        DeploymentCoalescer.Ticket api = coalescer.enter(DeploymentCoalescer.key("http://rancher", "1a5", "stack/api"), "#1", listener);
+        assertEquals(2, coalescer.size());
+        web.release();
+        api.release();
+        assertEquals(0, coalescer.size());
+    }
+
+    private void waitUntilPending(String key) throws InterruptedException {
+        // the waiting deploy logs before it blocks, the lane then has a pending ticket
+        for (int i = 0; i < 500 && !coalescer.hasPending(key); i++) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package jenkins.plugins.rancher.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class EnvironmentFileParserTest {
+
+    @Test
+    public void should_parse_env_file_with_comments_and_export() throws IOException {
+        Map<String, String> parse = parse("# database\n"
+                + "export DB_URL=jdbc:mysql://db:3306/app?a=b,c=d\n"
+                + "\n"
+                + "DB_USER = app # trailing comment\n"
+                + "EMPTY=\n");
+
+        assertThat(parse.get("DB_URL"), is("jdbc:mysql://db:3306/app?a=b,c=d"));
+        assertThat(parse.get("DB_USER"), is("app"));
+        assertThat(parse.get("EMPTY"), is(""));
+        assertThat(parse.size(), is(3));
+    }
+
+    @Test
+    public void should_parse_quoted_values() throws IOException {
+        Map<String, String> parse = parse("SINGLE='literal \\n ${HOME}'\n"
+                + "DOUBLE=\"line1\\nline2 \\\"quoted\\\"\"\n"
+                + "MULTI=\"first\n"
+                + "second\"\n");
+
+        assertThat(parse.get("SINGLE"), is("literal \\n ${HOME}"));
+        assertThat(parse.get("DOUBLE"), is("line1\nline2 \"quoted\""));
+        assertThat(parse.get("MULTI"), is("first\nsecond"));
+    }
+
+    @Test
+    public void should_parse_properties_file() throws IOException {
+        Map<String, String> parse = parse("test.properties", "! properties comment\n"
+                + "server.url: http://config:8888\n"
+                + "long.value=one \\\n"
+                + "    two\n"
+                + "key\\:with\\=separators=value\n"
+                + "unicode=caf\\u00e9\n");
+
+        assertThat(parse.get("server.url"), is("http://config:8888"));
+        assertThat(parse.get("long.value"), is("one two"));
+        assertThat(parse.get("key:with=separators"), is("value"));
+        assertThat(parse.get("unicode"), is("caf\u00e9"));
+    }
+
+    @Test
+    public void should_take_unquoted_env_values_literally() throws IOException {
+        Map<String, String> parse = parse("DIR=C:\\users\\app\n"
+                + "NEW=C:\\new\\temp # windows\n"
+                + "SHARE=\\\\server\\share\\\n"
+                + "QUOTED=\"C:\\\\users\"\n");
+
+        assertThat(parse.get("DIR"), is("C:\\users\\app"));
+        assertThat(parse.get("NEW"), is("C:\\new\\temp"));
+        assertThat(parse.get("SHARE"), is("\\\\server\\share\\"));
+        assertThat(parse.get("QUOTED"), is("C:\\users"));
+    }
+
+    @Test
+    public void should_report_malformed_unicode_escape_in_properties_file() throws IOException {
+        try {
+            parse("app.properties", "name=app\ndir=C:\\users\\app\n");
+            fail("expected malformed escape");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), startsWith("app.properties:2: malformed"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void should_fail_on_unterminated_quote() throws IOException {
+        parse("KEY=\"never closed\n");
+    }
+
+    private Map<String, String> parse(String content) throws IOException {
+        return parse("test.env", content);
+    }
+
+    private Map<String, String> parse(String source, String content) throws IOException {
+        return EnvironmentFileParser.parse(new StringReader(content), source);
+    }
+}
@@ -0,0 +1,64 @@
+package jenkins.plugins.rancher.util;
+
+import jenkins.plugins.rancher.entity.Host;
+import jenkins.plugins.rancher.entity.Instance;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class HostCapacityTest {
+
+    private static final long MIB = 1024 * 1024;
+    private static final Set<String> NONE = Collections.emptySet();
+
+    @Test
+    public void countsReservationsOfAllocatedInstances() {
+        Map<String, List<Instance>> instances = new HashMap<>();
+        instances.put("1h1", Arrays.asList(instance("running", 256L, null), instance("stopped", 256L, null), instance("starting", null, 128L)));
+        instances.put("1h2", Collections.singletonList(instance("running", 512L, 1024L)));
+        HostCapacity capacity = HostCapacity.of(Arrays.asList(host("1h1", "active", 1024L), host("1h2", "active", 1024L)), instances);
+
+        // 640MiB free on the first host, 512MiB on the second
+        assertEquals(4, capacity.slots(256 * MIB, 0, NONE, NONE));
+        assertEquals(2, capacity.slots(256 * MIB, 0, NONE, Collections.singleton("1h2")));
+        assertEquals(2, capacity.slots(256 * MIB, 0, new HashSet<>(Arrays.asList("1h1", "1h2")), NONE));
+    }
+
+    @Test
+    public void skipsInactiveHosts() {
+        HostCapacity capacity = HostCapacity.of(Arrays.asList(host("1h1", "inactive", 1024L), host("1h2", "active", 1024L)), new HashMap<>());
+
+        assertEquals(1, capacity.slots(1024 * MIB, 0, NONE, NONE));
+    }
+
+    @Test
+    public void hostsWithoutResourcesAreUnlimited() {
+        HostCapacity capacity = HostCapacity.of(Collections.singletonList(host("1h1", "active", null)), new HashMap<>());
+
+        assertEquals(Integer.MAX_VALUE, capacity.slots(256 * MIB, 0, NONE, NONE));
+    }
+
+    private static Host host(String id, String state, Long memoryMib) {
+        Host host = new Host();
+        host.setId(id);
+        host.setState(state);
+        host.setMemory(memoryMib == null ? null : memoryMib * MIB);
+        return host;
+    }
+
+    private static Instance instance(String state, Long memoryReservationMib, Long memoryMib) {
+        Instance instance = new Instance();
+        instance.setState(state);
+        instance.setMemoryReservation(memoryReservationMib == null ? null : memoryReservationMib * MIB);
+        instance.setMemory(memoryMib == null ? null : memoryMib * MIB);
+        return instance;
+    }
+}
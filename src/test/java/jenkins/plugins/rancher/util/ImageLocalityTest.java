@@ -0,0 +1,62 @@
+package jenkins.plugins.rancher.util;
+
+import jenkins.plugins.rancher.entity.Instance;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ImageLocalityTest {
+
+    @Test
+    public void pointsAtTheEarlierImageAndDropsConditionsOfEarlierRollouts() {
+        ImageLocality locality = new ImageLocality();
+        locality.addInstances(Arrays.asList(instance("1h1", "docker:nginx:1.13"), instance("1h2", "docker:nginx:1.13")));
+        String earlier = ImageLocality.imageLabel("docker:nginx:1.13");
+
+        assertEquals("role=web,io.jenkins.rancher.image=" + earlier,
+                locality.affinity("role=web, io.jenkins.rancher.image=" + ImageLocality.imageLabel("docker:nginx:1.12")));
+        assertEquals("io.jenkins.rancher.image=" + earlier, locality.affinity(null));
+    }
+
+    @Test
+    public void removesConditionsOfEarlierRolloutsWithoutStampedContainers() {
+        ImageLocality locality = new ImageLocality();
+        Instance unstamped = instance("1h1", "docker:nginx:1.13");
+        unstamped.getLabels().clear();
+        locality.addInstances(Collections.singletonList(unstamped));
+
+        assertTrue(locality.isEmpty());
+        assertEquals("", locality.affinity("io.jenkins.rancher.image=" + ImageLocality.imageLabel("docker:nginx:1.12")));
+    }
+
+    @Test
+    public void countsNewInstancesOnWarmHosts() {
+        ImageLocality locality = new ImageLocality();
+        locality.addInstances(Collections.singletonList(instance("1h1", "docker:nginx:1.13")));
+        locality.addHosts(Collections.singletonList("1h2"));
+
+        assertEquals(2, locality.warmInstances(Arrays.asList(instance("1h1", "docker:nginx:1.14"),
+                instance("1h2", "docker:nginx:1.14"), instance("1h3", "docker:nginx:1.14"),
+                instance("1h1", "docker:nginx:1.13")), "docker:nginx:1.14"));
+    }
+
+    @Test
+    public void isEmptyWithoutEarlierInstances() {
+        ImageLocality locality = new ImageLocality();
+        locality.addHosts(Collections.singletonList("1h1"));
+
+        assertTrue(locality.isEmpty());
+    }
+
+    private static Instance instance(String hostId, String imageUuid) {
+        Instance instance = new Instance();
+        instance.setHostId(hostId);
+        instance.setImageUuid(imageUuid);
+        instance.getLabels().put(ImageLocality.IMAGE_LABEL, ImageLocality.imageLabel(imageUuid));
+        return instance;
+    }
+}
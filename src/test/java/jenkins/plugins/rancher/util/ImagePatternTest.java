@@ -0,0 +1,41 @@
+package jenkins.plugins.rancher.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ImagePatternTest {
+
+    @Test
+    public void matchesRepositoryOfAnyTag() {
+        ImagePattern pattern = ImagePattern.compile("base/java");
+
+        assertTrue(pattern.matches("docker:base/java:8-1"));
+        assertTrue(pattern.matches("docker:base/java"));
+        assertTrue(pattern.matches("docker:base/java@sha256:0123"));
+        assertFalse(pattern.matches("docker:base/java-slim:8-1"));
+    }
+
+    @Test
+    public void matchesTagPatterns() {
+        ImagePattern pattern = ImagePattern.compile("*/base/java:8-*, base/python:latest");
+
+        assertTrue(pattern.matches("docker:registry.example.com:5000/base/java:8-1"));
+        assertFalse(pattern.matches("docker:registry.example.com:5000/base/java:11-1"));
+        assertTrue(pattern.matches("docker:base/python"));
+    }
+
+    @Test
+    public void replacesTagAndKeepsRegistryPort() {
+        assertEquals("docker:registry.example.com:5000/base/java:8-2", ImagePattern.withTag("docker:registry.example.com:5000/base/java:8-1", "8-2"));
+        assertEquals("docker:registry.example.com:5000/base/java:8-2", ImagePattern.withTag("docker:registry.example.com:5000/base/java", "8-2"));
+        assertEquals("docker:base/java:8-2", ImagePattern.withTag("docker:base/java@sha256:0123", "8-2"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyPattern() {
+        ImagePattern.compile(" ,\n");
+    }
+}
@@ -0,0 +1,134 @@
+package jenkins.plugins.rancher.util;
+
+import jenkins.plugins.rancher.entity.LaunchConfig;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LaunchConfigDiffTest {
+
+    @Test
+    public void should_be_empty_when_image_environment_and_ports_are_unchanged() {
+        LaunchConfig live = launchConfig("docker:nginx:1.13", Collections.singletonMap("PROFILE", "prod"), "8080:80/tcp");
+        live.getEnvironment().put("INJECTED_BY_RANCHER", "true");
+        LaunchConfig desired = launchConfig("docker:nginx:1.13", Collections.singletonMap("PROFILE", "prod"), "8080:80");
+
+        LaunchConfigDiff diff = LaunchConfigDiff.between(live, desired);
+
+        assertThat(diff.isEmpty(), is(true));
+    }
+
+    @Test
+    public void should_list_changed_image_and_environment() {
+        LaunchConfig live = launchConfig("docker:nginx:1.13", Collections.singletonMap("PROFILE", "prod"), null);
+        Map<String, Object> environment = new HashMap<>();
+        environment.put("PROFILE", "prod");
+        environment.put("DEBUG", "false");
+        LaunchConfig desired = launchConfig("docker:nginx:1.14", environment, null);
+
+        LaunchConfigDiff diff = LaunchConfigDiff.between(live, desired);
+
+        assertThat(diff.getChanges(), is(Arrays.asList(
+                "imageUuid: docker:nginx:1.13 -> docker:nginx:1.14",
+                "environment.DEBUG: (set)")));
+    }
+
+    @Test
+    public void should_not_list_environment_values() {
+        Map<String, Object> liveEnvironment = new HashMap<>();
+        liveEnvironment.put("DB_PASSWORD", "old-s3cret");
+        liveEnvironment.put("API_TOKEN", "t0ken");
+        LaunchConfig live = launchConfig("docker:nginx", liveEnvironment, null);
+        Map<String, Object> environment = new HashMap<>();
+        environment.put("DB_PASSWORD", "new-s3cret");
+        environment.put("API_TOKEN", null);
+        environment.put("SESSION_KEY", "k3y");
+        LaunchConfig desired = launchConfig("docker:nginx", environment, null);
+
+        LaunchConfigDiff diff = LaunchConfigDiff.between(live, desired);
+
+        assertThat(diff.getChanges(), is(Arrays.asList(
+                "environment.API_TOKEN: (removed)",
+                "environment.DB_PASSWORD: (changed)",
+                "environment.SESSION_KEY: (set)")));
+    }
+
+    @Test
+    public void should_detect_changed_ports() {
+        LaunchConfig live = launchConfig("docker:nginx", new HashMap<>(), "8080:80/tcp");
+        LaunchConfig desired = launchConfig("docker:nginx", new HashMap<>(), "8081:80");
+
+        LaunchConfigDiff diff = LaunchConfigDiff.between(live, desired);
+
+        assertThat(diff.getChanges(), is(Collections.singletonList("ports: [8080:80/tcp] -> [8081:80/tcp]")));
+    }
+
+    @Test
+    public void should_send_live_fields_along_with_changed_ones_in_upgrade_launch_config() {
+        LaunchConfig live = launchConfig("docker:nginx:1.13", Collections.singletonMap("PROFILE", "prod"), "8080:80/tcp");
+        live.getLabels().put("io.rancher.container.pull_image", "always");
+        live.setDataVolumes(Collections.singletonList("/data:/data"));
+        live.setCommand(Arrays.asList("nginx", "-g", "daemon off;"));
+        live.setTty(false);
+        Map<String, Object> environment = new HashMap<>();
+        environment.put("DEBUG", "true");
+        LaunchConfig desired = launchConfig("docker:nginx:1.14", environment, null);
+
+        LaunchConfig upgrade = LaunchConfigDiff.between(live, desired).toUpgradeLaunchConfig();
+
+        assertThat(upgrade.getImageUuid(), is("docker:nginx:1.14"));
+        assertThat(upgrade.getEnvironment().get("PROFILE"), is((Object) "prod"));
+        assertThat(upgrade.getEnvironment().get("DEBUG"), is((Object) "true"));
+        assertThat(upgrade.getPorts(), is(Collections.singletonList("8080:80/tcp")));
+        assertThat(upgrade.getLabels().get("io.rancher.container.pull_image"), is("always"));
+        assertThat(upgrade.getDataVolumes(), is(Collections.singletonList("/data:/data")));
+        assertThat(upgrade.getCommand(), is(Arrays.asList("nginx", "-g", "daemon off;")));
+        assertThat(upgrade.isTty(), is(false));
+        assertThat(live.getImageUuid(), is("docker:nginx:1.13"));
+        assertThat(live.getEnvironment().containsKey("DEBUG"), is(false));
+    }
+
+    @Test
+    public void should_send_live_labels_along_with_changed_label() {
+        LaunchConfig live = launchConfig("docker:nginx:1.13", new HashMap<>(), null);
+        live.getLabels().put("io.rancher.container.pull_image", "always");
+        LaunchConfig desired = launchConfig("docker:nginx:1.14", new HashMap<>(), null);
+        desired.getLabels().put("io.rancher.scheduler.affinity:container_label_soft", "io.rancher.stack_service.name=stack/service");
+
+        LaunchConfigDiff diff = LaunchConfigDiff.between(live, desired);
+        LaunchConfig upgrade = diff.toUpgradeLaunchConfig();
+
+        assertThat(diff.getChanges().get(1), is("labels.io.rancher.scheduler.affinity:container_label_soft: (unset) -> io.rancher.stack_service.name=stack/service"));
+        assertThat(upgrade.getLabels().get("io.rancher.container.pull_image"), is("always"));
+        assertThat(upgrade.getLabels().get("io.rancher.scheduler.affinity:container_label_soft"), is("io.rancher.stack_service.name=stack/service"));
+    }
+
+    @Test
+    public void should_remove_label_set_to_null() {
+        LaunchConfig live = launchConfig("docker:nginx:1.13", new HashMap<>(), null);
+        live.getLabels().put("io.rancher.scheduler.affinity:container_label_soft", "io.jenkins.rancher.image=1a2b");
+        LaunchConfig desired = launchConfig("docker:nginx:1.14", new HashMap<>(), null);
+        desired.getLabels().put("io.rancher.scheduler.affinity:container_label_soft", null);
+
+        LaunchConfigDiff diff = LaunchConfigDiff.between(live, desired);
+
+        assertThat(diff.getChanges().get(1), is("labels.io.rancher.scheduler.affinity:container_label_soft: io.jenkins.rancher.image=1a2b -> (unset)"));
+        assertThat(diff.toUpgradeLaunchConfig().getLabels().containsKey("io.rancher.scheduler.affinity:container_label_soft"), is(false));
+    }
+
+    private LaunchConfig launchConfig(String image, Map<String, Object> environment, String ports) {
+        LaunchConfig launchConfig = new LaunchConfig();
+        launchConfig.setImageUuid(image);
+        launchConfig.setEnvironment(new HashMap<>(environment));
+        if (ports != null) {
+            launchConfig.setPorts(Arrays.asList(ports.split(",")));
+        }
+        return launchConfig;
+    }
+}
@@ -0,0 +1,99 @@
+package jenkins.plugins.rancher.util;
+
+import hudson.AbortException;
+import hudson.model.TaskListener;
+import jenkins.plugins.rancher.RancherClientRancher;
+import jenkins.plugins.rancher.fake.FakeRancherServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ServiceLeaseTest {
+
+    private final long ttlMillis = ServiceLease.ttlMillis;
+    private final long settleMillis = ServiceLease.settleMillis;
+
+    private TaskListener listener;
+    private FakeRancherServer server;
+    private RancherClientRancher client;
+    private String serviceId;
+
+    @Before
+    public void setUp() throws Exception {
+        listener = mock(TaskListener.class);
+        when(listener.getLogger()).thenReturn(mock(PrintStream.class));
+        server = new FakeRancherServer().withTransitionDelay(0);
+        client = new RancherClientRancher(server.getEndpoint(), "access", "secret");
+        serviceId = server.addService(server.addStack("stack"), "service", "docker:nginx:1.13");
+        ServiceLease.settleMillis = 20;
+    }
+
+    @After
+    public void tearDown() {
+        ServiceLease.ttlMillis = ttlMillis;
+        ServiceLease.settleMillis = settleMillis;
+        server.close();
+    }
+
+    @Test
+    public void should_wait_until_the_lease_is_released() throws Exception {
+        ServiceLease first = ServiceLease.acquire(client, "1a5", serviceId, "deploy#1", 10, listener);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<ServiceLease> second = executor.submit(() -> ServiceLease.acquire(client, "1a5", serviceId, "deploy#2", 10, listener));
+            Thread.sleep(200);
+            assertThat(second.isDone(), is(false));
+
+            first.release(listener);
+            ServiceLease lease = second.get(5, TimeUnit.SECONDS);
+            assertThat(leaseToken(), is(lease.getToken()));
+            lease.release(listener);
+            assertThat(leaseToken(), is(nullValue()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = AbortException.class)
+    public void should_take_over_an_expired_lease() throws Exception {
+        ServiceLease.ttlMillis = 100;
+        ServiceLease stale = ServiceLease.acquire(client, "1a5", serviceId, "deploy#1", 10, listener);
+        ServiceLease lease = ServiceLease.acquire(client, "1a5", serviceId, "deploy#2", 10, listener);
+        assertThat(leaseToken(), is(lease.getToken()));
+
+        stale.renewIfDue();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void should_keep_the_other_metadata_entries() throws Exception {
+        ServiceLease lease = ServiceLease.acquire(client, "1a5", serviceId, "deploy#1", 10, listener);
+        LaunchConfigHistory.record(client, "1a5", lease.getService(), "deploy#1");
+        lease.release(listener);
+
+        Map<String, Object> metadata = (Map<String, Object>) server.getService(serviceId).get("metadata");
+        assertThat(metadata.containsKey(LaunchConfigHistory.METADATA_KEY), is(true));
+        assertThat(leaseToken(), is(nullValue()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object leaseToken() {
+        Map<String, Object> metadata = (Map<String, Object>) server.getService(serviceId).get("metadata");
+        Map<String, Object> lease = metadata == null ? null : (Map<String, Object>) metadata.get(ServiceLease.METADATA_KEY);
+        return lease == null ? null : lease.get("token");
+    }
+}
@@ -0,0 +1,35 @@
+package jenkins.plugins.rancher.util;
+
+import jenkins.plugins.rancher.entity.LaunchConfig;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class SidekickChangesTest {
+
+    @Test
+    public void should_parse_image_and_environment_per_sidekick() {
+        Map<String, LaunchConfig> sidekicks = SidekickChanges.parse("log.image=fluent-bit:1.1\n# comment\n\nlog.env.URL=http://es:9200/a=b\r\nproxy.env.LEVEL = debug");
+
+        assertThat(sidekicks.size(), is(2));
+        assertThat(sidekicks.get("log").getName(), is("log"));
+        assertThat(sidekicks.get("log").getImageUuid(), is("docker:fluent-bit:1.1"));
+        assertThat(sidekicks.get("log").getEnvironment().get("URL"), is((Object) "http://es:9200/a=b"));
+        assertThat(sidekicks.get("proxy").getImageUuid(), nullValue());
+        assertThat(sidekicks.get("proxy").getEnvironment().get("LEVEL"), is((Object) "debug"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void should_reject_unknown_field() {
+        SidekickChanges.parse("log.ports=8080");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void should_reject_line_without_sidekick_name() {
+        SidekickChanges.parse("image=fluent-bit:1.1");
+    }
+}
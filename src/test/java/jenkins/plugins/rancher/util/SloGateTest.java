@@ -0,0 +1,66 @@
+package jenkins.plugins.rancher.util;
+
+import jenkins.plugins.rancher.entity.LaunchConfig;
+import jenkins.plugins.rancher.entity.Service;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SloGateTest {
+
+    private final SloGate gate = new SloGate(20, 50, 1);
+    private final LatencyProbe.Result baseline = new LatencyProbe.Result(100, 400, 0.005, 100);
+
+    @Test
+    public void passesWithinThresholds() {
+        assertEquals(Collections.emptyList(), gate.violations(baseline, new LatencyProbe.Result(120, 600, 0.015, 100)));
+    }
+
+    @Test
+    public void failsOnEveryExceededThreshold() {
+        List<String> violations = gate.violations(baseline, new LatencyProbe.Result(121, 601, 0.02, 100));
+        assertEquals(3, violations.size());
+        assertTrue(violations.get(0).startsWith("p50 121ms"));
+        assertTrue(violations.get(1).startsWith("p99 601ms"));
+        assertTrue(violations.get(2).startsWith("error rate 2.0%"));
+    }
+
+    @Test
+    public void ignoresNoiseOnFastServices() {
+        LatencyProbe.Result fast = new LatencyProbe.Result(2, 4, 0, 100);
+        assertEquals(Collections.emptyList(), gate.violations(fast, new LatencyProbe.Result(6, 9, 0, 100)));
+    }
+
+    @Test
+    public void failsWhenNoRequestSucceeded() {
+        assertEquals(1, gate.violations(baseline, new LatencyProbe.Result(-1, -1, 1, 100)).size());
+    }
+
+    @Test
+    public void usesBaselineSavedForTheRunningImage() {
+        assertEquals(100, SloGate.baseline(service("docker:app:2", "docker:app:2")).getP50());
+    }
+
+    @Test
+    public void ignoresBaselineOfAnEarlierUpgrade() {
+        assertNull(SloGate.baseline(service("docker:app:3", "docker:app:2")));
+    }
+
+    private Service service(String runningImage, String baselineTarget) {
+        Map<String, Object> entry = new HashMap<>(baseline.toMap());
+        entry.put("imageUuid", "docker:app:1");
+        entry.put("targetImageUuid", baselineTarget);
+        Service service = new Service();
+        service.setLaunchConfig(new LaunchConfig());
+        service.getLaunchConfig().setImageUuid(runningImage);
+        service.setMetadata(new HashMap<>(Collections.singletonMap(SloGate.METADATA_KEY, entry)));
+        return service;
+    }
+}
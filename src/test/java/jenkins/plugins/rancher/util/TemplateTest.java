@@ -0,0 +1,55 @@
+package jenkins.plugins.rancher.util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TemplateTest {
+
+    private final Map<String, String> envs = new HashMap<>();
+
+    {
+        envs.put("IMAGE", "nginx");
+        envs.put("TAG", "1.13");
+        envs.put("EMPTY", "");
+    }
+
+    @Test
+    public void should_replace_every_placeholder_in_one_pass() {
+        assertThat(Template.compile("registry/${IMAGE}:${TAG}-${IMAGE}").render(envs), is("registry/nginx:1.13-nginx"));
+    }
+
+    @Test
+    public void should_keep_placeholder_when_variable_is_not_defined() {
+        assertThat(Template.compile("${IMAGE}:${MISSING}").render(envs), is("nginx:${MISSING}"));
+    }
+
+    @Test
+    public void should_use_default_when_variable_is_missing_or_empty() {
+        assertThat(Template.compile("${MISSING:-latest}/${EMPTY:-none}/${TAG:-latest}").render(envs), is("latest/none/1.13"));
+    }
+
+    @Test
+    public void should_not_replace_escaped_placeholder() {
+        assertThat(Template.compile("$${IMAGE} is ${IMAGE}").render(envs), is("${IMAGE} is nginx"));
+    }
+
+    @Test
+    public void should_leave_non_variable_expressions_untouched() {
+        assertThat(Template.compile("${foo.bar} ${TAG} $TAG ${").render(envs), is("${foo.bar} 1.13 $TAG ${"));
+    }
+
+    @Test
+    public void should_list_referenced_variables() {
+        assertThat(Template.compile("${IMAGE}:${TAG:-latest}-${IMAGE}").getVariables().toString(), is("[IMAGE, TAG]"));
+    }
+
+    @Test
+    public void should_reuse_compiled_template() {
+        assertThat(Template.compile("${IMAGE}") == Template.compile("${IMAGE}"), is(true));
+    }
+}
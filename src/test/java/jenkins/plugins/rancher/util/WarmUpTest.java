@@ -0,0 +1,87 @@
+package jenkins.plugins.rancher.util;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WarmUpTest {
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile int coldRequests;
+    private volatile int status = 200;
+    private int window;
+
+    @Before
+    public void setUp() throws IOException {
+        window = WarmUp.window;
+        WarmUp.window = 5;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            if (requests.incrementAndGet() <= coldRequests) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        WarmUp.window = window;
+        server.stop(0);
+    }
+
+    @Test
+    public void parsesOnePathPerLine() {
+        assertEquals(Arrays.asList("/health", "/api/items?page=1"), WarmUp.paths("/health\n\n# comment\r\n api/items?page=1 \n"));
+        assertEquals(Collections.emptyList(), WarmUp.paths(null));
+    }
+
+    @Test
+    public void stopsOnceTheResponseTimeIsWithinTarget() throws InterruptedException {
+        coldRequests = 8;
+        WarmUp warmUp = warmUp(50, 10_000);
+        while (!warmUp.isDone()) {
+            warmUp.send();
+        }
+        assertTrue(warmUp.isTargetMet());
+        assertTrue(warmUp.getSent() >= 13);
+        assertTrue(warmUp.percentile90() <= 50);
+    }
+
+    @Test
+    public void serverErrorsMissTheTargetUntilTheBudgetIsUsedUp() throws InterruptedException {
+        status = 503;
+        WarmUp warmUp = warmUp(50, 300);
+        while (!warmUp.isDone()) {
+            warmUp.send();
+        }
+        assertFalse(warmUp.isTargetMet());
+        assertEquals(warmUp.getSent(), warmUp.getFailed());
+        assertEquals(Long.MAX_VALUE, warmUp.percentile90());
+    }
+
+    private WarmUp warmUp(long targetMillis, long budgetMillis) {
+        List<String> addresses = Collections.singletonList(InetAddress.getLoopbackAddress().getHostAddress());
+        return new WarmUp(addresses, Arrays.asList("/a", "/b"), server.getAddress().getPort(), 1000, targetMillis, budgetMillis);
+    }
+}